@@ -1,25 +1,30 @@
 package com.mbragg.playlister.configurations;
 
 import org.apache.log4j.Logger;
+import org.neo4j.graphdb.DynamicLabel;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.schema.ConstraintDefinition;
+import org.neo4j.graphdb.schema.ConstraintType;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.*;
 import org.springframework.data.neo4j.config.EnableNeo4jRepositories;
 import org.springframework.data.neo4j.config.Neo4jConfiguration;
-import org.springframework.scheduling.annotation.EnableAsync;
+
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Spring configuration for the application.
  * <p>
- * Configures beans, configuration file dependencies, application logger and the Neo4j Graph database service.
+ * Configures beans, configuration file dependencies, application logger, the CPU executor for the analysis of tracks
+ * and the Neo4j Graph database service.
  *
  * @author Michael Bragg
  */
 @Configuration
 @EnableAutoConfiguration
-@EnableAsync
 @PropertySource("classpath:application.properties")
 @PropertySource("classpath:log4j.properties")
 @PropertySource("classpath:about.properties")
@@ -29,6 +34,9 @@ import org.springframework.scheduling.annotation.EnableAsync;
 )
 public class ApplicationConfiguration extends Neo4jConfiguration {
 
+    private static final String TRACK_LABEL = "Track";
+    private static final String FILENAME_PROPERTY = "filename";
+
 
     public ApplicationConfiguration() {
         setBasePackage("com.mbragg.playlister");
@@ -39,11 +47,46 @@ public class ApplicationConfiguration extends Neo4jConfiguration {
         return Logger.getLogger(ApplicationConfiguration.class.getName());
     }
 
+    /**
+     * Executor for CPU bound work, the analysis of the chunks of windows of a track. A fork/join pool, so that the
+     * chunks of every track being analysed share the same core-sized threads. The blocking IO of a scan runs on the
+     * pools of the decode and model stages of the scan pipeline.
+     *
+     * @param threads int. Number of threads, 0 for one per available processor.
+     * @return ForkJoinPool. The CPU executor.
+     */
+    @Bean(destroyMethod = "shutdown")
+    ForkJoinPool cpuExecutor(@Value("${cpuExecutorThreads}") int threads) {
+        return new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
     @Bean
     GraphDatabaseService graphDatabaseService(@Value("${dbName}") String dbName) {
-        return new GraphDatabaseFactory()
+        GraphDatabaseService graphDatabaseService = new GraphDatabaseFactory()
                 .newEmbeddedDatabaseBuilder(dbName)
                 .newGraphDatabase();
+        dropUniqueFilenameConstraint(graphDatabaseService);
+        return graphDatabaseService;
+    }
+
+    /**
+     * Tracks were once unique by file name, and are now unique by file path, so that files of the same name in
+     * different directories are separate tracks. Drops the unique constraint on the file name from databases created
+     * before, which would otherwise reject the second track of a name.
+     *
+     * @param graphDatabaseService GraphDatabaseService. The database to migrate.
+     */
+    static void dropUniqueFilenameConstraint(GraphDatabaseService graphDatabaseService) {
+        try (Transaction dropConstraint = graphDatabaseService.beginTx()) {
+            for (ConstraintDefinition constraint : graphDatabaseService.schema().getConstraints(DynamicLabel.label(TRACK_LABEL))) {
+                // a unique constraint is on a single property
+                if (constraint.isConstraintType(ConstraintType.UNIQUENESS)
+                        && constraint.getPropertyKeys().iterator().next().equals(FILENAME_PROPERTY)) {
+                    constraint.drop();
+                }
+            }
+            dropConstraint.success();
+        }
     }
 
 }
\ No newline at end of file
@@ -1,12 +1,10 @@
 package com.mbragg.playlister.controllers;
 
-import com.mbragg.playlister.models.BatchTrack;
+import com.mbragg.playlister.controllers.audioControllers.ScanListener;
 import com.mbragg.playlister.models.entitys.Track;
-import org.springframework.scheduling.annotation.Async;
 
 import java.io.File;
 import java.util.List;
-import java.util.concurrent.Future;
 
 /**
  * Single entry point for the application.
@@ -17,20 +15,20 @@ public interface ApplicationController {
     /**
      * Query the application to get a playlist.
      *
-     * @param fileName        String. Name of the file to act as the query
+     * @param filePath        String. Absolute path of the file to act as the query
      * @param sizeOfResult    int. The number of files in the playlist
      * @param restrictByGenre Boolean. Whether or ont to restrict the the query to the same genre meta tag as the query track.
      * @return A List of tracks for the generated playlist.
      */
-    List<Track> query(String fileName, int sizeOfResult, boolean restrictByGenre);
+    List<Track> query(String filePath, int sizeOfResult, boolean restrictByGenre);
 
     /**
      * Check whether a track exists in the database.
      *
-     * @param fileName String. The name of the file to check.
+     * @param filePath String. The absolute path of the file to check.
      * @return Boolean. whether it is in the database or not.
      */
-    boolean trackExists(String fileName);
+    boolean trackExists(String filePath);
 
     /**
      * Launch a media player to play the generated playlist.
@@ -38,16 +36,6 @@ public interface ApplicationController {
      */
     void launchPlaylist();
 
-    /**
-     * Given a String to a local music directory, return a list of .m4a files that have not
-     * yet been processed and stored in the application's database.
-     *
-     * @param musicDirectoryFilePath String. Path to local music directory
-     * @return List of files found in the directory (and sub directory's) that are also not yet
-     * processed and stored in the applications database.
-     */
-    List<File> directoryBatchBuild(String musicDirectoryFilePath);
-
     /**
      * Given a single file, returns a list containing the file if it has not yet been processed and stored on the applications database.
      * [Allows for the case when a user tries to build a playlist from a file that has not yet been proceed and stored]
@@ -57,24 +45,42 @@ public interface ApplicationController {
      */
     List<File> queryFileBatchBuild(File file);
 
+
     /**
-     * Given a list of files to process, execute a batch job to return a Map of the extracted audio bytes and audio formats.
+     * Scan a list of files to process, building and saving a Track for each.
+     * The files are processed by a pipeline of stages, blocking until every file has been processed.
      *
-     * @param filesToProcessBuffer List of files to process i.e. file buffer
-     * @return A Map of the extracted audio bytes and audio formats.
-     * @throws InterruptedException if the batch job is interrupted at any time. i.e A user has chosen to cancel the job.
+     * @param filesToProcess List of files to process.
+     * @param listener       ScanListener. Notified as each file is processed.
+     * @return The number of Tracks saved.
+     * @throws InterruptedException if the scan is interrupted at any time. i.e A user has chosen to cancel the job.
      */
-    List<BatchTrack> extractAudioBatch(List<File> filesToProcessBuffer) throws InterruptedException;
+    int scan(List<File> filesToProcess, ScanListener listener) throws InterruptedException;
 
+    /**
+     * Scan a local music directory, building and saving a Track for each file that has not yet been processed.
+     * The directories are walked in parallel, and each file is processed as soon as it is found,
+     * blocking until the walk is finished and every file has been processed.
+     *
+     * @param musicDirectoryFilePath String. Path to local music directory, or several separated by the path separator.
+     * @param listener               ScanListener. Notified as each file is processed.
+     * @return The number of Tracks saved.
+     * @throws InterruptedException if the scan is interrupted at any time. i.e A user has chosen to cancel the job.
+     */
+    int scanDirectory(String musicDirectoryFilePath, ScanListener listener) throws InterruptedException;
 
     /**
-     * Build a Track from a BatchTrack
+     * Given the files of a local music directory that have been created, modified or removed, e.g. seen by watching
+     * the directory, update the applications database and scan the files that need processing.
+     * Moved files are re-linked and the tracks of removed files deleted. Blocks until every file has been processed.
      *
-     * @param batchTrack A BatchTrack i.e. Wraps parameters needed to build a Track object.
-     * @return A new Track
+     * @param changedFiles List of files created or modified.
+     * @param removedPaths List of the paths of files or directories removed.
+     * @param listener     ScanListener. Notified as each file is processed.
+     * @return The number of Tracks saved.
+     * @throws InterruptedException if the scan is interrupted at any time. i.e. Watching has been stopped.
      */
-    @Async
-    Future<Track> buildTrack(BatchTrack batchTrack);
+    int scanWatchedFiles(List<File> changedFiles, List<String> removedPaths, ScanListener listener) throws InterruptedException;
 
     /**
      * Call to delete all the data in the database
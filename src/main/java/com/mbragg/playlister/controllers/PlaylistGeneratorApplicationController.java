@@ -1,22 +1,21 @@
 package com.mbragg.playlister.controllers;
 
 import com.mbragg.playlister.controllers.audioControllers.AudioBatchController;
-import com.mbragg.playlister.controllers.audioControllers.AudioTrackController;
+import com.mbragg.playlister.controllers.audioControllers.ScanListener;
+import com.mbragg.playlister.controllers.audioControllers.ScanPipelineController;
 import com.mbragg.playlister.dao.DAO;
-import com.mbragg.playlister.models.BatchTrack;
 import com.mbragg.playlister.models.Playlist;
 import com.mbragg.playlister.models.entitys.Track;
 import com.mbragg.playlister.tools.file.DirectoryParser;
+import com.mbragg.playlister.tools.file.ScanJournal;
+import com.mbragg.playlister.tools.file.ScanManifest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Future;
 
 /**
  * Implementation of the ApplicationController interface - single entry point for the application.
@@ -26,33 +25,37 @@ import java.util.concurrent.Future;
 @Component
 public class PlaylistGeneratorApplicationController implements ApplicationController {
 
-    private final AudioTrackController audioTrackController;
     private final Playlist playlist;
     private final DirectoryParser directoryParser;
     private final DAO dao;
     private final AudioBatchController audioBatchController;
+    private final ScanPipelineController scanPipelineController;
+    private final ScanManifest scanManifest;
+    private final ScanJournal scanJournal;
 
     @Value("${suffix}")
     private String suffix;
 
     @Autowired
-    public PlaylistGeneratorApplicationController(AudioTrackController audioTrackController, Playlist playlist, DirectoryParser directoryParser, AudioBatchController audioBatchController, DAO dao) {
-        this.audioTrackController = audioTrackController;
+    public PlaylistGeneratorApplicationController(Playlist playlist, DirectoryParser directoryParser, AudioBatchController audioBatchController, ScanPipelineController scanPipelineController, ScanManifest scanManifest, ScanJournal scanJournal, DAO dao) {
         this.playlist = playlist;
         this.directoryParser = directoryParser;
         this.audioBatchController = audioBatchController;
+        this.scanPipelineController = scanPipelineController;
+        this.scanManifest = scanManifest;
+        this.scanJournal = scanJournal;
         this.dao = dao;
     }
 
     @Override
-    public boolean trackExists(String fileName) {
-        return dao.trackExists(fileName);
+    public boolean trackExists(String filePath) {
+        return dao.trackExists(filePath);
     }
 
     @Override
-    public List<Track> query(String fileName, int sizeOfResult, boolean restrictByGenre) {
-        if (dao.trackExists(fileName)) {
-            return playlist.build(dao.query(fileName, sizeOfResult, restrictByGenre));
+    public List<Track> query(String filePath, int sizeOfResult, boolean restrictByGenre) {
+        if (dao.trackExists(filePath)) {
+            return playlist.build(dao.query(filePath, sizeOfResult, restrictByGenre));
         }
         return new ArrayList<>();
     }
@@ -71,24 +74,28 @@ public class PlaylistGeneratorApplicationController implements ApplicationContro
     }
 
     @Override
-    public List<File> directoryBatchBuild(String musicDirectoryFilePath) {
-        return audioBatchController.getFilesToProcess(directoryParser.parse(musicDirectoryFilePath, suffix));
+    public int scan(List<File> filesToProcess, ScanListener listener) throws InterruptedException {
+        return scanPipelineController.scan(filesToProcess, listener);
     }
 
     @Override
-    public List<BatchTrack> extractAudioBatch(List<File> filesToProcessBuffer) throws InterruptedException {
-        return audioBatchController.batchAudioByteExtraction(filesToProcessBuffer);
+    public int scanDirectory(String musicDirectoryFilePath, ScanListener listener) throws InterruptedException {
+        return scanPipelineController.scan(
+                (filesToProcess, graphUpdates) -> audioBatchController.rescan(directoryParser.source(musicDirectoryFilePath, suffix), filesToProcess, graphUpdates), listener);
     }
 
     @Override
-    @Async
-    public Future<Track> buildTrack(BatchTrack batchTrack) {
-        return new AsyncResult<>(audioTrackController.build(batchTrack));
+    public int scanWatchedFiles(List<File> changedFiles, List<String> removedPaths, ScanListener listener) throws InterruptedException {
+        return scanPipelineController.scan(
+                (filesToProcess, graphUpdates) -> audioBatchController.update(changedFiles, removedPaths, filesToProcess, graphUpdates), listener);
     }
 
     @Override
     public void deleteDB() {
         dao.deleteDatabase();
+        scanManifest.clear();
+        scanManifest.save();
+        scanJournal.clear();
     }
 
 
@@ -99,6 +106,7 @@ public class PlaylistGeneratorApplicationController implements ApplicationContro
 
     @Override
     public void dbShutdown() {
+        scanManifest.save();
         dao.shutdown();
     }
 
@@ -1,101 +1,251 @@
 package com.mbragg.playlister.controllers.audioControllers;
 
 import com.mbragg.playlister.dao.DAO;
-import com.mbragg.playlister.factories.TrackFactory;
-import com.mbragg.playlister.models.AudioBytes;
-import com.mbragg.playlister.models.AudioStream;
-import com.mbragg.playlister.models.BatchTrack;
+import com.mbragg.playlister.models.ScanDelta;
+import com.mbragg.playlister.models.ScannedFiles;
+import com.mbragg.playlister.tools.file.FileSource;
+import com.mbragg.playlister.tools.file.ScanManifest;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
- * Class to control the process of extracting audio data byte arrays from files.
+ * Class to control which files of a users music directory need processing, keeping the database in step with the
+ * files that have been moved or deleted.
  *
  * @author Michael Bragg
  */
 @Component
 public class AudioBatchController {
 
-    public static final int NUMBER_OF_THREADS = 5;
+    // Number of files above which the scanned files are read in bulk rather than looked up one at a time.
+    private static final int BULK_LOOKUP_THRESHOLD = 16;
+
     private final DAO dao;
-    private final AudioBytes audioBytes;
-    private final AudioStream audioStream;
+    private final ScanManifest scanManifest;
 
     @Autowired
     Logger logger;
 
     @Autowired
-    public AudioBatchController(DAO dao, AudioBytes audioBytes, AudioStream audioStream) {
+    public AudioBatchController(DAO dao, ScanManifest scanManifest) {
         this.dao = dao;
-        this.audioStream = audioStream;
-        this.audioBytes = audioBytes;
+        this.scanManifest = scanManifest;
     }
 
     /**
-     * For a given list of files, determines which have already been processed by the application.
+     * Walks a users music directory, applying the changes since the last scan recorded in the scan manifest, and
+     * passes on each file that needs analysing as soon as it is known, so that it can be analysed while the walk
+     * goes on.
+     * <p>
+     * Moved files have their tracks pointed at their new path without being analysed again, and the tracks of deleted
+     * files are removed. Only recorded files inside the roots of the source may be moved or deleted, and none inside a
+     * directory the walk could not read, e.g. an unmounted share. The tracks of changed files are removed and the files
+     * analysed again. Added files already in the database, scanned before the manifest recorded them, are recorded
+     * without being analysed. Moves and deletes are only known once the walk is finished, so an added file the size of
+     * a recorded file is passed on after the walk. Without a scan manifest, files are passed on unless a file at the
+     * same path has been scanned.
      *
-     * @param files Complete list of files from a users music directory.
-     * @return List of files that have not yet been processed by the application.
+     * @param source         FileSource. The walk of the users music directory.
+     * @param filesToProcess Consumer of each file that needs analysing. May be called from several threads at once.
+     * @param graphUpdates   Executor of the changes to the tracks in the database, e.g. the thread saving tracks.
+     * @throws InterruptedException if the calling thread is interrupted.
      */
-    public List<File> getFilesToProcess(List<File> files) {
-
-        logger.log(Level.INFO, "Total files in your library: " + files.size());
-
-        List<File> filesToProcess = files.stream()
-                .filter(f -> !dao.trackExists(f.getName()))
-                .collect(Collectors.toList());
+    public void rescan(FileSource source, Consumer<File> filesToProcess, Executor graphUpdates) throws InterruptedException {
+        AtomicInteger numberOfFiles = new AtomicInteger();
+        AtomicInteger numberOfFilesToProcess = new AtomicInteger();
+        Consumer<File> process = file -> {
+            numberOfFilesToProcess.incrementAndGet();
+            filesToProcess.accept(file);
+        };
+        ScannedFiles scannedFiles = dao.getScannedFiles();
+
+        if (!scanManifest.isEnabled()) {
+            source.walk(file -> {
+                numberOfFiles.incrementAndGet();
+                if (!scannedFiles.containsFilePath(file.getAbsolutePath())) {
+                    process.accept(file);
+                }
+            });
+        } else {
+            FileSource countedSource = consumer -> source.walk(file -> {
+                numberOfFiles.incrementAndGet();
+                consumer.accept(file);
+            });
+            applyDiff(countedSource, scanManifest.newDiff(source.getRoots()), source::getUnreadableDirectories,
+                    file -> processAdded(file, scannedFiles, process), process, graphUpdates);
+        }
 
-        if (filesToProcess.isEmpty())
+        logger.log(Level.INFO, "Total files in your library: " + numberOfFiles.get());
+        if (numberOfFilesToProcess.get() == 0)
             logger.log(Level.INFO, "No new files to process");
         else
-            logger.log(Level.INFO, "Files to process: " + filesToProcess.size());
-
-        return filesToProcess;
+            logger.log(Level.INFO, "Files to process: " + numberOfFilesToProcess.get());
     }
 
     /**
-     * Method to coordinate the extraction of byte[] arrays from a list of files.
+     * Applies changes to some of the files of a users music directory, e.g. seen by watching the directory, and passes
+     * on each file that needs analysing. Costs in proportion to the number of files changed, not the size of the
+     * library.
+     * <p>
+     * A changed file that has the content of a removed file is a move, and has the track of the removed file pointed
+     * at its new path. The tracks of the other removed files are removed. The other changed files are analysed again,
+     * replacing any track at their path. Without a scan manifest, files are passed on unless a file at the same path
+     * has been scanned.
      *
-     * @param filesToProcessBuffer Files in a current batch that are to be processed asynchronously.
-     * @return A list of BatchTrack objects - wrappers for the File, AudioFormat and extracted audio bytes array data.
-     * @throws InterruptedException If the batch job is cancelled at any point.
+     * @param files          List of files created or modified.
+     * @param removedPaths   List of the paths of files or directories removed.
+     * @param filesToProcess Consumer of each file that needs analysing.
+     * @param graphUpdates   Executor of the changes to the tracks in the database, e.g. the thread saving tracks.
      */
-    public List<BatchTrack> batchAudioByteExtraction(List<File> filesToProcessBuffer) throws InterruptedException {
-
-
-        List<BatchTrack> batchTracks = new ArrayList<>();
+    public void update(List<File> files, List<String> removedPaths, Consumer<File> filesToProcess, Executor graphUpdates) {
+        if (!scanManifest.isEnabled()) {
+            if (!removedPaths.isEmpty()) {
+                ScannedFiles scannedFiles = dao.getScannedFiles();
+                removedPaths.stream()
+                        .flatMap(removedPath -> scannedFiles.getFilePaths(removedPath).stream())
+                        .forEach(filePath -> graphUpdates.execute(() -> dao.deleteTrack(filePath)));
+            }
+            files.stream().filter(file -> !dao.trackExists(file.getAbsolutePath())).forEach(filesToProcess);
+            return;
+        }
 
-        logger.log(Level.INFO, "Audio Extraction batch jobs starting [" + NUMBER_OF_THREADS + "]");
+        List<String> removedFilePaths = new ArrayList<>();
+        for (String removedPath : removedPaths) {
+            removedFilePaths.add(removedPath);
+            removedFilePaths.addAll(scanManifest.getRecordedFilePaths(Paths.get(removedPath)));
+        }
 
         try {
-            for (File file : filesToProcessBuffer) {
+            applyDiff(files::forEach, scanManifest.newDiff(removedFilePaths), Collections::emptyList, file -> {
+                graphUpdates.execute(() -> dao.deleteTrack(file.getAbsolutePath()));
+                filesToProcess.accept(file);
+            }, filesToProcess, graphUpdates);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Feeds the files of a source to a diff against the scan manifest, and applies the resulting changes.
+     * Changed files are passed on as they are found, and added files once they are known not to have moved.
+     * The directories the walk could not read are asked for once it is finished. The database and the manifest
+     * records of moved and deleted files are changed together by the graph updates, and the manifest saved after them.
+     */
+    private void applyDiff(FileSource source, ScanManifest.Diff diff, Supplier<List<Path>> unreadableDirectories,
+                           Consumer<File> processAdded, Consumer<File> process, Executor graphUpdates) throws InterruptedException {
+        List<File> pending = Collections.synchronizedList(new ArrayList<>());
+
+        source.walk(file -> {
+            switch (diff.check(file)) {
+                case CHANGED:
+                    // The manifest keeps the old record until the file is scanned again, so an interrupted scan retries it.
+                    graphUpdates.execute(() -> dao.deleteTrack(file.getAbsolutePath()));
+                    process.accept(file);
+                    break;
+                case ADDED:
+                    processAdded.accept(file);
+                    break;
+                case PENDING:
+                    pending.add(file);
+                    break;
+                default:
+                    break;
+            }
+        });
 
-                AudioInputStream audioInputStream = audioStream.getAudioInputStream(file);
+        List<Path> unreadable = unreadableDirectories.get();
+        if (!unreadable.isEmpty()) {
+            logger.log(Level.WARN, "Directories that could not be read, files inside them are kept: " + unreadable);
+        }
+        ScanDelta scanDelta = diff.finish(unreadable);
+        logger.log(Level.INFO, "Changes since the last scan: " + scanDelta);
+
+        for (Map.Entry<String, File> moved : scanDelta.getMoved().entrySet()) {
+            graphUpdates.execute(() -> {
+                dao.relinkTrack(moved.getKey(), moved.getValue());
+                scanManifest.move(moved.getKey(), moved.getValue());
+            });
+        }
+        for (String deleted : scanDelta.getDeleted()) {
+            graphUpdates.execute(() -> {
+                dao.deleteTrack(deleted);
+                scanManifest.remove(deleted);
+            });
+        }
 
-                BatchTrack batchTrack = TrackFactory.getInstance().getBatchTrack(audioBytes.extract(audioInputStream), audioInputStream.getFormat(), file);
-                batchTracks.add(batchTrack);
+        Set<File> movedFiles = new HashSet<>(scanDelta.getMoved().values());
+        for (File file : pending) {
+            if (!movedFiles.contains(file)) {
+                processAdded.accept(file);
             }
+        }
 
-            for (BatchTrack batchTrack : batchTracks) {
-                while (!batchTrack.getAudio().isDone()) Thread.sleep(10);
+        graphUpdates.execute(scanManifest::save);
+    }
+
+    /*
+     * Passes on an added file, unless it was scanned into the database before the manifest recorded it.
+     */
+    private void processAdded(File file, ScannedFiles scannedFiles, Consumer<File> process) {
+        if (scannedFiles.containsFilePath(file.getAbsolutePath())) {
+            try {
+                scanManifest.record(file);
+                return;
+            } catch (IOException e) {
+                logger.log(Level.WARN, "Unable to record " + file.getName() + " in the scan manifest: " + e.getMessage());
             }
+        }
+        process.accept(file);
+    }
+
+    /**
+     * For a given list of files, determines which have already been processed by the application.
+     * Beyond a few files, every scanned file is read from the database at once and the list diffed against it,
+     * rather than looking each file up.
+     *
+     * @param files Complete list of files from a users music directory.
+     * @return List of files that have not yet been processed by the application.
+     */
+    public List<File> getFilesToProcess(List<File> files) {
 
-        } catch (UnsupportedAudioFileException | IOException e) {
-            logger.log(Level.WARN, "Unsupported file format: \n" + e.getMessage());
+        logger.log(Level.INFO, "Total files in your library: " + files.size());
+
+        Predicate<String> isScanned;
+        if (files.size() > BULK_LOOKUP_THRESHOLD) {
+            ScannedFiles scannedFiles = dao.getScannedFiles();
+            isScanned = scannedFiles::containsFilePath;
+        } else {
+            isScanned = dao::trackExists;
         }
 
-        logger.log(Level.INFO, "Batch jobs complete");
+        List<File> filesToProcess = files.stream()
+                .filter(f -> !isScanned.test(f.getAbsolutePath()))
+                .collect(Collectors.toList());
 
-        return batchTracks;
+        if (filesToProcess.isEmpty())
+            logger.log(Level.INFO, "No new files to process");
+        else
+            logger.log(Level.INFO, "Files to process: " + filesToProcess.size());
+
+        return filesToProcess;
     }
 }
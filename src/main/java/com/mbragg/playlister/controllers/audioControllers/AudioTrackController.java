@@ -1,9 +1,6 @@
 package com.mbragg.playlister.controllers.audioControllers;
 
-import com.mbragg.playlister.controllers.extractionControllers.FeatureExtractionController;
 import com.mbragg.playlister.controllers.extractionControllers.MetaExtractionController;
-import com.mbragg.playlister.dao.DAO;
-import com.mbragg.playlister.models.BatchTrack;
 import com.mbragg.playlister.models.entitys.Track;
 import com.mbragg.playlister.factories.TrackFactory;
 import com.mbragg.playlister.controllers.extractionControllers.GenreExtractionController;
@@ -20,24 +17,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import javax.sound.sampled.AudioFormat;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
 
 /**
- * Class for coordinating the construction and saving of full Track objects.
+ * Class for coordinating the construction of full Track objects.
  *
  * @author Michael Bragg
  */
 @Component
 public class AudioTrackController {
 
-    private final DAO dao;
     private MetaExtractionController metaExtractionController;
-    private FeatureExtractionController featureExtractionController;
 
     @Autowired
     private Logger logger;
@@ -47,33 +40,26 @@ public class AudioTrackController {
     private Map<String, List<String>> allGenres;
 
     @Autowired
-    public AudioTrackController(DAO dao, MetaExtractionController metaExtractionController, FeatureExtractionController featureExtractionController, GenreExtractionController genreExtractionController) {
-        this.dao = dao;
+    public AudioTrackController(MetaExtractionController metaExtractionController, GenreExtractionController genreExtractionController) {
         this.metaExtractionController = metaExtractionController;
-        this.featureExtractionController = featureExtractionController;
         allGenres = genreExtractionController.build();
     }
 
     /**
-     * Build method. A new complete Track is built. With parameters from the supplied BatchTrack, Metadata and an feature model.
+     * Build method for a model that has already been extracted. A new complete Track is built from the metadata of the
+     * supplied audio file and the supplied model. The Track is not saved.
      *
-     * @param batchTrack Contains the extracted audio parameters needed to build a new Track
+     * @param file  File. The audio file.
+     * @param model MultivariateNormalDistribution. The model extracted from the audio file.
      * @return A new complete Track
      */
-    public Track build(BatchTrack batchTrack) {
+    public Track build(File file, MultivariateNormalDistribution model) {
 
         Track track = TrackFactory.getInstance().getTrack();
 
-        track = addMetaDataToTrack(batchTrack.getFile(), track);
-        try {
-            track = addDistributionModelToTrack(track, batchTrack.getAudio().get(), batchTrack.getAudioFormat());
-        } catch (InterruptedException | ExecutionException e) {
-            logger.log(Level.WARN, e.getMessage());
-        }
-
-        dao.saveTrack(track);
+        track = addMetaDataToTrack(file, track);
 
-        return track;
+        return addDistributionModelToTrack(track, model);
     }
 
     /**
@@ -89,6 +75,8 @@ public class AudioTrackController {
             Map<String, String> meta = metaExtractionController.extract(file);
             track.setFilename(file.getName());
             track.setFilePath(file.getAbsolutePath());
+            track.setFileSize(file.length());
+            track.setLastModified(file.lastModified());
             track.setTitle(meta.get("TITLE"));
             track.setArtist(meta.get("ARTIST"));
             track.setAlbum(meta.get("ALBUM"));
@@ -129,18 +117,15 @@ public class AudioTrackController {
     }
 
     /**
-     * For the supplied Track, builds and sets the Multivariate Normal Distribution model.
+     * For the supplied Track, sets the supplied Multivariate Normal Distribution model.
      *
-     * @param track       Track. The track to parse the model for.
-     * @param audioBytes  byte[]. Array of bytes representing the audio.
-     * @param audioFormat AudioFormat. The extracted and formatted audio file format information.
+     * @param track Track. The track to set the model for.
+     * @param model MultivariateNormalDistribution. The model extracted from the track's audio.
      * @return Track. A reference to the track object.
      */
-    protected Track addDistributionModelToTrack(Track track, byte[] audioBytes, AudioFormat audioFormat) {
+    protected Track addDistributionModelToTrack(Track track, MultivariateNormalDistribution model) {
 
         try {
-            MultivariateNormalDistribution model = featureExtractionController.extract(audioBytes, audioFormat);
-
             RealMatrix matrix = model.getCovariances();
             double[] means = model.getMeans();
 
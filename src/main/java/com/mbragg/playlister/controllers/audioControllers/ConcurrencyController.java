@@ -0,0 +1,130 @@
+package com.mbragg.playlister.controllers.audioControllers;
+
+/**
+ * Decides the number of workers of a stage of the scan pipeline from measurements of the stage, by hill climbing.
+ * <p>
+ * While the workers are kept busy, the controller probes by adding workers, and keeps them only if the throughput
+ * of the stage rises. Throughput that does not rise with more workers means a saturated resource, such as a
+ * spinning disk thrashing under parallel reads, and the probe is reverted. Workers are removed while they are mostly
+ * idle, starved by the stage before or blocked by the stage after. A CPU bound stage is not grown while the CPU is
+ * saturated.
+ *
+ * @author Michael Bragg
+ */
+public class ConcurrencyController {
+
+    // Fraction of their time the workers must be busy for the stage to be limited by its own number of workers.
+    private static final double MINIMUM_UTILISATION = 0.75;
+    // Relative rise in throughput needed to keep the workers added by a probe.
+    private static final double MINIMUM_IMPROVEMENT = 0.1;
+    private static final double CPU_SATURATION = 0.95;
+    // Number of decisions to wait after a failed probe before probing again.
+    private static final int PROBE_BACKOFF = 5;
+    // Minimum number of completed items to base a decision on. Measurements are accumulated until reached.
+    private static final int MINIMUM_ITEMS_PER_DECISION = 4;
+
+    private final int minimumWorkers;
+    private final int maximumWorkers;
+    private final boolean cpuBound;
+    private int workers;
+
+    // Workers before the last probe, or 0 if the last decision was not a probe.
+    private int workersBeforeProbe;
+    private double throughputBeforeProbe;
+    private int backoff;
+
+    private long itemsCompleted;
+    private long busyNanos;
+    private long intervalNanos;
+
+    /**
+     * @param initialWorkers int. Number of workers to start with.
+     * @param minimumWorkers int. Fewest workers to shrink to, at least 1.
+     * @param maximumWorkers int. Most workers to grow to.
+     * @param cpuBound       Boolean. Whether the work of the stage is limited by the CPU.
+     */
+    public ConcurrencyController(int initialWorkers, int minimumWorkers, int maximumWorkers, boolean cpuBound) {
+        if (minimumWorkers < 1 || maximumWorkers < minimumWorkers || initialWorkers < minimumWorkers || initialWorkers > maximumWorkers) {
+            throw new IllegalArgumentException("Invalid number of workers: initial " + initialWorkers
+                    + ", minimum " + minimumWorkers + ", maximum " + maximumWorkers);
+        }
+        this.workers = initialWorkers;
+        this.minimumWorkers = minimumWorkers;
+        this.maximumWorkers = maximumWorkers;
+        this.cpuBound = cpuBound;
+    }
+
+    /**
+     * @param workers int. The fixed number of workers.
+     * @return ConcurrencyController. A controller that never changes the number of workers.
+     */
+    public static ConcurrencyController fixed(int workers) {
+        return new ConcurrencyController(workers, workers, workers, false);
+    }
+
+    /**
+     * @return Boolean. Whether the controller can change the number of workers.
+     */
+    public boolean isAdaptive() {
+        return minimumWorkers < maximumWorkers;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Records the measurements of the stage over an interval, and decides the number of workers.
+     *
+     * @param itemsCompleted long. Number of items the stage completed in the interval.
+     * @param busyNanos      long. Total time the workers of the stage spent working on items in the interval.
+     * @param intervalNanos  long. Length of the interval.
+     * @param cpuLoad        double. Recent CPU load of the system between 0 and 1, or negative if not known.
+     * @return int. The number of workers the stage should have.
+     */
+    public int update(long itemsCompleted, long busyNanos, long intervalNanos, double cpuLoad) {
+        if (!isAdaptive()) {
+            return workers;
+        }
+
+        this.itemsCompleted += itemsCompleted;
+        this.busyNanos += busyNanos;
+        this.intervalNanos += intervalNanos;
+        if (this.itemsCompleted < Math.max(MINIMUM_ITEMS_PER_DECISION, workers) || this.intervalNanos <= 0) {
+            return workers;
+        }
+
+        double throughput = (double) this.itemsCompleted / this.intervalNanos;
+        double utilisation = (double) this.busyNanos / ((double) this.intervalNanos * workers);
+        this.itemsCompleted = 0;
+        this.busyNanos = 0;
+        this.intervalNanos = 0;
+
+        if (workersBeforeProbe > 0) {
+            int probedFrom = workersBeforeProbe;
+            workersBeforeProbe = 0;
+            if (throughput < throughputBeforeProbe * (1 + MINIMUM_IMPROVEMENT)) {
+                workers = probedFrom;
+                backoff = PROBE_BACKOFF;
+                return workers;
+            }
+        }
+
+        if (utilisation < MINIMUM_UTILISATION) {
+            workers = Math.max(minimumWorkers, workers - 1);
+            return workers;
+        }
+
+        if (backoff > 0) {
+            backoff--;
+            return workers;
+        }
+
+        if (workers < maximumWorkers && !(cpuBound && cpuLoad >= CPU_SATURATION)) {
+            workersBeforeProbe = workers;
+            throughputBeforeProbe = throughput;
+            workers = Math.min(maximumWorkers, workers + Math.max(1, workers / 2));
+        }
+        return workers;
+    }
+}
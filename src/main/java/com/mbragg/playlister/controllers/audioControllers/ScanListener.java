@@ -0,0 +1,22 @@
+package com.mbragg.playlister.controllers.audioControllers;
+
+import java.io.File;
+
+/**
+ * Listener for the progress of a scan of a users music files.
+ *
+ * @author Michael Bragg
+ */
+@FunctionalInterface
+public interface ScanListener {
+
+    /**
+     * Called once for every file of the scan, when its Track has been saved or its processing has failed.
+     * Called from the thread running the scan.
+     *
+     * @param file                   File. The audio file that has been processed.
+     * @param numberOfFilesProcessed int. The number of files of the scan processed so far, including this one.
+     * @param numberOfFiles          int. The total number of files of the scan.
+     */
+    void fileProcessed(File file, int numberOfFilesProcessed, int numberOfFiles);
+}
@@ -0,0 +1,587 @@
+package com.mbragg.playlister.controllers.audioControllers;
+
+import com.mbragg.playlister.controllers.extractionControllers.FeatureExtractionController;
+import com.mbragg.playlister.dao.DAO;
+import com.mbragg.playlister.models.PendingExtraction;
+import com.mbragg.playlister.models.entitys.Track;
+import com.mbragg.playlister.tools.file.FileSource;
+import com.mbragg.playlister.tools.file.ScanJournal;
+import com.mbragg.playlister.tools.file.ScanManifest;
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class to control the scanning of audio files into saved Tracks, as a pipeline of stages:
+ * <p>
+ * discover - feeds the files into the pipeline, as they are found.
+ * decode - opens each file for extraction. Parses the container and looks the file up in the feature cache.
+ * featurize - decodes and analyses the audio of each file, building its model.
+ * model - builds each Track from the metadata of its file and its model.
+ * persist - saves each Track and records its file in the scan manifest, on the thread running the scan.
+ * <p>
+ * The stages each file completes are recorded in the scan journal. A scan cut short resumes from the journal: files
+ * already persisted are recorded in the scan manifest without being processed again, and files already modelled are
+ * saved from their recorded model without being analysed again.
+ * <p>
+ * Scans run one at a time: a scan started while another is running, e.g. by the library watch, waits for it to finish.
+ * Tracks are only ever saved from one thread, as saving a Track links it to every Track already saved. The changes
+ * a source makes to the saved Tracks, e.g. removing those of deleted files, run on the same thread, in order with the
+ * files found.
+ * <p>
+ * The stages are connected by bounded queues and each has its own pool of workers, so every stage works on the next
+ * files while the later stages finish the earlier ones, and a stage that falls behind blocks the stages before it.
+ * The decode queue also bounds the number of files held open at once. The pools split the blocking IO from the CPU
+ * bound work: the decode and model stages open files and read their tags, and the featurize stage analyses the audio,
+ * in chunks on the CPU executor when extraction is parallel.
+ * <p>
+ * The decode and featurize stages are sized at run time by ConcurrencyControllers, from the throughput and busy time
+ * of their workers and the CPU load, unless their number of workers is set by property.
+ *
+ * @author Michael Bragg
+ */
+@Component
+public class ScanPipelineController {
+
+    private static final String DISCOVER = "discover";
+    private static final String DECODE = "decode";
+    private static final String FEATURIZE = "featurize";
+    private static final String MODEL = "model";
+    // getCpuLoad replaced the deprecated getSystemCpuLoad in Java 14, so the one the JVM has is looked up by name.
+    private static final Method CPU_LOAD = getCpuLoadMethod("getCpuLoad", "getSystemCpuLoad");
+
+    private final FeatureExtractionController featureExtractionController;
+    private final AudioTrackController audioTrackController;
+    private final DAO dao;
+    private final ScanManifest scanManifest;
+    private final ScanJournal scanJournal;
+    private final Logger logger;
+    private final Lock scanLock = new ReentrantLock();
+
+    private int decodeThreads = 1;
+    private int featurizeThreads = 1;
+    private int modelThreads = 1;
+    private int queueCapacity = 1;
+    private long adaptiveIntervalMs = 1000;
+
+    @Autowired
+    public ScanPipelineController(FeatureExtractionController featureExtractionController, AudioTrackController audioTrackController, DAO dao, ScanManifest scanManifest, ScanJournal scanJournal, Logger logger) {
+        this.featureExtractionController = featureExtractionController;
+        this.audioTrackController = audioTrackController;
+        this.dao = dao;
+        this.scanManifest = scanManifest;
+        this.scanJournal = scanJournal;
+        this.logger = logger;
+    }
+
+    /**
+     * Sets the number of workers of each stage and the capacity of the queues between them.
+     *
+     * @param decodeThreads    int. Number of workers opening files, 0 to size the stage adaptively.
+     * @param featurizeThreads int. Number of workers analysing files, 0 to size the stage adaptively.
+     * @param modelThreads     int. Number of workers building Tracks.
+     * @param queueCapacity    int. Maximum number of files waiting between two stages.
+     */
+    @Autowired
+    public void setPipelineSize(@Value("${pipelineDecodeThreads}") int decodeThreads,
+                                @Value("${pipelineFeaturizeThreads}") int featurizeThreads,
+                                @Value("${pipelineModelThreads}") int modelThreads,
+                                @Value("${pipelineQueueCapacity}") int queueCapacity) {
+        if (decodeThreads < 0 || featurizeThreads < 0 || modelThreads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Invalid pipeline size: decode " + decodeThreads + ", featurize " + featurizeThreads
+                    + ", model " + modelThreads + ", queue capacity " + queueCapacity);
+        }
+        this.decodeThreads = decodeThreads;
+        this.featurizeThreads = featurizeThreads;
+        this.modelThreads = modelThreads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets how often the adaptively sized stages are measured and resized.
+     *
+     * @param adaptiveIntervalMs long. Interval between measurements in milliseconds.
+     */
+    @Autowired
+    public void setAdaptiveInterval(@Value("${pipelineAdaptiveIntervalMs}") long adaptiveIntervalMs) {
+        if (adaptiveIntervalMs < 1) {
+            throw new IllegalArgumentException("Invalid adaptive interval: " + adaptiveIntervalMs);
+        }
+        this.adaptiveIntervalMs = adaptiveIntervalMs;
+    }
+
+    /**
+     * Scans a list of audio files, saving a Track for each. Blocks until every file has been processed.
+     * A file that fails to process is logged and skipped.
+     *
+     * @param files    List of files to process.
+     * @param listener ScanListener. Notified as each file is processed, on the calling thread.
+     * @return int. The number of Tracks saved by this scan, not counting those saved by a scan cut short.
+     * @throws InterruptedException if the calling thread is interrupted, i.e. the scan is cancelled.
+     *                              The workers are stopped and the files still open are closed.
+     */
+    public int scan(List<File> files, ScanListener listener) throws InterruptedException {
+        return scan((filesToProcess, graphUpdates) -> files.forEach(filesToProcess), files.size(), listener);
+    }
+
+    /**
+     * Scans the audio files of a source as they are found, saving a Track for each, so the first files are analysed
+     * while the source is still walking. Blocks until every file has been processed.
+     * A file that fails to process is logged and skipped.
+     *
+     * @param source   ScanSource. The source of the files to process, walked by the discover stage.
+     * @param listener ScanListener. Notified as each file is processed, on the calling thread, with the number of
+     *                 files found so far as the total.
+     * @return int. The number of Tracks saved by this scan, not counting those saved by a scan cut short.
+     * @throws InterruptedException if the calling thread is interrupted, i.e. the scan is cancelled.
+     *                              The source and the workers are stopped and the files still open are closed.
+     */
+    public int scan(ScanSource source, ScanListener listener) throws InterruptedException {
+        return scan(source, -1, listener);
+    }
+
+    /*
+     * Runs the pipeline, once any scan running has finished.
+     */
+    private int scan(ScanSource source, int numberOfFiles, ScanListener listener) throws InterruptedException {
+        scanLock.lockInterruptibly();
+        try {
+            return runPipeline(source, numberOfFiles, listener);
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+    /*
+     * Runs the pipeline. The total number of files is counted as they are found if it is not known.
+     * The changes of the source to the saved Tracks skip the stages, queued straight for the persist loop, so they
+     * run before the Tracks of the files found after them.
+     */
+    private int runPipeline(ScanSource source, int numberOfFiles, ScanListener listener) throws InterruptedException {
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        ConcurrencyController decodeConcurrency = getConcurrencyController(decodeThreads, 4 * processors, false);
+        ConcurrencyController featurizeConcurrency = getConcurrencyController(featurizeThreads, 2 * processors, true);
+
+        logger.log(Level.INFO, "Scan pipeline starting [decode " + describe(decodeConcurrency) + ", featurize " + describe(featurizeConcurrency)
+                + ", model " + modelThreads + ", queue capacity " + queueCapacity + "]");
+
+        BlockingQueue<ScanItem> discovered = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<ScanItem> decoded = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<ScanItem> featurized = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<ScanItem> modelled = new ArrayBlockingQueue<>(queueCapacity);
+
+        List<Stage> stages = new ArrayList<>();
+        stages.add(new Stage(DISCOVER, ConcurrencyController.fixed(1), null, discovered, null));
+        stages.add(new Stage(DECODE, decodeConcurrency, discovered, decoded, item -> {
+            if (item.model == null) {
+                item.pendingExtraction = featureExtractionController.open(item.file);
+                scanJournal.decoded(item.file);
+            }
+        }));
+        stages.add(new Stage(FEATURIZE, featurizeConcurrency, decoded, featurized, item -> {
+            if (item.model == null) {
+                try (PendingExtraction pendingExtraction = item.pendingExtraction) {
+                    item.model = featureExtractionController.extract(pendingExtraction);
+                }
+                scanJournal.modelled(item.file, item.model);
+            }
+        }));
+        stages.add(new Stage(MODEL, ConcurrencyController.fixed(modelThreads), featurized, modelled,
+                item -> item.track = audioTrackController.build(item.file, item.model)));
+
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scan-concurrency");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        AtomicInteger numberOfFilesFound = new AtomicInteger();
+        int numberOfFilesProcessed = 0;
+        int numberOfTracksSaved = 0;
+        boolean complete = false;
+        Executor graphUpdates = graphUpdate -> {
+            try {
+                modelled.put(ScanItem.graphUpdate(graphUpdate));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+        };
+        scanJournal.open();
+        try {
+            stages.get(0).start(consumer -> source.walk(file -> {
+                numberOfFilesFound.incrementAndGet();
+                consumer.accept(file);
+            }, graphUpdates));
+            for (Stage stage : stages.subList(1, stages.size())) {
+                stage.start(null);
+            }
+            monitor.scheduleAtFixedRate(() -> {
+                double cpuLoad = getCpuLoad();
+                for (Stage stage : stages) {
+                    stage.adapt(cpuLoad);
+                }
+            }, adaptiveIntervalMs, adaptiveIntervalMs, TimeUnit.MILLISECONDS);
+
+            ScanItem item;
+            while ((item = modelled.take()) != ScanItem.END) {
+                if (item.graphUpdate != null) {
+                    try {
+                        item.graphUpdate.run();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARN, "Unable to update the saved Tracks: " + e.getMessage());
+                    }
+                    continue;
+                }
+                if (item.failed == null) {
+                    try {
+                        if (item.resumed) {
+                            // the Track may have been saved before the scan was cut short
+                            dao.deleteTrack(item.file.getAbsolutePath());
+                        }
+                        if (!item.persisted) {
+                            dao.saveTrack(item.track);
+                            scanJournal.persisted(item.file);
+                            numberOfTracksSaved++;
+                        }
+                    } catch (RuntimeException e) {
+                        item.failed = e;
+                    }
+                    if (item.failed == null) {
+                        try {
+                            scanManifest.record(item.file);
+                        } catch (IOException e) {
+                            logger.log(Level.WARN, "Unable to record " + item.file.getName() + " in the scan manifest: " + e.getMessage());
+                        }
+                    }
+                }
+                if (item.failed != null) {
+                    logger.log(Level.WARN, "Unable to process " + item.file.getName() + ": " + item.failed.getMessage());
+                }
+                listener.fileProcessed(item.file, ++numberOfFilesProcessed, numberOfFiles >= 0 ? numberOfFiles : numberOfFilesFound.get());
+            }
+            complete = true;
+        } catch (InterruptedException e) {
+            monitor.shutdownNow();
+            for (Stage stage : stages) {
+                stage.stop();
+            }
+            for (BlockingQueue<ScanItem> queue : Arrays.asList(discovered, decoded, featurized, modelled)) {
+                for (ScanItem pendingItem : queue) {
+                    pendingItem.close();
+                }
+            }
+            throw e;
+        } finally {
+            monitor.shutdownNow();
+            for (Stage stage : stages) {
+                stage.shutdown();
+            }
+            scanManifest.save();
+            scanJournal.close(complete);
+        }
+
+        logger.log(Level.INFO, "Scan pipeline complete. Tracks saved: " + numberOfTracksSaved + " of " + numberOfFilesProcessed);
+
+        return numberOfTracksSaved;
+    }
+
+    /**
+     * Creates the controller of the number of workers of a stage.
+     *
+     * @param threads        int. Number of workers set by property, 0 to size the stage adaptively.
+     * @param maximumWorkers int. Most workers an adaptively sized stage grows to.
+     * @param cpuBound       Boolean. Whether the work of the stage is limited by the CPU.
+     * @return ConcurrencyController. The controller for the stage.
+     */
+    protected ConcurrencyController getConcurrencyController(int threads, int maximumWorkers, boolean cpuBound) {
+        if (threads > 0) {
+            return ConcurrencyController.fixed(threads);
+        }
+        return new ConcurrencyController(Math.min(2, maximumWorkers), 1, maximumWorkers, cpuBound);
+    }
+
+    /**
+     * @return double. Recent CPU load of the system between 0 and 1, or negative if not known.
+     */
+    protected double getCpuLoad() {
+        OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        if (CPU_LOAD != null && operatingSystem instanceof com.sun.management.OperatingSystemMXBean) {
+            try {
+                return (double) CPU_LOAD.invoke(operatingSystem);
+            } catch (ReflectiveOperationException e) {
+                // fall back to the load average
+            }
+        }
+        double loadAverage = operatingSystem.getSystemLoadAverage();
+        return loadAverage < 0 ? loadAverage : Math.min(1.0, loadAverage / operatingSystem.getAvailableProcessors());
+    }
+
+    /*
+     * Finds the first of the named methods of the extended OperatingSystemMXBean, or null if it has none of them.
+     */
+    private static Method getCpuLoadMethod(String... names) {
+        for (String name : names) {
+            try {
+                return com.sun.management.OperatingSystemMXBean.class.getMethod(name);
+            } catch (NoSuchMethodException e) {
+                // try the next name
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Creates the item of a file found, carrying on from the stage recorded for it in the scan journal.
+     */
+    private ScanItem newScanItem(File file) {
+        ScanItem item = new ScanItem(file);
+        if (scanJournal.getStage(file) == ScanJournal.Stage.PERSISTED) {
+            item.persisted = true;
+        } else {
+            item.model = scanJournal.getModel(file);
+            item.resumed = item.model != null;
+        }
+        return item;
+    }
+
+    private static String describe(ConcurrencyController concurrencyController) {
+        return concurrencyController.isAdaptive() ? "adaptive" : String.valueOf(concurrencyController.getWorkers());
+    }
+
+    /**
+     * The work done on a file by a stage of the pipeline.
+     */
+    @FunctionalInterface
+    private interface StageOperation {
+        void process(ScanItem item) throws Exception;
+    }
+
+    /**
+     * A file passing through the pipeline, and what the stages have produced for it so far.
+     * A file that fails in a stage is passed on marked as failed, and skipped by the later stages,
+     * so that every file reaches the persist stage to be counted. So is a file already persisted by a scan cut short.
+     */
+    private static class ScanItem {
+
+        // Marks the end of the files. Passed on by the last worker of each stage to finish.
+        private static final ScanItem END = new ScanItem(null);
+
+        private final File file;
+        // A change to the saved Tracks, in place of a file, run by the persist loop.
+        private Runnable graphUpdate;
+        private PendingExtraction pendingExtraction;
+        private MultivariateNormalDistribution model;
+        private Track track;
+        private Throwable failed;
+        // Whether the model was recorded in the scan journal, or the Track saved, by a scan cut short.
+        private boolean resumed;
+        private boolean persisted;
+
+        private ScanItem(File file) {
+            this.file = file;
+        }
+
+        private static ScanItem graphUpdate(Runnable graphUpdate) {
+            ScanItem item = new ScanItem(null);
+            item.graphUpdate = graphUpdate;
+            return item;
+        }
+
+        private void close() {
+            if (pendingExtraction != null) {
+                try {
+                    pendingExtraction.close();
+                } catch (IOException e) {
+                    // nothing further to release
+                }
+            }
+        }
+    }
+
+    /**
+     * A stage of the pipeline. Its workers take files from the input queue, process them and put them on the output
+     * queue, blocking while the output queue is full. The discover stage has no input queue or operation, and puts the
+     * files of the source as it walks them. The number of workers follows the ConcurrencyController of the stage: workers are added
+     * as needed, and retire before taking their next file while there are too many.
+     */
+    private class Stage {
+
+        private final String name;
+        private final ConcurrencyController concurrencyController;
+        private final BlockingQueue<ScanItem> input;
+        private final BlockingQueue<ScanItem> output;
+        private final StageOperation operation;
+        // Workers that have not finished. Once the last has passed on the end of the files, stays 0.
+        private final AtomicInteger runningWorkers = new AtomicInteger();
+        private final AtomicLong itemsCompleted = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private volatile int targetWorkers;
+        private long lastAdapted;
+        private ExecutorService executorService;
+
+        private Stage(String name, ConcurrencyController concurrencyController, BlockingQueue<ScanItem> input, BlockingQueue<ScanItem> output, StageOperation operation) {
+            this.name = name;
+            this.concurrencyController = concurrencyController;
+            this.input = input;
+            this.output = output;
+            this.operation = operation;
+        }
+
+        private void start(FileSource source) {
+            AtomicInteger workerNumber = new AtomicInteger();
+            executorService = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "scan-" + name + "-" + workerNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            lastAdapted = System.nanoTime();
+            if (source != null) {
+                runningWorkers.set(1);
+                executorService.execute(() -> discover(source));
+                return;
+            }
+            targetWorkers = concurrencyController.getWorkers();
+            runningWorkers.set(targetWorkers);
+            for (int i = 0; i < targetWorkers; i++) {
+                executorService.execute(this::work);
+            }
+        }
+
+        /**
+         * Measures the stage since it was last measured, and resizes it as its ConcurrencyController decides.
+         *
+         * @param cpuLoad double. Recent CPU load of the system between 0 and 1, or negative if not known.
+         */
+        private void adapt(double cpuLoad) {
+            if (!concurrencyController.isAdaptive()) {
+                return;
+            }
+            long now = System.nanoTime();
+            int workers = concurrencyController.update(itemsCompleted.getAndSet(0), busyNanos.getAndSet(0), now - lastAdapted, cpuLoad);
+            lastAdapted = now;
+
+            if (workers != targetWorkers) {
+                logger.log(Level.INFO, "Scan pipeline " + name + " workers: " + targetWorkers + " -> " + workers);
+                targetWorkers = workers;
+                int running;
+                while ((running = runningWorkers.get()) > 0 && running < workers) {
+                    if (runningWorkers.compareAndSet(running, running + 1)) {
+                        try {
+                            executorService.execute(this::work);
+                        } catch (RejectedExecutionException e) {
+                            runningWorkers.decrementAndGet();
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void discover(FileSource source) {
+            try {
+                try {
+                    source.walk(file -> {
+                        try {
+                            output.put(newScanItem(file));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new CancellationException();
+                        }
+                    });
+                } catch (RuntimeException | Error e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    // the files found so far are still processed
+                    logger.log(Level.ERROR, "Unable to find the files to scan: " + e.getMessage());
+                }
+                output.put(ScanItem.END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void work() {
+            ScanItem item = null;
+            try {
+                while (true) {
+                    int running = runningWorkers.get();
+                    if (running > targetWorkers) {
+                        if (runningWorkers.compareAndSet(running, running - 1)) {
+                            return;
+                        }
+                        continue;
+                    }
+
+                    item = input.take();
+                    if (item == ScanItem.END) {
+                        break;
+                    }
+                    if (item.failed == null && !item.persisted) {
+                        long start = System.nanoTime();
+                        try {
+                            operation.process(item);
+                        } catch (Exception | Error e) {
+                            // errors too, e.g. a decoder overflowing its stack, or the worker would die holding the item
+                            item.failed = e;
+                            item.close();
+                        }
+                        busyNanos.addAndGet(System.nanoTime() - start);
+                    }
+                    itemsCompleted.incrementAndGet();
+                    output.put(item);
+                    item = null;
+                }
+                // leave the end of the files for the other workers of this stage
+                input.put(ScanItem.END);
+                if (runningWorkers.decrementAndGet() == 0) {
+                    output.put(ScanItem.END);
+                }
+            } catch (InterruptedException e) {
+                if (item != null && item != ScanItem.END) {
+                    item.close();
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void stop() {
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+        }
+
+        private void shutdown() {
+            if (executorService != null) {
+                executorService.shutdown();
+            }
+        }
+    }
+}
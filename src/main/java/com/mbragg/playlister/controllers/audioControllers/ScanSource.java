@@ -0,0 +1,25 @@
+package com.mbragg.playlister.controllers.audioControllers;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * A source of the audio files of a scan, which may also change the Tracks already saved, e.g. removing the Tracks of
+ * files that have been deleted.
+ *
+ * @author Michael Bragg
+ */
+@FunctionalInterface
+public interface ScanSource {
+
+    /**
+     * Finds the files to scan. Blocks until every file has been passed on.
+     *
+     * @param filesToProcess Consumer of each file to process. May be called from several threads at once.
+     * @param graphUpdates   Executor of the changes to the saved Tracks. The changes run on the thread saving the
+     *                       Tracks, before the Tracks of any files passed on after them.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    void walk(Consumer<File> filesToProcess, Executor graphUpdates) throws InterruptedException;
+}
@@ -1,19 +1,45 @@
 package com.mbragg.playlister.controllers.extractionControllers;
 
+import com.mbragg.playlister.models.AnalysisBudget;
+import com.mbragg.playlister.models.AudioInputStreamSampleSource;
+import com.mbragg.playlister.models.SampleSource;
 import com.mbragg.playlister.models.Samples;
 import com.mbragg.playlister.models.AudioStream;
+import com.mbragg.playlister.models.FeatureMatrix;
+import com.mbragg.playlister.models.PendingExtraction;
 import com.mbragg.playlister.factories.FeatureFactory;
+import com.mbragg.playlister.features.BufferedFeature;
+import com.mbragg.playlister.features.ContextFeature;
 import com.mbragg.playlister.features.Feature;
+import com.mbragg.playlister.features.WindowContext;
 import com.mbragg.playlister.models.TrackModel;
-import org.apache.commons.lang3.ArrayUtils;
+import com.mbragg.playlister.tools.file.FeatureCache;
+import com.mbragg.playlister.tools.numbers.OnlineCovariance;
 import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.sound.sampled.AudioFormat;
-import java.util.*;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 
 /**
  * Controls the feature extraction processes and model construction.
@@ -25,20 +51,57 @@ public class FeatureExtractionController {
 
     private static final int WINDOW_SIZE = 512;
     private static final double WINDOW_OVERLAP = 0.0;
+    // Windows accumulated separately before merging. Fixed, so the sequential and parallel paths merge identically.
+    private static final int WINDOWS_PER_CHUNK = 256;
     private int windowOverlapOffset;
 
-    private AudioStream audioStream;
+    @Value("${parallelExtraction}")
+    private boolean parallelExtraction;
+    // CPU bound work: the analysis of chunks of windows.
+    private ForkJoinPool forkJoinPool;
+    private AnalysisBudget analysisBudget = AnalysisBudget.unlimited();
+
+    @Autowired
+    private Logger logger;
+
     private Samples samples;
     private TrackModel trackModel;
+    private AudioStream audioStream;
+    private FeatureCache featureCache;
+
+    public FeatureExtractionController(Samples samples, TrackModel trackModel) {
+        this(samples, trackModel, new AudioStream(samples), FeatureCache.disabled());
+    }
+
+    public FeatureExtractionController(Samples samples, TrackModel trackModel, AudioStream audioStream, FeatureCache featureCache) {
+        this(samples, trackModel, audioStream, featureCache, ForkJoinPool.commonPool());
+    }
 
     @Autowired
-    public FeatureExtractionController(AudioStream audioStream, Samples samples, TrackModel trackModel) {
-        this.audioStream = audioStream;
+    public FeatureExtractionController(Samples samples, TrackModel trackModel, AudioStream audioStream, FeatureCache featureCache,
+                                       @Qualifier("cpuExecutor") ForkJoinPool cpuExecutor) {
         this.samples = samples;
         this.trackModel = trackModel;
+        this.audioStream = audioStream;
+        this.featureCache = featureCache;
+        this.forkJoinPool = cpuExecutor;
         this.windowOverlapOffset = (int) (WINDOW_OVERLAP * (double) WINDOW_SIZE);
     }
 
+    /**
+     * Sets the analysis budget, which limits the windows of each track that are analysed.
+     *
+     * @param segments       int. Number of evenly spaced segments to analyse, 0 for no segments.
+     * @param segmentSeconds double. Length of each segment in seconds, 0 for no limit.
+     * @param maxWindows     int. Maximum number of windows to analyse, 0 for no limit.
+     */
+    @Autowired
+    public void setAnalysisBudget(@Value("${analysisSegments}") int segments,
+                                  @Value("${analysisSegmentSeconds}") double segmentSeconds,
+                                  @Value("${analysisMaxWindows}") int maxWindows) {
+        this.analysisBudget = new AnalysisBudget(segments, segmentSeconds, maxWindows);
+    }
+
     /**
      * Extract method. Main method to run the feature extraction process.
      *
@@ -47,14 +110,468 @@ public class FeatureExtractionController {
      * @return a MultivariateNormalDistribution model that represents an audio file.
      */
     public MultivariateNormalDistribution extract(byte[] audioBytes, AudioFormat audioFormat) {
+        return extract(getSamples(audioBytes, audioFormat), audioFormat.getSampleRate());
+    }
 
-        double[] samples = getSamples(audioBytes, audioFormat);
+    /**
+     * Builds the model of a track from all of its samples.
+     *
+     * @param samples      double[] samples of a audio file.
+     * @param samplingRate double. Sampling rate of the samples.
+     * @return a MultivariateNormalDistribution model that represents an audio file.
+     */
+    private MultivariateNormalDistribution extract(double[] samples, double samplingRate) {
+
+        int[] windowStartPositions = calculateWindowStartPositions(samples.length);
+        int[][] segments = analysisBudget.selectWindows(windowStartPositions.length, getWindowsPerSecond(samplingRate));
+        if (segments.length > 1 || segments[0][1] - segments[0][0] < windowStartPositions.length) {
+            return trackModel.buildFromAccumulator(accumulateSegments(samples, samplingRate, segments, FeatureFactory.getInstance()::getFeatureList));
+        }
+
+        if (parallelExtraction && windowStartPositions.length > WINDOWS_PER_CHUNK) {
+            return trackModel.buildFromAccumulator(accumulateFeaturesInParallel(samples, samplingRate, FeatureFactory.getInstance()::getFeatureList));
+        }
 
         List<Feature> featuresToExtract = FeatureFactory.getInstance().getFeatureList();
 
-        double[][][] results = getFeatures(samples, featuresToExtract);
+        return trackModel.buildFromAccumulator(accumulateFeatures(samples, samplingRate, featuresToExtract));
+    }
+
+    /**
+     * Streaming extract method. Decodes and analyses the audio input stream a window at a time,
+     * so the decoded audio is never held in memory as a whole.
+     *
+     * @param audioInputStream AudioInputStream. The formatted audio input stream of an audio file. Closed once read.
+     * @return a MultivariateNormalDistribution model that represents an audio file.
+     * @throws IOException if the audio input stream can not be read.
+     */
+    public MultivariateNormalDistribution extract(AudioInputStream audioInputStream) throws IOException {
+        try (SampleSource sampleSource = new AudioInputStreamSampleSource(audioInputStream, samples)) {
+            return extract(sampleSource);
+        }
+    }
+
+    /**
+     * Opens an audio file for feature extraction. Looks the file up in the feature cache when it is enabled,
+     * and opens it as a sample source unless its feature matrix was cached.
+     *
+     * @param file File. The audio file.
+     * @return PendingExtraction. The opened file, to be analysed by extract(PendingExtraction).
+     * @throws IOException                   if the file can not be read.
+     * @throws UnsupportedAudioFileException if the file format is not supported.
+     */
+    public PendingExtraction open(File file) throws IOException, UnsupportedAudioFileException {
+        if (!featureCache.isEnabled()) {
+            return new PendingExtraction(null, null, audioStream.openSampleSource(file));
+        }
+
+        String key = featureCache.getKey(file, getFeatureConfiguration());
+        FeatureMatrix featureMatrix = featureCache.read(key);
+        return featureMatrix != null
+                ? new PendingExtraction(key, featureMatrix, null)
+                : new PendingExtraction(key, null, audioStream.openSampleSource(file));
+    }
+
+    /**
+     * Builds the model of an opened audio file. With the feature cache enabled the model is built from the feature matrix,
+     * which is written to the cache on a miss, so a track has the same model whether or not its features came from the cache.
+     * Does not close the pending extraction.
+     *
+     * @param pendingExtraction PendingExtraction. The audio file opened by open(File).
+     * @return a MultivariateNormalDistribution model that represents the audio file.
+     * @throws IOException if the sample source can not be read.
+     */
+    public MultivariateNormalDistribution extract(PendingExtraction pendingExtraction) throws IOException {
+        if (pendingExtraction.getCacheKey() == null) {
+            return extract(pendingExtraction.getSampleSource());
+        }
+
+        FeatureMatrix featureMatrix = pendingExtraction.getCachedFeatureMatrix();
+        if (featureMatrix == null) {
+            featureMatrix = extractFeatureMatrix(pendingExtraction.getSampleSource());
+            featureCache.write(pendingExtraction.getCacheKey(), featureMatrix);
+        }
+        return trackModel.buildFromAccumulator(accumulateFeatureMatrix(featureMatrix));
+    }
+
+    /**
+     * Describes everything other than the audio that the feature matrix of a track depends on,
+     * so that cached feature matrices are only reused for the same analysis.
+     *
+     * @return String. The window size and overlap, the analysis budget and the features extracted.
+     */
+    protected String getFeatureConfiguration() {
+        StringBuilder configuration = new StringBuilder()
+                .append("windowSize=").append(WINDOW_SIZE)
+                .append(",windowOverlap=").append(WINDOW_OVERLAP)
+                .append(",budget=").append(analysisBudget)
+                .append(",features=");
+        for (Feature feature : FeatureFactory.getInstance().getFeatureList()) {
+            configuration.append(feature.getClass().getName());
+            if (feature instanceof BufferedFeature) {
+                configuration.append(':').append(((BufferedFeature) feature).getDimension());
+            }
+            configuration.append(';');
+        }
+        return configuration.toString();
+    }
+
+    /**
+     * Extracts the feature vectors of the windows of a sample source, keeping every row rather than accumulating them.
+     * Applies the analysis budget, and analyses chunks of windows on the fork/join pool when extraction is parallel.
+     *
+     * @param sampleSource SampleSource. Source of the mono samples of an audio file.
+     * @return FeatureMatrix. The feature vectors of the analysed windows, in window order.
+     * @throws IOException if the sample source can not be read.
+     */
+    protected FeatureMatrix extractFeatureMatrix(SampleSource sampleSource) throws IOException {
+        int[][] segments = selectSegments(sampleSource);
+        FeatureMatrix featureMatrix = segments != null
+                ? analyseSegments(sampleSource, segments, FeatureFactory.getInstance()::getFeatureList, this::recordWindows, this::append)
+                : analyseChunks(sampleSource, FeatureFactory.getInstance()::getFeatureList, this::recordWindows, this::append, parallelExtraction);
+
+        return featureMatrix != null ? featureMatrix : new FeatureMatrix(0);
+    }
+
+    /**
+     * Accumulates the rows of a feature matrix in chunks of WINDOWS_PER_CHUNK windows, as the other extraction paths do.
+     *
+     * @param featureMatrix FeatureMatrix. The feature vectors of the analysed windows of a track.
+     * @return OnlineCovariance. The accumulated mean and covariance of the feature vectors.
+     */
+    protected OnlineCovariance accumulateFeatureMatrix(FeatureMatrix featureMatrix) {
+        ChunkedAccumulator accumulator = new ChunkedAccumulator();
+        double[] featureVector = new double[featureMatrix.getDimension()];
+
+        for (int row = 0; row < featureMatrix.getNumberOfRows(); row++) {
+            featureMatrix.getRow(row, featureVector);
+            accumulator.add(featureVector);
+        }
+        return accumulator.getAccumulator();
+    }
+
+    /**
+     * Streaming extract method. Reads the sample source a window at a time and extracts the features of each window
+     * as soon as it is complete. Produces the same windows as the buffered extract method.
+     * The analysis budget is only applied when the length of the sample source is known, as the segments are spaced over the whole track.
+     *
+     * @param sampleSource SampleSource. Source of the mono samples of an audio file.
+     * @return a MultivariateNormalDistribution model that represents an audio file.
+     * @throws IOException if the sample source can not be read.
+     */
+    protected MultivariateNormalDistribution extract(SampleSource sampleSource) throws IOException {
+
+        int[][] segments = selectSegments(sampleSource);
+        if (segments != null) {
+            return trackModel.buildFromAccumulator(accumulateSegments(sampleSource, segments, FeatureFactory.getInstance()::getFeatureList));
+        }
+
+        if (parallelExtraction) {
+            return trackModel.buildFromAccumulator(accumulateInParallel(sampleSource, FeatureFactory.getInstance()::getFeatureList));
+        }
+
+        List<Feature> featuresToExtract = FeatureFactory.getInstance().getFeatureList();
+        WindowAnalysis windowAnalysis = new WindowAnalysis(featuresToExtract, sampleSource.getSampleRate(), false);
+        int windowStep = WINDOW_SIZE - windowOverlapOffset;
+
+        double[] window = new double[WINDOW_SIZE];
+        int samplesInWindow = 0;
+        int numberOfSamplesRead = 0;
+
+        while (numberOfSamplesRead >= 0) {
+            numberOfSamplesRead = sampleSource.read(window, samplesInWindow, WINDOW_SIZE - samplesInWindow);
+
+            if (numberOfSamplesRead > 0) {
+                samplesInWindow += numberOfSamplesRead;
+            }
+
+            if (samplesInWindow == WINDOW_SIZE) {
+                windowAnalysis.add(window);
+                samplesInWindow = shiftWindow(window, windowStep);
+            }
+        }
+
+        // Windows that start before the end of the file, padded with zeros.
+        while (samplesInWindow > 0) {
+            Arrays.fill(window, samplesInWindow, WINDOW_SIZE, 0.0);
+            windowAnalysis.add(window);
+            samplesInWindow = Math.max(shiftWindow(window, windowStep) - (WINDOW_SIZE - samplesInWindow), 0);
+        }
+
+        return trackModel.buildFromAccumulator(windowAnalysis.getAccumulator());
+    }
+
+    /**
+     * Parallel streaming method. Reads the sample source a chunk of WINDOWS_PER_CHUNK windows at a time and analyses
+     * each chunk on the fork/join pool while the next is read. The partial accumulators are merged in window order,
+     * so the result is the same as the sequential streaming method. At most two chunks per pool thread are held in memory.
+     *
+     * @param sampleSource        SampleSource. Source of the mono samples of an audio file.
+     * @param featureListSupplier Supplier of a new list of features, called once per chunk as features are not thread safe.
+     * @return OnlineCovariance. The accumulated mean and covariance of the feature vectors.
+     * @throws IOException if the sample source can not be read.
+     */
+    protected OnlineCovariance accumulateInParallel(SampleSource sampleSource, Supplier<List<Feature>> featureListSupplier) throws IOException {
+        OnlineCovariance accumulator = analyseChunks(sampleSource, featureListSupplier, this::accumulateWindows, this::merge, true);
+        return accumulator != null ? accumulator : new OnlineCovariance(0);
+    }
+
+    /**
+     * Reads the sample source a chunk of WINDOWS_PER_CHUNK windows at a time and analyses each chunk, on the fork/join
+     * pool while the next is read if parallel. The results of the chunks are combined in window order.
+     *
+     * @param sampleSource        SampleSource. Source of the mono samples of an audio file.
+     * @param featureListSupplier Supplier of a new list of features, called once per chunk as features are not thread safe.
+     * @param analysis            WindowRangeAnalysis. Analyses the windows of a chunk.
+     * @param combine             Combines the total so far, null for the first chunk, with the result of the next chunk.
+     * @param parallel            boolean. Whether the chunks are analysed on the fork/join pool.
+     * @return The combined result, or null if the sample source is empty.
+     * @throws IOException if the sample source can not be read.
+     */
+    private <T> T analyseChunks(SampleSource sampleSource, Supplier<List<Feature>> featureListSupplier, WindowRangeAnalysis<T> analysis,
+                                BinaryOperator<T> combine, boolean parallel) throws IOException {
+        int windowStep = WINDOW_SIZE - windowOverlapOffset;
+        // The samples of all the windows of a chunk. The last windowOverlapOffset samples also start the next chunk.
+        int chunkLength = (WINDOWS_PER_CHUNK - 1) * windowStep + WINDOW_SIZE;
+        int maximumPendingChunks = 2 * forkJoinPool.getParallelism();
+        double samplingRate = sampleSource.getSampleRate();
+
+        Deque<ForkJoinTask<T>> pendingChunks = new ArrayDeque<>();
+        T result = null;
+
+        double[] chunk = new double[chunkLength];
+        int samplesInChunk = 0;
+        boolean endOfSource = false;
+
+        while (!endOfSource) {
+            int numberOfSamplesRead = readFully(sampleSource, chunk, samplesInChunk, chunkLength - samplesInChunk);
+            endOfSource = samplesInChunk + numberOfSamplesRead < chunkLength;
+            samplesInChunk += numberOfSamplesRead;
+
+            if (samplesInChunk == 0) {
+                break;
+            }
+
+            // Windows that start in this chunk, the last padded with zeros if the chunk is not full.
+            int[] windowStartPositions = calculateWindowStartPositions(samplesInChunk);
+            int numberOfWindows = Math.min(windowStartPositions.length, WINDOWS_PER_CHUNK);
+            double[] chunkSamples = chunk;
+            pendingChunks.add(submit(() -> analysis.analyse(chunkSamples, windowStartPositions, 0, numberOfWindows,
+                    featureListSupplier.get(), samplingRate), parallel));
+
+            if (pendingChunks.size() >= maximumPendingChunks) {
+                result = combine.apply(result, pendingChunks.poll().join());
+            }
+
+            if (!endOfSource) {
+                chunk = new double[chunkLength];
+                System.arraycopy(chunkSamples, chunkLength - windowOverlapOffset, chunk, 0, windowOverlapOffset);
+                samplesInChunk = windowOverlapOffset;
+            }
+        }
+
+        while (!pendingChunks.isEmpty()) {
+            result = combine.apply(result, pendingChunks.poll().join());
+        }
+
+        return result;
+    }
+
+    /**
+     * Budgeted streaming method. Reads only the samples of the selected window ranges, skipping the rest of the
+     * sample source, and merges the accumulators of the ranges in track order.
+     *
+     * @param sampleSource        SampleSource. Source of the mono samples of an audio file.
+     * @param segments            int[][]. Non overlapping {first window, last window exclusive} ranges, in track order.
+     * @param featureListSupplier Supplier of a new list of features.
+     * @return OnlineCovariance. The accumulated mean and covariance of the feature vectors of the selected windows.
+     * @throws IOException if the sample source can not be read.
+     */
+    protected OnlineCovariance accumulateSegments(SampleSource sampleSource, int[][] segments, Supplier<List<Feature>> featureListSupplier) throws IOException {
+        OnlineCovariance accumulator = analyseSegments(sampleSource, segments, featureListSupplier, this::accumulateWindows, this::merge);
+        return accumulator != null ? accumulator : new OnlineCovariance(0);
+    }
+
+    /**
+     * Reads only the samples of the selected window ranges, skipping the rest of the sample source, and analyses
+     * each range, on the fork/join pool if extraction is parallel. The results of the ranges are combined in track order.
+     *
+     * @param sampleSource        SampleSource. Source of the mono samples of an audio file.
+     * @param segments            int[][]. Non overlapping {first window, last window exclusive} ranges, in track order.
+     * @param featureListSupplier Supplier of a new list of features.
+     * @param analysis            WindowRangeAnalysis. Analyses the windows of a range.
+     * @param combine             Combines the total so far, null for the first range, with the result of the next range.
+     * @return The combined result, or null if no windows were analysed.
+     * @throws IOException if the sample source can not be read.
+     */
+    private <T> T analyseSegments(SampleSource sampleSource, int[][] segments, Supplier<List<Feature>> featureListSupplier,
+                                  WindowRangeAnalysis<T> analysis, BinaryOperator<T> combine) throws IOException {
+        int windowStep = WINDOW_SIZE - windowOverlapOffset;
+        double samplingRate = sampleSource.getSampleRate();
+        List<Feature> featuresToExtract = parallelExtraction ? null : featureListSupplier.get();
+
+        List<ForkJoinTask<T>> pendingSegments = new ArrayList<>(segments.length);
+        long position = 0;
+
+        for (int[] segment : segments) {
+            long start = (long) segment[0] * windowStep;
+            if (sampleSource.skip(start - position) < start - position) {
+                break;
+            }
+
+            double[] segmentSamples = new double[(segment[1] - segment[0] - 1) * windowStep + WINDOW_SIZE];
+            int numberOfSamplesRead = readFully(sampleSource, segmentSamples, 0, segmentSamples.length);
+            position = start + numberOfSamplesRead;
+            if (numberOfSamplesRead == 0) {
+                break;
+            }
+
+            int[] windowStartPositions = calculateWindowStartPositions(numberOfSamplesRead);
+            int numberOfWindows = Math.min(windowStartPositions.length, segment[1] - segment[0]);
+            pendingSegments.add(submit(() -> analysis.analyse(segmentSamples, windowStartPositions, 0, numberOfWindows,
+                    featuresToExtract != null ? featuresToExtract : featureListSupplier.get(), samplingRate), parallelExtraction));
+        }
+
+        T result = null;
+        for (ForkJoinTask<T> pendingSegment : pendingSegments) {
+            result = combine.apply(result, pendingSegment.join());
+        }
+        return result;
+    }
 
-        return trackModel.build(getFeatureVectorList(results));
+    /**
+     * Runs a task on the fork/join pool, or straight away on the calling thread.
+     *
+     * @param task     The task.
+     * @param parallel boolean. Whether the task is run on the fork/join pool.
+     * @return ForkJoinTask. The task, to join for its result.
+     */
+    private <T> ForkJoinTask<T> submit(Callable<T> task, boolean parallel) {
+        ForkJoinTask<T> forkJoinTask = ForkJoinTask.adapt(task);
+        if (parallel) {
+            forkJoinPool.execute(forkJoinTask);
+        } else {
+            forkJoinTask.invoke();
+        }
+        return forkJoinTask;
+    }
+
+    /**
+     * Selects the windows of a sample source to analyse with the analysis budget.
+     * The budget is only applied when the length of the sample source is known, as the segments are spaced over the whole track.
+     *
+     * @param sampleSource SampleSource. Source of the mono samples of an audio file.
+     * @return int[][]. The {first window, last window exclusive} ranges to analyse, or null to analyse every window.
+     */
+    private int[][] selectSegments(SampleSource sampleSource) {
+        if (analysisBudget.isUnlimited()) {
+            return null;
+        }
+        long length = sampleSource.getLength();
+        if (length <= 0) {
+            if (logger != null) {
+                logger.log(Level.WARN, "Analysis budget not applied, the length of the audio is not known. Analysing every window");
+            }
+            return null;
+        }
+
+        int numberOfWindows = (int) ((length + WINDOW_SIZE - windowOverlapOffset - 1) / (WINDOW_SIZE - windowOverlapOffset));
+        int[][] segments = analysisBudget.selectWindows(numberOfWindows, getWindowsPerSecond(sampleSource.getSampleRate()));
+        return segments.length > 1 || segments[0][1] - segments[0][0] < numberOfWindows ? segments : null;
+    }
+
+    /**
+     * Budgeted version of accumulateFeatures. Analyses only the selected window ranges and merges their accumulators in track order.
+     *
+     * @param samples             double[] samples of a audio file.
+     * @param samplingRate        double. Sampling rate of the samples.
+     * @param segments            int[][]. Non overlapping {first window, last window exclusive} ranges, in track order.
+     * @param featureListSupplier Supplier of a new list of features.
+     * @return OnlineCovariance. The accumulated mean and covariance of the feature vectors of the selected windows.
+     */
+    protected OnlineCovariance accumulateSegments(double[] samples, double samplingRate, int[][] segments, Supplier<List<Feature>> featureListSupplier) {
+        int[] windowStartPositions = calculateWindowStartPositions(samples.length);
+        List<Feature> featuresToExtract = featureListSupplier.get();
+
+        OnlineCovariance accumulator = null;
+        for (int[] segment : segments) {
+            accumulator = merge(accumulator, accumulateWindows(samples, windowStartPositions, segment[0], segment[1],
+                    featuresToExtract, samplingRate));
+        }
+
+        return accumulator != null ? accumulator : new OnlineCovariance(0);
+    }
+
+    /**
+     * @param samplingRate double. Sampling rate of the samples.
+     * @return double. The number of windows per second of audio.
+     */
+    private double getWindowsPerSecond(double samplingRate) {
+        return samplingRate / (WINDOW_SIZE - windowOverlapOffset);
+    }
+
+    /**
+     * Merges a partial accumulator into the total, creating the total for the first partial.
+     *
+     * @param accumulator OnlineCovariance. The total, or null if nothing has been merged.
+     * @param partial     OnlineCovariance. The next partial accumulator, in window order.
+     * @return OnlineCovariance. The total.
+     */
+    private OnlineCovariance merge(OnlineCovariance accumulator, OnlineCovariance partial) {
+        if (accumulator == null) {
+            accumulator = new OnlineCovariance(partial.getDimension());
+        }
+        accumulator.merge(partial);
+        return accumulator;
+    }
+
+    /**
+     * Appends the rows of a partial feature matrix to the total, taking the partial as the total for the first partial.
+     *
+     * @param featureMatrix FeatureMatrix. The total, or null if nothing has been appended.
+     * @param partial       FeatureMatrix. The rows of the next windows, in window order.
+     * @return FeatureMatrix. The total.
+     */
+    private FeatureMatrix append(FeatureMatrix featureMatrix, FeatureMatrix partial) {
+        if (featureMatrix == null || featureMatrix.getNumberOfRows() == 0) {
+            return partial;
+        }
+        return featureMatrix.append(partial);
+    }
+
+    /**
+     * Reads from the sample source until the buffer range is full or the source ends.
+     *
+     * @param sampleSource SampleSource. Source of the mono samples of an audio file.
+     * @param buffer       double[]. Buffer to read into.
+     * @param offset       int. Position in the buffer of the first sample.
+     * @param length       int. Number of samples to read.
+     * @return int. The number of samples read.
+     * @throws IOException if the sample source can not be read.
+     */
+    private int readFully(SampleSource sampleSource, double[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int numberOfSamplesRead = sampleSource.read(buffer, offset + total, length - total);
+            if (numberOfSamplesRead <= 0) {
+                break;
+            }
+            total += numberOfSamplesRead;
+        }
+        return total;
+    }
+
+    /**
+     * Moves the window along by one step, keeping the overlapping samples at the start of the window.
+     *
+     * @param window     double[]. The current window.
+     * @param windowStep int. Number of samples between the start of consecutive windows.
+     * @return int. The number of samples left in the window.
+     */
+    private int shiftWindow(double[] window, int windowStep) {
+        int overlap = WINDOW_SIZE - windowStep;
+        System.arraycopy(window, windowStep, window, 0, overlap);
+        return overlap;
     }
 
     /**
@@ -69,48 +586,111 @@ public class FeatureExtractionController {
     }
 
     /**
-     * Main method to parse the audio features.
+     * Main method to parse the audio features, without keeping the feature values of each window.
+     * The feature vector of each window is built in a reused buffer and added straight to the accumulator.
      *
      * @param samples           double[] samples of a audio file.
+     * @param samplingRate      double. Sampling rate of the samples.
      * @param featuresToExtract List of features to parse.
-     * @return double[][][]. Arrays containing all the feature values for each window of audio.
-     * Array format is: [window][feature][values]
+     * @return OnlineCovariance. The accumulated mean and covariance of the feature vectors.
      */
-    protected double[][][] getFeatures(double[] samples, List<Feature> featuresToExtract) {
+    protected OnlineCovariance accumulateFeatures(double[] samples, double samplingRate, List<Feature> featuresToExtract) {
         int[] windowStartPositions = calculateWindowStartPositions(samples.length);
 
-        double samplingRate = audioStream.getSampleRate();
+        return accumulateWindows(samples, windowStartPositions, 0, windowStartPositions.length,
+                featuresToExtract, samplingRate);
+    }
 
-        double[][][] results = new double[windowStartPositions.length][featuresToExtract.size()][];
+    /**
+     * Parallel version of accumulateFeatures. The windows are split into chunks of WINDOWS_PER_CHUNK windows,
+     * which are analysed on the fork/join pool, and the partial accumulators are merged in window order.
+     * Produces the same accumulator as the sequential method.
+     *
+     * @param samples             double[] samples of a audio file.
+     * @param samplingRate        double. Sampling rate of the samples.
+     * @param featureListSupplier Supplier of a new list of features, called once per chunk as features are not thread safe.
+     * @return OnlineCovariance. The accumulated mean and covariance of the feature vectors.
+     */
+    protected OnlineCovariance accumulateFeaturesInParallel(double[] samples, double samplingRate, Supplier<List<Feature>> featureListSupplier) {
+        int[] windowStartPositions = calculateWindowStartPositions(samples.length);
+        int numberOfChunks = (windowStartPositions.length + WINDOWS_PER_CHUNK - 1) / WINDOWS_PER_CHUNK;
+
+        List<OnlineCovariance> partials = forkJoinPool.submit(() -> IntStream.range(0, numberOfChunks)
+                .parallel()
+                .mapToObj(chunk -> accumulateWindows(samples, windowStartPositions, chunk * WINDOWS_PER_CHUNK,
+                        Math.min((chunk + 1) * WINDOWS_PER_CHUNK, windowStartPositions.length),
+                        featureListSupplier.get(), samplingRate))
+                .collect(Collectors.toList()))
+                .join();
+
+        if (partials.isEmpty()) {
+            return new OnlineCovariance(0);
+        }
 
-        for (int win = 0; win < windowStartPositions.length; win++) {
+        OnlineCovariance accumulator = new OnlineCovariance(partials.get(0).getDimension());
+        for (OnlineCovariance partial : partials) {
+            accumulator.merge(partial);
+        }
+        return accumulator;
+    }
 
-            double[] window = fillWindowWithSamples(samples, windowStartPositions, win);
+    /**
+     * Extracts and accumulates the feature vectors of a range of windows.
+     *
+     * @param samples              double[] samples of a audio file.
+     * @param windowStartPositions int[] All the window start positions for the file.
+     * @param fromWindow           int. First window, inclusive.
+     * @param toWindow             int. Last window, exclusive.
+     * @param featuresToExtract    List of features to parse.
+     * @param samplingRate         double. Sampling rate of the samples.
+     * @return OnlineCovariance. The accumulated mean and covariance of the feature vectors.
+     */
+    private OnlineCovariance accumulateWindows(double[] samples, int[] windowStartPositions, int fromWindow, int toWindow,
+                                               List<Feature> featuresToExtract, double samplingRate) {
+        WindowAnalysis windowAnalysis = new WindowAnalysis(featuresToExtract, samplingRate, false);
+        double[] window = new double[WINDOW_SIZE];
 
-            List<double[]> values = featuresToExtract.stream()
-                    .map(f -> f.extractFeature(window, samplingRate))
-                    .collect(Collectors.toList());
+        for (int win = fromWindow; win < toWindow; win++) {
+            fillWindowWithSamples(samples, windowStartPositions, win, window);
+            windowAnalysis.add(window);
+        }
 
-            for (int i = 0; i < values.size(); i++) {
-                // Loops over list of features extracted values. Add them to result array.
-                results[win][i] = values.get(i);
-            }
+        return windowAnalysis.getAccumulator();
+    }
+
+    /**
+     * Extracts the feature vectors of a range of windows, keeping each as a row.
+     *
+     * @param samples              double[] samples of a audio file.
+     * @param windowStartPositions int[] All the window start positions for the file.
+     * @param fromWindow           int. First window, inclusive.
+     * @param toWindow             int. Last window, exclusive.
+     * @param featuresToExtract    List of features to parse.
+     * @param samplingRate         double. Sampling rate of the samples.
+     * @return FeatureMatrix. The feature vectors of the windows.
+     */
+    private FeatureMatrix recordWindows(double[] samples, int[] windowStartPositions, int fromWindow, int toWindow,
+                                        List<Feature> featuresToExtract, double samplingRate) {
+        WindowAnalysis windowAnalysis = new WindowAnalysis(featuresToExtract, samplingRate, true);
+        double[] window = new double[WINDOW_SIZE];
+
+        for (int win = fromWindow; win < toWindow; win++) {
+            fillWindowWithSamples(samples, windowStartPositions, win, window);
+            windowAnalysis.add(window);
         }
 
-        return results;
+        return windowAnalysis.getFeatureMatrix();
     }
 
     /**
-     * Method to return an array of samples for a single window.
+     * Method to fill the window buffer with the samples for a single window.
      *
      * @param samples              double[] All the samples of a file.
      * @param windowStartPositions int[] All the window start positions for the file.
      * @param win                  int. The current window position
-     * @return double[]. Samples for the current window position.
+     * @param window               double[]. Buffer for the samples of the current window position.
      */
-    private double[] fillWindowWithSamples(double[] samples, int[] windowStartPositions, int win) {
-
-        double[] window = new double[WINDOW_SIZE];
+    private void fillWindowWithSamples(double[] samples, int[] windowStartPositions, int win, double[] window) {
 
         // Set window sample positions
         int startSample = windowStartPositions[win];
@@ -131,8 +711,6 @@ public class FeatureExtractionController {
                 }
             }
         }
-
-        return window;
     }
 
     /**
@@ -143,53 +721,174 @@ public class FeatureExtractionController {
      */
     protected int[] calculateWindowStartPositions(int samplesLength) {
 
-        LinkedList<Integer> windowStartPositionsList = new LinkedList<>();
-
-        int currentStartPosition = 0;
-        while (currentStartPosition < samplesLength) {
-            windowStartPositionsList.add(currentStartPosition);
-            currentStartPosition += WINDOW_SIZE - windowOverlapOffset;
-        }
+        int windowStep = WINDOW_SIZE - windowOverlapOffset;
+        int numberOfWindows = (samplesLength + windowStep - 1) / windowStep;
 
-        Integer[] windowStartIndices = windowStartPositionsList.toArray(new Integer[1]);
-        int[] windowStartPositions = new int[windowStartIndices.length];
-
-        for (int i = 0; i < windowStartPositions.length; i++)
-            windowStartPositions[i] = windowStartIndices[i];
+        int[] windowStartPositions = new int[numberOfWindows];
+        for (int i = 0; i < numberOfWindows; i++)
+            windowStartPositions[i] = i * windowStep;
 
         return windowStartPositions;
     }
 
     /**
-     * Translates the [window][feature][value] results array to a list of double[] vectors.
-     * Each single double[] vector represents a combination of the different feature values for each window.
-     * For example: [MFCCs and RMS and Zero crossing rate]
-     *
-     * @param featureResults Full results array. [window][feature][value]
-     * @return List of complete feature vector for each window.
+     * Analysis of a range of windows of some samples, such as accumulating or recording their feature vectors.
+     */
+    @FunctionalInterface
+    private interface WindowRangeAnalysis<T> {
+        T analyse(double[] samples, int[] windowStartPositions, int fromWindow, int toWindow,
+                  List<Feature> featuresToExtract, double samplingRate);
+    }
+
+    /**
+     * Extracts the features of consecutive windows into a single reused feature vector,
+     * and adds each feature vector to a mean and covariance accumulator.
+     * <p>
+     * When every feature is a BufferedFeature the features write straight into the feature vector,
+     * so no arrays are allocated per window. ContextFeatures share one WindowContext, so intermediates
+     * such as the magnitude spectrum are computed once per window.
      */
-    protected List<double[]> getFeatureVectorList(double[][][] featureResults) {
+    private static final class WindowAnalysis {
+
+        private final List<Feature> featuresToExtract;
+        private final double samplingRate;
+        private final BufferedFeature[] bufferedFeatures;
+        private final WindowContext windowContext = new WindowContext();
+        private final double[][] values;
+        private final ChunkedAccumulator accumulator = new ChunkedAccumulator();
+        private final boolean recording;
+        private FeatureMatrix featureMatrix;
+        private double[] featureVector;
+
+        /**
+         * @param featuresToExtract List of features to parse.
+         * @param samplingRate      double. Sampling rate of the samples.
+         * @param recording         boolean. Whether the feature vectors are kept as the rows of a feature matrix, rather than accumulated.
+         */
+        WindowAnalysis(List<Feature> featuresToExtract, double samplingRate, boolean recording) {
+            this.featuresToExtract = featuresToExtract;
+            this.samplingRate = samplingRate;
+            this.recording = recording;
+            this.values = new double[featuresToExtract.size()][];
+
+            int dimension = FeatureFactory.getFeatureVectorDimension(featuresToExtract);
+            if (dimension >= 0) {
+                bufferedFeatures = featuresToExtract.toArray(new BufferedFeature[featuresToExtract.size()]);
+                featureVector = new double[dimension];
+            } else {
+                bufferedFeatures = null;
+            }
+        }
+
+        /**
+         * Extracts the features of a single window and adds the combined feature vector to the accumulator.
+         *
+         * @param window double[]. Samples for a single window.
+         */
+        void add(double[] window) {
+            if (bufferedFeatures != null) {
+                windowContext.setWindow(window, samplingRate);
+                int position = 0;
+                for (BufferedFeature feature : bufferedFeatures) {
+                    if (feature instanceof ContextFeature) {
+                        ((ContextFeature) feature).extractFeature(windowContext, featureVector, position);
+                    } else {
+                        feature.extractFeature(window, samplingRate, featureVector, position);
+                    }
+                    position += feature.getDimension();
+                }
+                addFeatureVector();
+                return;
+            }
+
+            int featureVectorLength = 0;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = featuresToExtract.get(i).extractFeature(window, samplingRate);
+                featureVectorLength += values[i].length;
+            }
+
+            if (featureVector == null) {
+                featureVector = new double[featureVectorLength];
+            } else if (featureVector.length != featureVectorLength) {
+                throw new IllegalStateException("Feature vector length changed from " + featureVector.length + " to " + featureVectorLength);
+            }
+
+            int position = 0;
+            for (double[] value : values) {
+                System.arraycopy(value, 0, featureVector, position, value.length);
+                position += value.length;
+            }
+            addFeatureVector();
+        }
 
-        // featureResults array structure: [window][feature][values]
+        private void addFeatureVector() {
+            if (!recording) {
+                accumulator.add(featureVector);
+                return;
+            }
+            if (featureMatrix == null) {
+                featureMatrix = new FeatureMatrix(featureVector.length);
+            }
+            featureMatrix.addRow(featureVector);
+        }
 
-        List<double[]> aggregatedFeatureVectorList = new ArrayList<>();
-        List<double[]> featureVectorList = new ArrayList<>();
-        List<Double> featureValues = new ArrayList<>();
+        /**
+         * @return FeatureMatrix. The recorded feature vectors. Empty if no windows were added.
+         */
+        FeatureMatrix getFeatureMatrix() {
+            return featureMatrix != null ? featureMatrix : new FeatureMatrix(0);
+        }
 
-        for (double[][] features : featureResults) {
-            Collections.addAll(featureVectorList, features);
+        /**
+         * @return OnlineCovariance. The accumulated feature vectors. Empty if no windows were added.
+         */
+        OnlineCovariance getAccumulator() {
+            return accumulator.getAccumulator();
+        }
+    }
 
-            featureVectorList
-                    .stream()
-                    .map(Arrays::stream)
-                    .map(DoubleStream::boxed)
-                    .forEach(d -> d.forEach(featureValues::add));
+    /**
+     * Accumulates feature vectors in chunks of WINDOWS_PER_CHUNK windows, merging each full chunk into the total.
+     * <p>
+     * The sequential, streaming and parallel extraction paths all merge the same chunks in the same order,
+     * so they produce identical models.
+     */
+    private static final class ChunkedAccumulator {
+
+        private OnlineCovariance total;
+        private OnlineCovariance chunk;
+
+        /**
+         * @param featureVector double[]. The feature vector of a single window.
+         */
+        void add(double[] featureVector) {
+            if (total == null) {
+                total = new OnlineCovariance(featureVector.length);
+                chunk = new OnlineCovariance(featureVector.length);
+            }
+            chunk.add(featureVector);
+            if (chunk.getCount() == WINDOWS_PER_CHUNK) {
+                mergeChunk();
+            }
+        }
 
-            aggregatedFeatureVectorList.add(ArrayUtils.toPrimitive(featureValues.toArray(new Double[featureValues.size()])));
-            featureVectorList.clear();
-            featureValues.clear();
+        private void mergeChunk() {
+            total.merge(chunk);
+            chunk = new OnlineCovariance(total.getDimension());
+        }
+
+        /**
+         * @return OnlineCovariance. The accumulated feature vectors. Empty if no feature vectors were added.
+         */
+        OnlineCovariance getAccumulator() {
+            if (total == null) {
+                return new OnlineCovariance(0);
+            }
+            if (chunk.getCount() > 0) {
+                mergeChunk();
+            }
+            return total;
         }
-        return aggregatedFeatureVectorList;
     }
 
 }
\ No newline at end of file
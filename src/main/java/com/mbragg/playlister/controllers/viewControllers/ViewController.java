@@ -2,6 +2,7 @@ package com.mbragg.playlister.controllers.viewControllers;
 
 import com.mbragg.playlister.controllers.ApplicationController;
 import com.mbragg.playlister.models.entitys.Track;
+import com.mbragg.playlister.services.LibraryWatchService;
 import com.mbragg.playlister.services.PlaylistService;
 import com.mbragg.playlister.services.ScanService;
 import com.mbragg.playlister.tools.externalServices.OperatingSystemDetector;
@@ -17,6 +18,7 @@ import javafx.stage.Stage;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.File;
+import java.io.IOException;
 
 /**
  * Manages the communication between the view.fxml view and the application controller.
@@ -66,6 +68,8 @@ public class ViewController {
     @Autowired
     private PlaylistService playlistService;
     @Autowired
+    private LibraryWatchService libraryWatchService;
+    @Autowired
     private AboutViewController aboutViewController;
     @Autowired
     private HelpViewController helpViewController;
@@ -84,8 +88,6 @@ public class ViewController {
     public void initializeViewController(Stage stage) {
         this.stage = stage;
 
-        scanService.setNumberOfConcurrentThreads(5);
-
         autoPlayerMenuCheckBox.selectedProperty().bindBidirectional(autoCheckbox.selectedProperty());
 
         playlistTable.setPlaceholder(new Text("Empty playlist"));
@@ -152,14 +154,23 @@ public class ViewController {
      * Called when the scan button is pressed.
      * - Sets which files are to be processed.
      * - Calls the startScan method.
+     * - Once scanned, the directory is watched for changes.
      */
     public void scanDirectory() {
         scanService.reset();
+        libraryWatchService.stop();
 
-        scanService.setListOfFiles(applicationController.directoryBatchBuild(directoryTextField.getText()));
+        String musicDirectory = directoryTextField.getText();
+        scanService.setMusicDirectory(musicDirectory);
         scanService.setOnSucceeded(workerStateEvent -> {
             cancelButton.setDisable(true);
             directoryScanButton.setDisable(false);
+            try {
+                libraryWatchService.watch(musicDirectory);
+            } catch (IOException e) {
+                queryLabel.textProperty().unbind();
+                queryLabel.setText("Unable to watch " + musicDirectory);
+            }
         });
 
         startScan();
@@ -218,13 +229,13 @@ public class ViewController {
      */
     public void createPlaylist() {
 
-        if (applicationController.trackExists(queryFile.getName())) {
+        if (applicationController.trackExists(queryFile.getAbsolutePath())) {
 
             playlistService.reset();
 
             int playlistSize = (int) playlistNumberSlider.getValue();
 
-            playlistService.initializePlaylistService(queryFile.getName(), playlistSize, restrictByGenreCheckBox.selectedProperty().get());
+            playlistService.initializePlaylistService(queryFile.getAbsolutePath(), playlistSize, restrictByGenreCheckBox.selectedProperty().get());
 
             playlistTable.itemsProperty().bind(playlistService.valueProperty());
             queryLabel.textProperty().bind(playlistService.messageProperty());
@@ -310,6 +321,7 @@ public class ViewController {
      * Called when the application is instructed to exit.
      */
     public void exitApplication() {
+        libraryWatchService.stop();
         applicationController.dbShutdown();
         stage.close();
     }
@@ -1,8 +1,10 @@
 package com.mbragg.playlister.dao;
 
+import com.mbragg.playlister.models.ScannedFiles;
 import com.mbragg.playlister.models.entitys.Genre;
 import com.mbragg.playlister.models.entitys.Track;
 
+import java.io.File;
 import java.util.List;
 
 /**
@@ -22,10 +24,17 @@ public interface DAO {
     /**
      * Checks if a particular track exists in the database.
      *
-     * @param fileName String. The name of the file to check.
+     * @param filePath String. The absolute path of the file to check.
      * @return Boolean. Yes if it exists. No if it does not.
      */
-    boolean trackExists(String fileName);
+    boolean trackExists(String filePath);
+
+    /**
+     * Reads the name, path, size and last modified time of every track in the database in a single query.
+     *
+     * @return ScannedFiles. Snapshot of the files already scanned into the database.
+     */
+    ScannedFiles getScannedFiles();
 
     /**
      * Save a Genre to the database
@@ -41,15 +50,30 @@ public interface DAO {
      */
     void saveTrack(Track track);
 
+    /**
+     * Points the track of a file that has moved at its new path, keeping its model and relationships.
+     *
+     * @param oldFilePath String. The path the file was scanned at.
+     * @param file        File. The file at its new path.
+     */
+    void relinkTrack(String oldFilePath, File file);
+
+    /**
+     * Delete the track of a file, with its relationships.
+     *
+     * @param filePath String. The path the file was scanned at.
+     */
+    void deleteTrack(String filePath);
+
     /**
      * Query the database to generate a new 'Playlist'
      *
-     * @param filename        String. Name of the file to query.
+     * @param filePath        String. Absolute path of the file to query.
      * @param sizeOfResult    int. Number of files in the playlist
      * @param restrictByGenre Boolean. Whether to restrict the playlist to be all the same genre meta tag as the query file.
      * @return A list of Tracks
      */
-    List<Track> query(String filename, int sizeOfResult, boolean restrictByGenre);
+    List<Track> query(String filePath, int sizeOfResult, boolean restrictByGenre);
 
     /**
      * Delete the data in the database.
@@ -1,5 +1,6 @@
 package com.mbragg.playlister.dao;
 
+import com.mbragg.playlister.models.ScannedFiles;
 import com.mbragg.playlister.models.TrackModel;
 import com.mbragg.playlister.models.entitys.Genre;
 import com.mbragg.playlister.models.entitys.Track;
@@ -18,9 +19,11 @@ import org.springframework.data.neo4j.conversion.Result;
 import org.springframework.data.neo4j.core.GraphDatabase;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Neo4j graph Implementation of the DAO interface.
@@ -64,12 +67,35 @@ public class GraphDAO implements DAO {
     /**
      * Does a track node exists in the database.
      *
-     * @param fileName String. The fileName of a track node to test.
+     * @param filePath String. The filePath of a track node to test.
      * @return boolean. Yes or no.
      */
     @Override
-    public boolean trackExists(String fileName) {
-        return trackRepository.findByFilename(fileName) != null;
+    public boolean trackExists(String filePath) {
+        return trackRepository.findByFilePath(filePath) != null;
+    }
+
+    /**
+     * Streams the file properties of every track node into a snapshot, without hydrating the track entities.
+     *
+     * @return ScannedFiles. Snapshot of the files already scanned into the database.
+     */
+    @Override
+    public ScannedFiles getScannedFiles() {
+        ScannedFiles.Builder scannedFiles = new ScannedFiles.Builder();
+
+        try (Transaction readScannedFiles = graphDatabase.beginTx()) {
+            for (Map<String, Object> row : trackRepository.findAllScannedFiles()) {
+                scannedFiles.add((String) row.get("filename"), (String) row.get("filePath"),
+                        toLong(row.get("fileSize")), toLong(row.get("lastModified")));
+            }
+            readScannedFiles.success();
+        }
+        return scannedFiles.build();
+    }
+
+    private static Long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : null;
     }
 
     /**
@@ -123,6 +149,43 @@ public class GraphDAO implements DAO {
 
     }
 
+    /**
+     * Updates the file properties of a moved track node. Its model is unchanged, so its relationships are kept.
+     *
+     * @param oldFilePath String. The path the file was scanned at.
+     * @param file        File. The file at its new path.
+     */
+    @Override
+    public void relinkTrack(String oldFilePath, File file) {
+        try (Transaction relinkTrackTransaction = graphDatabase.beginTx()) {
+            Track track = trackRepository.findByFilePath(oldFilePath);
+            if (track != null) {
+                track.setFilename(file.getName());
+                track.setFilePath(file.getAbsolutePath());
+                track.setFileSize(file.length());
+                track.setLastModified(file.lastModified());
+                trackRepository.save(track);
+            }
+            relinkTrackTransaction.success();
+        }
+    }
+
+    /**
+     * Removes a track node and its relationships from the database.
+     *
+     * @param filePath String. The path the file was scanned at.
+     */
+    @Override
+    public void deleteTrack(String filePath) {
+        try (Transaction deleteTrackTransaction = graphDatabase.beginTx()) {
+            Track track = trackRepository.findByFilePath(filePath);
+            if (track != null) {
+                trackRepository.delete(track);
+            }
+            deleteTrackTransaction.success();
+        }
+    }
+
     /*
      * For a given track returned from the database, reconstruct a distribution trackModel from its properties values.
      */
@@ -138,28 +201,28 @@ public class GraphDAO implements DAO {
     }
 
     /**
-     * Query the database with a fileName.
+     * Query the database with a filePath.
      *
-     * @param filename        String. The fileName of a track to query.
+     * @param filePath        String. The filePath of a track to query.
      * @param sizeOfResult    int.
      * @param restrictByGenre boolean. Whether to limit the scope of the search to within the same genreName as the query track.
      * @return List of most similar tracks.
      */
     @Override
-    public List<Track> query(String filename, int sizeOfResult, boolean restrictByGenre) {
+    public List<Track> query(String filePath, int sizeOfResult, boolean restrictByGenre) {
         List<Track> tracks = new ArrayList<>();
 
         try (Transaction executeQuery = graphDatabase.beginTx()) {
             Result<Track> results;
             if (restrictByGenre) {
-                results = trackRepository.findAllSimilarTracksWithGenre(filename, sizeOfResult);
+                results = trackRepository.findAllSimilarTracksWithGenre(filePath, sizeOfResult);
 
             } else {
-                results = trackRepository.findAllSimilarTracks(filename, sizeOfResult);
+                results = trackRepository.findAllSimilarTracks(filePath, sizeOfResult);
             }
 
             // Add the query track to the start of the playlist
-            tracks.add(trackRepository.findByFilename(filename));
+            tracks.add(trackRepository.findByFilePath(filePath));
 
             // Add the resulting similar tracks to the playlist
             for (Track track : results) {
@@ -1,5 +1,6 @@
 package com.mbragg.playlister.factories;
 
+import com.mbragg.playlister.features.BufferedFeature;
 import com.mbragg.playlister.features.Feature;
 import com.mbragg.playlister.features.MFCC;
 import com.mbragg.playlister.features.RMS;
@@ -7,9 +8,13 @@ import com.mbragg.playlister.features.ZeroCrossing;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
 
 /**
  * Factory for the list of features which are to be extracted from audio data.
+ * <p>
+ * Features are registered as suppliers, so every feature list holds its own feature instances.
  *
  * @author Michael Bragg
  */
@@ -17,8 +22,13 @@ public final class FeatureFactory {
 
     private static FeatureFactory instance;
 
+    private final List<Supplier<? extends Feature>> featureSuppliers = new CopyOnWriteArrayList<>();
+
     private FeatureFactory() {
         // Private factory
+        register(MFCC::new);
+        register(RMS::new);
+        register(ZeroCrossing::new);
     }
 
     public static FeatureFactory getInstance() {
@@ -28,24 +38,47 @@ public final class FeatureFactory {
         return instance;
     }
 
-    public List<Feature> getFeatureList() {
-
-        List<Feature> features = new ArrayList<>();
-        features.add(getMFCC());
-        features.add(getRMS());
-        features.add(getZeroCrossing());
-        return features;
+    /**
+     * Registers a feature to be extracted, after the features already registered.
+     *
+     * @param featureSupplier Supplier. Creates a new instance of the feature.
+     */
+    public void register(Supplier<? extends Feature> featureSupplier) {
+        featureSuppliers.add(featureSupplier);
     }
 
-    private Feature getMFCC() {
-        return new MFCC();
+    /**
+     * Removes a registered feature.
+     *
+     * @param featureSupplier Supplier. The supplier the feature was registered with.
+     */
+    public void unregister(Supplier<? extends Feature> featureSupplier) {
+        featureSuppliers.remove(featureSupplier);
     }
 
-    private Feature getRMS() {
-        return new RMS();
+    public List<Feature> getFeatureList() {
+
+        List<Feature> features = new ArrayList<>(featureSuppliers.size());
+        for (Supplier<? extends Feature> featureSupplier : featureSuppliers) {
+            features.add(featureSupplier.get());
+        }
+        return features;
     }
 
-    private Feature getZeroCrossing() {
-        return new ZeroCrossing();
+    /**
+     * Calculates the length of the feature vector produced by a list of features.
+     *
+     * @param features List of features.
+     * @return int. The feature vector length, or -1 if any feature is not a BufferedFeature.
+     */
+    public static int getFeatureVectorDimension(List<Feature> features) {
+        int dimension = 0;
+        for (Feature feature : features) {
+            if (!(feature instanceof BufferedFeature)) {
+                return -1;
+            }
+            dimension += ((BufferedFeature) feature).getDimension();
+        }
+        return dimension;
     }
 }
@@ -1,12 +1,7 @@
 package com.mbragg.playlister.factories;
 
-import com.mbragg.playlister.models.BatchTrack;
 import com.mbragg.playlister.models.entitys.Track;
 
-import javax.sound.sampled.AudioFormat;
-import java.io.File;
-import java.util.concurrent.Future;
-
 /**
  * Factory to create Track objects
  *
@@ -29,8 +24,4 @@ public final class TrackFactory {
     public Track getTrack() {
         return new Track();
     }
-
-    public BatchTrack getBatchTrack(Future<byte[]> audio, AudioFormat audioFormat, File file) {
-        return new BatchTrack(audio, audioFormat, file);
-    }
 }
@@ -0,0 +1,33 @@
+package com.mbragg.playlister.features;
+
+/**
+ * Feature with a fixed output dimension, which writes its values into a caller supplied buffer.
+ * <p>
+ * Allows the feature vector of a window to be built without allocating a result array per feature.
+ *
+ * @author Michael Bragg
+ */
+public abstract class BufferedFeature extends Feature {
+
+    /**
+     * @return int. The number of values written by each extraction.
+     */
+    public abstract int getDimension();
+
+    /**
+     * Extracts the feature values of a window into the output buffer.
+     *
+     * @param samples      double[]. Samples of a single window.
+     * @param samplingRate double. Sampling rate of the samples.
+     * @param output       double[]. Buffer to write the feature values into.
+     * @param offset       int. Position in the output buffer of the first feature value.
+     */
+    public abstract void extractFeature(double[] samples, double samplingRate, double[] output, int offset);
+
+    @Override
+    public double[] extractFeature(double[] samples, double samplingRate) {
+        double[] result = new double[getDimension()];
+        extractFeature(samples, samplingRate, result, 0);
+        return result;
+    }
+}
@@ -0,0 +1,32 @@
+package com.mbragg.playlister.features;
+
+/**
+ * Feature computed from the shared intermediates of a window, rather than from the window samples alone.
+ * <p>
+ * When features are extracted together they are given the same WindowContext, so the cost of adding a feature
+ * is its own calculation rather than another FFT. Used on its own, a feature keeps a private context.
+ *
+ * @author Michael Bragg
+ */
+public abstract class ContextFeature extends BufferedFeature {
+
+    private WindowContext context;
+
+    /**
+     * Extracts the feature values of the context's current window into the output buffer.
+     *
+     * @param context WindowContext. The current window and its intermediates.
+     * @param output  double[]. Buffer to write the feature values into.
+     * @param offset  int. Position in the output buffer of the first feature value.
+     */
+    public abstract void extractFeature(WindowContext context, double[] output, int offset);
+
+    @Override
+    public void extractFeature(double[] samples, double samplingRate, double[] output, int offset) {
+        if (context == null) {
+            context = new WindowContext();
+        }
+        context.setWindow(samples, samplingRate);
+        extractFeature(context, output, offset);
+    }
+}
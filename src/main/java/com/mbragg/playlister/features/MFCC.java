@@ -9,23 +9,18 @@ import org.oc.ocvolume.dsp.featureExtraction;
  * based on a linear cosine transform of a log power spectrum on a nonlinear mel scale of frequency."
  * <p>
  * Note: Calling methods from OrangeCow: OC Volume - Java speech recognition engine. Found in package org.oc.ocvolume.dsp.featureExtraction.
+ * <p>
+ * The log mel energies are taken from the window context. Separate instances can be used concurrently, a single instance can not.
  */
-public class MFCC extends Feature {
-
-    private featureExtraction fe;
+public class MFCC extends ContextFeature {
 
-    public MFCC() {
-        fe = new featureExtraction();
+    @Override
+    public int getDimension() {
+        return featureExtraction.defaultNumCepstra;
     }
 
     @Override
-    public double[] extractFeature(double[] samples, double samplingRate) {
-
-        double[] magnitudeSpectrum = fe.magnitudeSpectrum(samples);
-        int[] fftBinIndices = fe.fftBinIndices(samplingRate, magnitudeSpectrum.length);
-        double[] melFilter = fe.melFilter(magnitudeSpectrum, fftBinIndices);
-        double[] nonLinearTransformation = fe.nonLinearTransformation(melFilter);
-
-        return fe.cepCoefficients(nonLinearTransformation);
+    public void extractFeature(WindowContext context, double[] output, int offset) {
+        context.getFilterBank().cepCoefficients(context.getLogMelEnergies(), output, offset);
     }
-}
\ No newline at end of file
+}
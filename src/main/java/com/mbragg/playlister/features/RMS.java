@@ -5,19 +5,22 @@ package com.mbragg.playlister.features;
  *
  * @author Michael Bragg
  */
-public class RMS extends Feature {
+public class RMS extends BufferedFeature {
 
     @Override
-    public double[] extractFeature(double[] samples, double samplingRate) {
+    public int getDimension() {
+        // result is a single value, written to the output array to be consistent with other multivalued features.
+        return 1;
+    }
+
+    @Override
+    public void extractFeature(double[] samples, double samplingRate, double[] output, int offset) {
         double sum = 0.0;
-        // result is a single value so will be contained within an array to be consistent with other multivalued features.
-        double[] result = new double[1];
 
         for (double sample : samples) {
-            sum += Math.pow(sample, 2);
+            sum += sample * sample;
         }
 
-        result[0] = Math.sqrt(sum / samples.length);
-        return result;
+        output[offset] = Math.sqrt(sum / samples.length);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,30 @@
+package com.mbragg.playlister.features;
+
+/**
+ * Spectral centroid feature, the magnitude weighted mean frequency of a window in Hz.
+ * <p>
+ * Uses the shared magnitude spectrum of the window context. Not extracted by default.
+ *
+ * @author Michael Bragg
+ */
+public class SpectralCentroid extends ContextFeature {
+
+    @Override
+    public int getDimension() {
+        return 1;
+    }
+
+    @Override
+    public void extractFeature(WindowContext context, double[] output, int offset) {
+        double[] magnitudes = context.getMagnitudeSpectrum();
+        double weightedSum = 0.0;
+        double sum = 0.0;
+
+        for (int bin = 0; bin < context.getNumberOfSpectrumBins(); bin++) {
+            weightedSum += context.getBinFrequency(bin) * magnitudes[bin];
+            sum += magnitudes[bin];
+        }
+
+        output[offset] = sum == 0.0 ? 0.0 : weightedSum / sum;
+    }
+}
@@ -0,0 +1,58 @@
+package com.mbragg.playlister.features;
+
+/**
+ * Spectral rolloff feature, the frequency in Hz below which a given fraction of a window's spectral power lies.
+ * <p>
+ * Uses the shared power spectrum of the window context. Not extracted by default.
+ *
+ * @author Michael Bragg
+ */
+public class SpectralRolloff extends ContextFeature {
+
+    private static final double DEFAULT_FRACTION = 0.85;
+
+    private final double fraction;
+
+    public SpectralRolloff() {
+        this(DEFAULT_FRACTION);
+    }
+
+    /**
+     * @param fraction double. Fraction of the total power, between 0 and 1.
+     */
+    public SpectralRolloff(double fraction) {
+        if (fraction <= 0.0 || fraction > 1.0) {
+            throw new IllegalArgumentException("Rolloff fraction must be in (0, 1]: " + fraction);
+        }
+        this.fraction = fraction;
+    }
+
+    @Override
+    public int getDimension() {
+        return 1;
+    }
+
+    @Override
+    public void extractFeature(WindowContext context, double[] output, int offset) {
+        double[] power = context.getPowerSpectrum();
+        int bins = context.getNumberOfSpectrumBins();
+
+        double total = 0.0;
+        for (int bin = 0; bin < bins; bin++) {
+            total += power[bin];
+        }
+
+        double threshold = total * fraction;
+        double sum = 0.0;
+        int bin = 0;
+        while (bin < bins - 1) {
+            sum += power[bin];
+            if (sum >= threshold) {
+                break;
+            }
+            bin++;
+        }
+
+        output[offset] = total == 0.0 ? 0.0 : context.getBinFrequency(bin);
+    }
+}
@@ -0,0 +1,153 @@
+package com.mbragg.playlister.features;
+
+import org.oc.ocvolume.dsp.featureExtraction;
+
+/**
+ * The intermediate values of a single window, shared by the features extracted from it.
+ * <p>
+ * Each intermediate is computed the first time a feature asks for it and kept until the next window is set,
+ * so features depending on the same intermediate, such as the magnitude spectrum, share one FFT per window.
+ * Intermediates depend on each other as: frame -> magnitude spectrum -> power spectrum,
+ * and magnitude spectrum -> mel energies -> log mel energies.
+ * <p>
+ * The returned arrays are owned by the context and must not be modified. A context can not be used concurrently.
+ *
+ * @author Michael Bragg
+ */
+public final class WindowContext {
+
+    private final featureExtraction fe = new featureExtraction();
+
+    private double[] frame;
+    private double samplingRate;
+    private featureExtraction.FilterBank filterBank;
+
+    private double[] magnitudeSpectrum;
+    private double[] powerSpectrum;
+    private double[] melEnergies;
+    private double[] logMelEnergies;
+
+    private boolean magnitudeSpectrumComputed;
+    private boolean powerSpectrumComputed;
+    private boolean melEnergiesComputed;
+    private boolean logMelEnergiesComputed;
+
+    /**
+     * Sets the window the intermediates are computed from, discarding the intermediates of the previous window.
+     *
+     * @param frame        double[]. Samples of a single window. Must not be modified while the window is in use.
+     * @param samplingRate double. Sampling rate of the samples.
+     */
+    public void setWindow(double[] frame, double samplingRate) {
+        if (this.frame == null || this.frame.length != frame.length || this.samplingRate != samplingRate) {
+            filterBank = null;
+        }
+        this.frame = frame;
+        this.samplingRate = samplingRate;
+
+        magnitudeSpectrumComputed = false;
+        powerSpectrumComputed = false;
+        melEnergiesComputed = false;
+        logMelEnergiesComputed = false;
+    }
+
+    /**
+     * @return double[]. Samples of the current window.
+     */
+    public double[] getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return double. Sampling rate of the current window.
+     */
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    /**
+     * @return double[]. Magnitude of each FFT bin of the current window, the same length as the frame.
+     */
+    public double[] getMagnitudeSpectrum() {
+        if (!magnitudeSpectrumComputed) {
+            if (magnitudeSpectrum == null || magnitudeSpectrum.length != frame.length) {
+                magnitudeSpectrum = new double[frame.length];
+            }
+            fe.magnitudeSpectrum(frame, magnitudeSpectrum);
+            magnitudeSpectrumComputed = true;
+        }
+        return magnitudeSpectrum;
+    }
+
+    /**
+     * @return double[]. Squared magnitude of each FFT bin of the current window.
+     */
+    public double[] getPowerSpectrum() {
+        if (!powerSpectrumComputed) {
+            double[] magnitudes = getMagnitudeSpectrum();
+            if (powerSpectrum == null || powerSpectrum.length != magnitudes.length) {
+                powerSpectrum = new double[magnitudes.length];
+            }
+            for (int i = 0; i < magnitudes.length; i++) {
+                powerSpectrum[i] = magnitudes[i] * magnitudes[i];
+            }
+            powerSpectrumComputed = true;
+        }
+        return powerSpectrum;
+    }
+
+    /**
+     * @return FilterBank. Mel filter bank and DCT tables for the sampling rate and length of the current window.
+     */
+    public featureExtraction.FilterBank getFilterBank() {
+        if (filterBank == null) {
+            filterBank = fe.filterBank(samplingRate, frame.length);
+        }
+        return filterBank;
+    }
+
+    /**
+     * @return double[]. Output of each mel filter, applied to the magnitude spectrum of the current window.
+     */
+    public double[] getMelEnergies() {
+        if (!melEnergiesComputed) {
+            featureExtraction.FilterBank bank = getFilterBank();
+            if (melEnergies == null) {
+                melEnergies = new double[bank.getNumMelFilters()];
+            }
+            bank.melFilter(getMagnitudeSpectrum(), melEnergies);
+            melEnergiesComputed = true;
+        }
+        return melEnergies;
+    }
+
+    /**
+     * @return double[]. Natural log of the mel energies, floored as in the OC Volume non-linear transformation.
+     */
+    public double[] getLogMelEnergies() {
+        if (!logMelEnergiesComputed) {
+            double[] energies = getMelEnergies();
+            if (logMelEnergies == null) {
+                logMelEnergies = new double[energies.length];
+            }
+            fe.nonLinearTransformation(energies, logMelEnergies);
+            logMelEnergiesComputed = true;
+        }
+        return logMelEnergies;
+    }
+
+    /**
+     * @return int. Number of FFT bins up to and including the Nyquist frequency.
+     */
+    public int getNumberOfSpectrumBins() {
+        return frame.length / 2 + 1;
+    }
+
+    /**
+     * @param bin int. FFT bin index.
+     * @return double. Centre frequency of the bin in Hz.
+     */
+    public double getBinFrequency(int bin) {
+        return bin * samplingRate / frame.length;
+    }
+}
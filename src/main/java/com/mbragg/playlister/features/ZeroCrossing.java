@@ -5,14 +5,17 @@ package com.mbragg.playlister.features;
  *
  * @author Michael Bragg
  */
-public class ZeroCrossing extends Feature {
+public class ZeroCrossing extends BufferedFeature {
 
     @Override
-    public double[] extractFeature(double[] samples, double samplingRate) {
-        long count = 0;
+    public int getDimension() {
+        // result is a single value, written to the output array to be consistent with other multivalued features.
+        return 1;
+    }
 
-        // result is a single value so will be contained within an array to be consistent with other multivalued features.
-        double[] result = new double[1];
+    @Override
+    public void extractFeature(double[] samples, double samplingRate, double[] output, int offset) {
+        long count = 0;
 
         for (int sample = 0; sample < samples.length - 1; sample++) {
             if (samples[sample] > 0.0 && samples[sample + 1] < 0.0)
@@ -22,7 +25,6 @@ public class ZeroCrossing extends Feature {
             else if (samples[sample] == 0.0 && samples[sample + 1] != 0.0)
                 count++;
         }
-        result[0] = (double) count;
-        return result;
+        output[offset] = (double) count;
     }
 }
@@ -0,0 +1,103 @@
+package com.mbragg.playlister.models;
+
+/**
+ * Limits the part of a track that is analysed, trading model fidelity for analysis time.
+ * <p>
+ * A track is analysed as a number of evenly spaced segments of a given length, and/or at most a maximum number
+ * of windows. A maximum number of windows on its own is spread over DEFAULT_SEGMENTS segments, and a maximum
+ * smaller than the number of segments is spread over fewer segments, so no more than the maximum is analysed.
+ * Tracks too short for the budget are analysed in full.
+ *
+ * @author Michael Bragg
+ */
+public final class AnalysisBudget {
+
+    public static final int DEFAULT_SEGMENTS = 8;
+    private static final AnalysisBudget UNLIMITED = new AnalysisBudget(0, 0.0, 0);
+
+    private final int segments;
+    private final double segmentSeconds;
+    private final int maxWindows;
+
+    /**
+     * @param segments       int. Number of evenly spaced segments to analyse, 0 for no segments.
+     * @param segmentSeconds double. Length of each segment in seconds, 0 for no limit.
+     * @param maxWindows     int. Maximum number of windows to analyse, 0 for no limit.
+     */
+    public AnalysisBudget(int segments, double segmentSeconds, int maxWindows) {
+        if (segments < 0 || segmentSeconds < 0.0 || maxWindows < 0) {
+            throw new IllegalArgumentException("Analysis budget values must not be negative");
+        }
+        this.segments = segments;
+        this.segmentSeconds = segmentSeconds;
+        this.maxWindows = maxWindows;
+    }
+
+    /**
+     * @return AnalysisBudget. A budget that analyses every window.
+     */
+    public static AnalysisBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * @return boolean. True if every window of every track is analysed.
+     */
+    public boolean isUnlimited() {
+        return maxWindows == 0 && (segments == 0 || segmentSeconds == 0.0);
+    }
+
+    /**
+     * Selects the windows of a track to analyse.
+     *
+     * @param numberOfWindows  int. Number of windows in the whole track.
+     * @param windowsPerSecond double. Number of windows per second of audio.
+     * @return int[][]. Non overlapping {first window, last window exclusive} ranges, in track order.
+     */
+    public int[][] selectWindows(int numberOfWindows, double windowsPerSecond) {
+        int[][] allWindows = {{0, numberOfWindows}};
+        if (isUnlimited()) {
+            return allWindows;
+        }
+
+        int numberOfSegments = segments > 0 ? segments : DEFAULT_SEGMENTS;
+        long windowsPerSegment = segments > 0 && segmentSeconds > 0.0
+                ? (long) Math.ceil(segmentSeconds * windowsPerSecond)
+                : Long.MAX_VALUE;
+        if (maxWindows > 0) {
+            numberOfSegments = Math.min(numberOfSegments, maxWindows);
+            windowsPerSegment = Math.min(windowsPerSegment, maxWindows / numberOfSegments);
+        }
+
+        if (windowsPerSegment * numberOfSegments >= numberOfWindows) {
+            return allWindows;
+        }
+
+        int length = (int) windowsPerSegment;
+        int[][] ranges = new int[numberOfSegments][];
+        for (int segment = 0; segment < numberOfSegments; segment++) {
+            int start = numberOfSegments == 1
+                    ? (numberOfWindows - length) / 2
+                    : (int) ((long) segment * (numberOfWindows - length) / (numberOfSegments - 1));
+            ranges[segment] = new int[]{start, start + length};
+        }
+        return ranges;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public double getSegmentSeconds() {
+        return segmentSeconds;
+    }
+
+    public int getMaxWindows() {
+        return maxWindows;
+    }
+
+    @Override
+    public String toString() {
+        return "segments=" + segments + ",segmentSeconds=" + segmentSeconds + ",maxWindows=" + maxWindows;
+    }
+}
@@ -0,0 +1,63 @@
+package com.mbragg.playlister.models;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Immutable handle for the decoding of a single audio file. Carries the file, its formats and its decoded
+ * audio input stream through the scan, so that concurrent scans never share per-file state.
+ *
+ * @author Michael Bragg
+ */
+public final class AudioHandle implements Closeable {
+
+    private final File file;
+    private final AudioFormat sourceFormat;
+    private final AudioInputStream audioInputStream;
+
+    public AudioHandle(File file, AudioFormat sourceFormat, AudioInputStream audioInputStream) {
+        this.file = file;
+        this.sourceFormat = sourceFormat;
+        this.audioInputStream = audioInputStream;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return AudioFormat. The format of the audio as stored in the file.
+     */
+    public AudioFormat getSourceFormat() {
+        return sourceFormat;
+    }
+
+    /**
+     * @return AudioFormat. The format of the decoded audio input stream.
+     */
+    public AudioFormat getFormat() {
+        return audioInputStream.getFormat();
+    }
+
+    /**
+     * @return AudioInputStream. The decoded audio of the file.
+     */
+    public AudioInputStream getAudioInputStream() {
+        return audioInputStream;
+    }
+
+    /**
+     * @return float. The sample rate of the decoded audio in Hz.
+     */
+    public float getSampleRate() {
+        return getFormat().getSampleRate();
+    }
+
+    @Override
+    public void close() throws IOException {
+        audioInputStream.close();
+    }
+}
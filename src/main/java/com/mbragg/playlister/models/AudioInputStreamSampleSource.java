@@ -0,0 +1,114 @@
+package com.mbragg.playlister.models;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.IOException;
+
+/**
+ * SampleSource that decodes an AudioInputStream a fixed number of frames at a time, into reused buffers.
+ * Memory use depends on the chunk size, not on the length of the audio.
+ *
+ * @author Michael Bragg
+ */
+public class AudioInputStreamSampleSource implements SampleSource {
+
+    public static final int FRAMES_PER_CHUNK = 4096;
+    private static final int END_OF_STREAM = -1;
+
+    private final AudioInputStream audioInputStream;
+    private final AudioFormat audioFormat;
+    private final Samples samples;
+    private final byte[] byteBuffer;
+
+    private final double[] chunk;
+    private int chunkLength;
+    private int chunkPosition;
+    private boolean endOfStream;
+
+    public AudioInputStreamSampleSource(AudioInputStream audioInputStream, Samples samples) {
+        this.audioInputStream = audioInputStream;
+        this.audioFormat = audioInputStream.getFormat();
+        this.samples = samples;
+        this.byteBuffer = new byte[FRAMES_PER_CHUNK * audioFormat.getFrameSize()];
+        this.chunk = new double[FRAMES_PER_CHUNK];
+    }
+
+    @Override
+    public int read(double[] buffer, int offset, int length) throws IOException {
+        if (chunkPosition == chunkLength && !readChunk()) {
+            return END_OF_STREAM;
+        }
+
+        int count = Math.min(length, chunkLength - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, buffer, offset, count);
+        chunkPosition += count;
+        return count;
+    }
+
+    /**
+     * Skips the rest of the current chunk, then whole frames of the audio input stream, which can seek
+     * rather than decode for streams read straight from a file.
+     */
+    @Override
+    public long skip(long numberOfSamples) throws IOException {
+        long skipped = Math.min(numberOfSamples, chunkLength - chunkPosition);
+        chunkPosition += skipped;
+
+        int frameSize = audioFormat.getFrameSize();
+        while (skipped < numberOfSamples && !endOfStream) {
+            long numberOfBytesSkipped = audioInputStream.skip((numberOfSamples - skipped) * frameSize);
+            if (numberOfBytesSkipped <= 0) {
+                // Skip is not supported, or the end of the stream has been reached
+                return skipped + SampleSource.super.skip(numberOfSamples - skipped);
+            }
+            skipped += numberOfBytesSkipped / frameSize;
+        }
+        return skipped;
+    }
+
+    @Override
+    public long getLength() {
+        long frameLength = audioInputStream.getFrameLength();
+        return frameLength == AudioSystem.NOT_SPECIFIED ? -1 : frameLength;
+    }
+
+    @Override
+    public float getSampleRate() {
+        return audioFormat.getSampleRate();
+    }
+
+    @Override
+    public void close() throws IOException {
+        audioInputStream.close();
+    }
+
+    /**
+     * Reads and converts the next chunk of frames from the audio input stream.
+     *
+     * @return boolean. False if the end of the stream has been reached.
+     * @throws IOException if the audio input stream can not be read.
+     */
+    private boolean readChunk() throws IOException {
+        int numberOfBytes = 0;
+
+        while (!endOfStream && numberOfBytes < byteBuffer.length) {
+            int numberOfBytesRead = audioInputStream.read(byteBuffer, numberOfBytes, byteBuffer.length - numberOfBytes);
+            if (numberOfBytesRead > 0) {
+                numberOfBytes += numberOfBytesRead;
+            } else {
+                endOfStream = true;
+            }
+        }
+
+        // Only convert complete frames
+        numberOfBytes -= numberOfBytes % audioFormat.getFrameSize();
+        if (numberOfBytes == 0) {
+            return false;
+        }
+
+        chunkLength = samples.getSamplesInMono(byteBuffer, 0, numberOfBytes, audioFormat, chunk, 0);
+        chunkPosition = 0;
+        return true;
+    }
+}
@@ -1,5 +1,6 @@
 package com.mbragg.playlister.models;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.sound.sampled.AudioFormat;
@@ -11,58 +12,98 @@ import java.io.IOException;
 
 /**
  * Methods for extracting and formatting a AudioInputStream from a File.
+ * Holds no per-file state, so it can be shared by concurrent scans.
  *
  * @author Michael Bragg
  */
 @Component
 public class AudioStream {
 
-    private float sampleRate;
-    private int sampleSizeInBits;
-    private int channels;
-    private float frameRate;
+    private static final int SIXTEEN_BIT = 16;
+
+    private final Samples samples;
 
     public AudioStream() {
+        this(new Samples());
+    }
+
+    @Autowired
+    public AudioStream(Samples samples) {
+        this.samples = samples;
     }
 
     /**
-     * Gets a audio input stream from a file.
+     * Opens a file for decoding. Audio that Samples can convert directly is read as it is stored in the file,
+     * other audio is converted to 16 bit big endian signed PCM.
      *
      * @param file File. Input audio file.
-     * @return AudioInputStream. Formatted audio input stream.
+     * @return AudioHandle. Handle holding the formatted audio input stream of the file.
      * @throws IOException                   If the supplied file encounters a IO error.
      * @throws UnsupportedAudioFileException If the supplied file is unsupported.
      */
-    public AudioInputStream getAudioInputStream(File file) throws IOException, UnsupportedAudioFileException {
+    public AudioHandle open(File file) throws IOException, UnsupportedAudioFileException {
 
         AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(file);
-        AudioFormat audioFormat = audioInputStream.getFormat();
+        AudioFormat sourceFormat = audioInputStream.getFormat();
+
+        if (samples.isSupportedFormat(sourceFormat)) {
+            return new AudioHandle(file, sourceFormat, audioInputStream);
+        }
 
-        sampleRate = audioFormat.getSampleRate();
-        sampleSizeInBits = audioFormat.getSampleSizeInBits();
-        channels = audioFormat.getChannels();
-        frameRate = audioFormat.getFrameRate();
-        AudioFormat decodedAudioFormat = getAudioFormat();
+        AudioFormat decodedAudioFormat = getAudioFormat(sourceFormat);
 
-        return AudioSystem.getAudioInputStream(decodedAudioFormat, audioInputStream);
+        return new AudioHandle(file, sourceFormat, AudioSystem.getAudioInputStream(decodedAudioFormat, audioInputStream));
     }
 
     /**
-     * Returns a formatted audio format.
+     * Opens a file as a source of mono samples. Uncompressed WAV and AIFF files are read through a memory mapping,
+     * MP4 AAC files are decoded directly with JAAD, and other files, or those the direct readers do not support, are decoded by javax.sound.
      *
-     * @return AudioFormat.
+     * @param file File. Input audio file.
+     * @return SampleSource. Source of the mono samples of the file.
+     * @throws IOException                   If the supplied file encounters a IO error.
+     * @throws UnsupportedAudioFileException If the supplied file is unsupported.
      */
-    public float getSampleRate() {
-        return sampleRate;
+    public SampleSource openSampleSource(File file) throws IOException, UnsupportedAudioFileException {
+        try {
+            if (MappedPcmSampleSource.canOpen(file)) {
+                return MappedPcmSampleSource.open(file);
+            } else if (Mp4AacSampleSource.canOpen(file)) {
+                return Mp4AacSampleSource.open(file, samples);
+            }
+        } catch (UnsupportedAudioFileException e) {
+            // Decoded by javax.sound instead
+        }
+        return new AudioInputStreamSampleSource(open(file).getAudioInputStream(), samples);
     }
 
-    private AudioFormat getAudioFormat() {
+    /**
+     * Gets a audio input stream from a file.
+     *
+     * @param file File. Input audio file.
+     * @return AudioInputStream. Formatted audio input stream.
+     * @throws IOException                   If the supplied file encounters a IO error.
+     * @throws UnsupportedAudioFileException If the supplied file is unsupported.
+     */
+    public AudioInputStream getAudioInputStream(File file) throws IOException, UnsupportedAudioFileException {
+        return open(file).getAudioInputStream();
+    }
+
+    /**
+     * Returns a formatted audio format.
+     *
+     * @param sourceFormat AudioFormat. The format of the audio as stored in the file.
+     * @return AudioFormat. 16 bit big endian signed PCM, with the sample rate and channels of the source format.
+     */
+    private AudioFormat getAudioFormat(AudioFormat sourceFormat) {
+
+        int channels = sourceFormat.getChannels();
 
         // Create a new PCM_SIGNED audio format
         return new AudioFormat(
                 AudioFormat.Encoding.PCM_SIGNED,
-                sampleRate, sampleSizeInBits, channels,
-                channels * 2, frameRate,
+                sourceFormat.getSampleRate(), SIXTEEN_BIT, channels,
+                channels * 2, sourceFormat.getFrameRate(),
                 true);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,111 @@
+package com.mbragg.playlister.models;
+
+import java.util.Arrays;
+
+/**
+ * The feature vectors of the analysed windows of a track, one row per window in window order, stored as float32.
+ * Keeps the per window features so a track can be modelled again without decoding it.
+ *
+ * @author Michael Bragg
+ */
+public class FeatureMatrix {
+
+    private static final int INITIAL_ROWS = 256;
+
+    private final int dimension;
+    private float[] values;
+    private int numberOfRows;
+
+    /**
+     * @param dimension int. Length of each feature vector.
+     */
+    public FeatureMatrix(int dimension) {
+        this.dimension = dimension;
+        this.values = new float[dimension * INITIAL_ROWS];
+    }
+
+    /**
+     * @param dimension int. Length of each feature vector.
+     * @param values    float[]. The rows of the matrix, one after another.
+     * @throws IllegalArgumentException If the values are not a whole number of rows.
+     */
+    public FeatureMatrix(int dimension, float[] values) {
+        if (dimension == 0 ? values.length != 0 : values.length % dimension != 0) {
+            throw new IllegalArgumentException("Values are not a whole number of rows of dimension " + dimension);
+        }
+        this.dimension = dimension;
+        this.values = values;
+        this.numberOfRows = dimension == 0 ? 0 : values.length / dimension;
+    }
+
+    /**
+     * Adds a row, rounding the feature vector to float32.
+     *
+     * @param featureVector double[]. The feature vector of the next window.
+     * @throws IllegalArgumentException If the feature vector is not of the matrix dimension.
+     */
+    public void addRow(double[] featureVector) {
+        if (featureVector.length != dimension) {
+            throw new IllegalArgumentException("Feature vector of dimension " + featureVector.length + " added to a matrix of dimension " + dimension);
+        }
+        ensureCapacity(numberOfRows + 1);
+
+        int position = numberOfRows * dimension;
+        for (int column = 0; column < dimension; column++) {
+            values[position + column] = (float) featureVector[column];
+        }
+        numberOfRows++;
+    }
+
+    /**
+     * Adds the rows of another matrix after the rows of this one.
+     *
+     * @param other FeatureMatrix. The rows of the following windows.
+     * @return FeatureMatrix. This matrix.
+     * @throws IllegalArgumentException If the dimensions of the matrices differ.
+     */
+    public FeatureMatrix append(FeatureMatrix other) {
+        if (other.numberOfRows == 0) {
+            return this;
+        }
+        if (other.dimension != dimension) {
+            throw new IllegalArgumentException("Can not append a matrix of dimension " + other.dimension + " to a matrix of dimension " + dimension);
+        }
+        ensureCapacity(numberOfRows + other.numberOfRows);
+        System.arraycopy(other.values, 0, values, numberOfRows * dimension, other.numberOfRows * dimension);
+        numberOfRows += other.numberOfRows;
+        return this;
+    }
+
+    /**
+     * @param row           int. The window of the row.
+     * @param featureVector double[]. Buffer of the matrix dimension for the feature vector of the row.
+     */
+    public void getRow(int row, double[] featureVector) {
+        int position = row * dimension;
+        for (int column = 0; column < dimension; column++) {
+            featureVector[column] = values[position + column];
+        }
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    /**
+     * @return float[]. A copy of the rows of the matrix, one after another.
+     */
+    public float[] toArray() {
+        return Arrays.copyOf(values, numberOfRows * dimension);
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows * dimension > values.length) {
+            values = Arrays.copyOf(values, Math.max(rows, numberOfRows * 2) * dimension);
+        }
+    }
+}
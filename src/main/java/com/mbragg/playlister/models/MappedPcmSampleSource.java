@@ -0,0 +1,400 @@
+package com.mbragg.playlister.models;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * SampleSource that reads uncompressed WAV and AIFF files through a memory mapping of the file,
+ * without javax.sound decoding or format conversion. The samples are converted to mono straight from the
+ * mapped region, so the audio is never copied onto the heap.
+ * <p>
+ * Supports 8, 16, 24 and 32 bit integer and 32 and 64 bit float samples, in either byte order.
+ * Integer samples are scaled as by Samples, so 16 bit files give the same samples as the javax.sound path.
+ *
+ * @author Michael Bragg
+ */
+public class MappedPcmSampleSource implements SampleSource {
+
+    private static final int END_OF_STREAM = -1;
+    // Largest region mapped at once. Longer files are mapped a region at a time.
+    private static final int MAXIMUM_REGION_SIZE = 1 << 30;
+    private static final int CHUNK_HEADER_SIZE = 8;
+
+    private enum SampleType {
+        UNSIGNED_8, SIGNED_8, SIGNED_16, SIGNED_24, SIGNED_32, FLOAT_32, FLOAT_64
+    }
+
+    private final FileChannel fileChannel;
+    private final SampleType sampleType;
+    private final ByteOrder byteOrder;
+    private final int channels;
+    private final int frameSize;
+    private final float sampleRate;
+    private final long dataOffset;
+    private final long numberOfFrames;
+    private final int framesPerRegion;
+
+    private MappedByteBuffer region;
+    private long regionFirstFrame;
+    private long regionFrames;
+    private long frame;
+
+    private MappedPcmSampleSource(FileChannel fileChannel, SampleType sampleType, ByteOrder byteOrder, int channels,
+                                  float sampleRate, long dataOffset, long numberOfFrames) {
+        this.fileChannel = fileChannel;
+        this.sampleType = sampleType;
+        this.byteOrder = byteOrder;
+        this.channels = channels;
+        this.frameSize = channels * bytesPerSample(sampleType);
+        this.sampleRate = sampleRate;
+        this.dataOffset = dataOffset;
+        this.numberOfFrames = numberOfFrames;
+        this.framesPerRegion = MAXIMUM_REGION_SIZE / frameSize;
+    }
+
+    /**
+     * @param file File. An audio file.
+     * @return boolean. Whether the file name is that of a WAV or AIFF file, which open may be able to read.
+     */
+    public static boolean canOpen(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".wav") || name.endsWith(".wave") || name.endsWith(".aif") || name.endsWith(".aiff") || name.endsWith(".aifc");
+    }
+
+    /**
+     * Opens a WAV or AIFF file and parses its header.
+     *
+     * @param file File. An uncompressed WAV or AIFF file.
+     * @return MappedPcmSampleSource. Source of the mono samples of the file.
+     * @throws IOException                   If the file can not be read.
+     * @throws UnsupportedAudioFileException If the file is not an uncompressed WAV or AIFF file.
+     */
+    public static MappedPcmSampleSource open(File file) throws IOException, UnsupportedAudioFileException {
+        FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            String container = readId(fileChannel, 0);
+            String form = readId(fileChannel, 8);
+
+            if (container.equals("RIFF") && form.equals("WAVE")) {
+                return openWave(fileChannel);
+            } else if (container.equals("FORM") && (form.equals("AIFF") || form.equals("AIFC"))) {
+                return openAiff(fileChannel, form.equals("AIFC"));
+            }
+            throw new UnsupportedAudioFileException("Not a WAV or AIFF file: " + file.getName());
+        } catch (IOException | UnsupportedAudioFileException | RuntimeException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    private static MappedPcmSampleSource openWave(FileChannel fileChannel) throws IOException, UnsupportedAudioFileException {
+        ByteBuffer format = null;
+        long dataOffset = -1;
+        long dataSize = 0;
+
+        long position = 12;
+        while (position + CHUNK_HEADER_SIZE <= fileChannel.size() && (format == null || dataOffset < 0)) {
+            String id = readId(fileChannel, position);
+            long size = read(fileChannel, position + 4, 4, ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL;
+
+            if (id.equals("fmt ")) {
+                format = read(fileChannel, position + CHUNK_HEADER_SIZE, (int) Math.min(size, 40), ByteOrder.LITTLE_ENDIAN);
+            } else if (id.equals("data")) {
+                dataOffset = position + CHUNK_HEADER_SIZE;
+                dataSize = Math.min(size, fileChannel.size() - dataOffset);
+            }
+            position += CHUNK_HEADER_SIZE + size + (size & 1);
+        }
+
+        if (format == null || dataOffset < 0 || format.limit() < 16) {
+            throw new UnsupportedAudioFileException("WAV file without a format or data chunk");
+        }
+
+        int formatTag = format.getShort(0) & 0xFFFF;
+        int channels = format.getShort(2);
+        float sampleRate = format.getInt(4);
+        int bitsPerSample = format.getShort(14);
+
+        if (formatTag == 0xFFFE && format.limit() >= 26) {
+            // WAVE_FORMAT_EXTENSIBLE, the format tag is the start of the sub format GUID
+            formatTag = format.getShort(24) & 0xFFFF;
+        }
+
+        SampleType sampleType;
+        if (formatTag == 1) {
+            sampleType = bitsPerSample == 8 ? SampleType.UNSIGNED_8 : integerSampleType(bitsPerSample);
+        } else if (formatTag == 3) {
+            sampleType = floatSampleType(bitsPerSample);
+        } else {
+            throw new UnsupportedAudioFileException("Compressed WAV files are not supported, format " + formatTag);
+        }
+
+        return create(fileChannel, sampleType, ByteOrder.LITTLE_ENDIAN, channels, sampleRate, dataOffset, dataSize);
+    }
+
+    private static MappedPcmSampleSource openAiff(FileChannel fileChannel, boolean aifc) throws IOException, UnsupportedAudioFileException {
+        ByteBuffer common = null;
+        long dataOffset = -1;
+        long dataSize = 0;
+
+        long position = 12;
+        while (position + CHUNK_HEADER_SIZE <= fileChannel.size() && (common == null || dataOffset < 0)) {
+            String id = readId(fileChannel, position);
+            long size = read(fileChannel, position + 4, 4, ByteOrder.BIG_ENDIAN).getInt() & 0xFFFFFFFFL;
+
+            if (id.equals("COMM")) {
+                common = read(fileChannel, position + CHUNK_HEADER_SIZE, (int) Math.min(size, 22), ByteOrder.BIG_ENDIAN);
+            } else if (id.equals("SSND")) {
+                long offset = read(fileChannel, position + CHUNK_HEADER_SIZE, 4, ByteOrder.BIG_ENDIAN).getInt() & 0xFFFFFFFFL;
+                dataOffset = position + CHUNK_HEADER_SIZE + 8 + offset;
+                dataSize = Math.min(size - 8 - offset, fileChannel.size() - dataOffset);
+            }
+            position += CHUNK_HEADER_SIZE + size + (size & 1);
+        }
+
+        if (common == null || dataOffset < 0 || common.limit() < 18) {
+            throw new UnsupportedAudioFileException("AIFF file without a common or sound data chunk");
+        }
+
+        int channels = common.getShort(0);
+        int bitsPerSample = common.getShort(6);
+        float sampleRate = (float) readExtended(common, 8);
+
+        String compression = aifc && common.limit() >= 22 ? new String(new byte[]{common.get(18), common.get(19), common.get(20), common.get(21)}, StandardCharsets.US_ASCII) : "NONE";
+
+        SampleType sampleType;
+        ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+        switch (compression) {
+            case "NONE":
+                sampleType = bitsPerSample == 8 ? SampleType.SIGNED_8 : integerSampleType(bitsPerSample);
+                break;
+            case "sowt":
+                sampleType = bitsPerSample == 8 ? SampleType.SIGNED_8 : integerSampleType(bitsPerSample);
+                byteOrder = ByteOrder.LITTLE_ENDIAN;
+                break;
+            case "fl32":
+            case "FL32":
+                sampleType = SampleType.FLOAT_32;
+                break;
+            case "fl64":
+            case "FL64":
+                sampleType = SampleType.FLOAT_64;
+                break;
+            default:
+                throw new UnsupportedAudioFileException("Compressed AIFF files are not supported, compression " + compression);
+        }
+
+        return create(fileChannel, sampleType, byteOrder, channels, sampleRate, dataOffset, dataSize);
+    }
+
+    private static MappedPcmSampleSource create(FileChannel fileChannel, SampleType sampleType, ByteOrder byteOrder, int channels,
+                                                float sampleRate, long dataOffset, long dataSize) throws UnsupportedAudioFileException {
+        if (channels < 1 || sampleRate <= 0) {
+            throw new UnsupportedAudioFileException("Invalid number of channels or sample rate");
+        }
+        long frameSize = (long) channels * bytesPerSample(sampleType);
+        return new MappedPcmSampleSource(fileChannel, sampleType, byteOrder, channels, sampleRate, dataOffset, Math.max(dataSize, 0) / frameSize);
+    }
+
+    private static SampleType integerSampleType(int bitsPerSample) throws UnsupportedAudioFileException {
+        switch (bitsPerSample) {
+            case 16:
+                return SampleType.SIGNED_16;
+            case 24:
+                return SampleType.SIGNED_24;
+            case 32:
+                return SampleType.SIGNED_32;
+            default:
+                throw new UnsupportedAudioFileException("Unsupported bit depth: " + bitsPerSample);
+        }
+    }
+
+    private static SampleType floatSampleType(int bitsPerSample) throws UnsupportedAudioFileException {
+        if (bitsPerSample == 32) {
+            return SampleType.FLOAT_32;
+        } else if (bitsPerSample == 64) {
+            return SampleType.FLOAT_64;
+        }
+        throw new UnsupportedAudioFileException("Unsupported float bit depth: " + bitsPerSample);
+    }
+
+    private static int bytesPerSample(SampleType sampleType) {
+        switch (sampleType) {
+            case UNSIGNED_8:
+            case SIGNED_8:
+                return 1;
+            case SIGNED_16:
+                return 2;
+            case SIGNED_24:
+                return 3;
+            case FLOAT_64:
+                return 8;
+            default:
+                return 4;
+        }
+    }
+
+    private static String readId(FileChannel fileChannel, long position) throws IOException {
+        ByteBuffer id = read(fileChannel, position, 4, ByteOrder.BIG_ENDIAN);
+        return new String(id.array(), 0, id.limit(), StandardCharsets.US_ASCII);
+    }
+
+    private static ByteBuffer read(FileChannel fileChannel, long position, int length, ByteOrder byteOrder) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(byteOrder);
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads an 80 bit IEEE 754 extended precision number, as used for the AIFF sample rate.
+     */
+    private static double readExtended(ByteBuffer buffer, int offset) {
+        int exponent = buffer.getShort(offset) & 0x7FFF;
+        boolean negative = (buffer.getShort(offset) & 0x8000) != 0;
+        long mantissa = buffer.getLong(offset + 2);
+
+        // Unsigned 64 bit mantissa, with the binary point after the first bit
+        double value = (double) (mantissa >>> 1) * 2.0 + (mantissa & 1);
+        value = Math.scalb(value, exponent - 16383 - 63);
+        return negative ? -value : value;
+    }
+
+    @Override
+    public int read(double[] buffer, int offset, int length) throws IOException {
+        if (frame >= numberOfFrames) {
+            return END_OF_STREAM;
+        }
+        if (frame < regionFirstFrame || frame >= regionFirstFrame + regionFrames) {
+            mapRegion();
+        }
+
+        int count = (int) Math.min(length, regionFirstFrame + regionFrames - frame);
+        int position = (int) (frame - regionFirstFrame) * frameSize;
+        convertToMono(region, position, count, buffer, offset);
+        frame += count;
+        return count;
+    }
+
+    /**
+     * Seeks past the samples, without reading them.
+     */
+    @Override
+    public long skip(long numberOfSamples) throws IOException {
+        long skipped = Math.max(Math.min(numberOfSamples, numberOfFrames - frame), 0);
+        frame += skipped;
+        return skipped;
+    }
+
+    @Override
+    public long getLength() {
+        return numberOfFrames;
+    }
+
+    @Override
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        fileChannel.close();
+    }
+
+    /**
+     * Maps the region of the file starting at the current frame.
+     */
+    private void mapRegion() throws IOException {
+        regionFirstFrame = frame;
+        regionFrames = Math.min(framesPerRegion, numberOfFrames - frame);
+        region = fileChannel.map(FileChannel.MapMode.READ_ONLY, dataOffset + regionFirstFrame * frameSize, regionFrames * frameSize);
+        region.order(byteOrder);
+    }
+
+    /**
+     * Converts whole frames to mono samples, scaling each channel then averaging, as Samples does.
+     */
+    private void convertToMono(ByteBuffer data, int position, int numberOfFrames, double[] output, int offset) {
+        switch (sampleType) {
+            case UNSIGNED_8:
+                for (int i = 0; i < numberOfFrames; i++) {
+                    double total = 0.0;
+                    for (int chan = 0; chan < channels; chan++, position++) {
+                        total += (double) ((data.get(position) & 0xFF) - 128) / 128.0;
+                    }
+                    output[offset + i] = total / channels;
+                }
+                break;
+            case SIGNED_8:
+                for (int i = 0; i < numberOfFrames; i++) {
+                    double total = 0.0;
+                    for (int chan = 0; chan < channels; chan++, position++) {
+                        total += (double) data.get(position) / 128.0;
+                    }
+                    output[offset + i] = total / channels;
+                }
+                break;
+            case SIGNED_16:
+                for (int i = 0; i < numberOfFrames; i++) {
+                    double total = 0.0;
+                    for (int chan = 0; chan < channels; chan++, position += 2) {
+                        total += (double) data.getShort(position) / 32768.0;
+                    }
+                    output[offset + i] = total / channels;
+                }
+                break;
+            case SIGNED_24:
+                boolean littleEndian = byteOrder == ByteOrder.LITTLE_ENDIAN;
+                for (int i = 0; i < numberOfFrames; i++) {
+                    double total = 0.0;
+                    for (int chan = 0; chan < channels; chan++, position += 3) {
+                        int sample = littleEndian
+                                ? (data.get(position) & 0xFF) | (data.get(position + 1) & 0xFF) << 8 | data.get(position + 2) << 16
+                                : data.get(position) << 16 | (data.get(position + 1) & 0xFF) << 8 | (data.get(position + 2) & 0xFF);
+                        total += (double) sample / 8388608.0;
+                    }
+                    output[offset + i] = total / channels;
+                }
+                break;
+            case SIGNED_32:
+                for (int i = 0; i < numberOfFrames; i++) {
+                    double total = 0.0;
+                    for (int chan = 0; chan < channels; chan++, position += 4) {
+                        total += (double) data.getInt(position) / 2147483648.0;
+                    }
+                    output[offset + i] = total / channels;
+                }
+                break;
+            case FLOAT_32:
+                for (int i = 0; i < numberOfFrames; i++) {
+                    double total = 0.0;
+                    for (int chan = 0; chan < channels; chan++, position += 4) {
+                        total += data.getFloat(position);
+                    }
+                    output[offset + i] = total / channels;
+                }
+                break;
+            case FLOAT_64:
+                for (int i = 0; i < numberOfFrames; i++) {
+                    double total = 0.0;
+                    for (int chan = 0; chan < channels; chan++, position += 8) {
+                        total += data.getDouble(position);
+                    }
+                    output[offset + i] = total / channels;
+                }
+                break;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.mbragg.playlister.models;
+
+import net.sourceforge.jaad.aac.AACException;
+import net.sourceforge.jaad.aac.Decoder;
+import net.sourceforge.jaad.aac.SampleBuffer;
+import net.sourceforge.jaad.mp4.MP4Container;
+import net.sourceforge.jaad.mp4.api.AudioTrack;
+import net.sourceforge.jaad.mp4.api.Frame;
+import net.sourceforge.jaad.mp4.api.Movie;
+import net.sourceforge.jaad.mp4.api.Track;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+/**
+ * SampleSource that decodes the AAC track of an MP4 file (.m4a) with the JAAD container and decoder APIs,
+ * a frame at a time on the calling thread. The decoder, its sample buffer and the converted samples are reused for every frame.
+ * <p>
+ * Unlike the JAAD javax.sound provider, the length of the audio is known from the duration of the file,
+ * and skipping passes over whole frames without decoding them.
+ *
+ * @author Michael Bragg
+ */
+public class Mp4AacSampleSource implements SampleSource {
+
+    private static final int END_OF_STREAM = -1;
+    // Frames decoded before the skip target, so the decoder overlap is restored before the samples are used
+    private static final int PRE_ROLL_FRAMES = 1;
+
+    private final RandomAccessFile randomAccessFile;
+    private final Track track;
+    private final Decoder decoder;
+    private final SampleBuffer sampleBuffer;
+    private final Samples samples;
+    private final float sampleRate;
+    private final long length;
+
+    private AudioFormat audioFormat;
+    private int samplesPerFrame;
+    private double[] chunk = new double[0];
+    private int chunkLength;
+    private int chunkPosition;
+
+    private Mp4AacSampleSource(RandomAccessFile randomAccessFile, Track track, Decoder decoder, Samples samples, double duration) throws IOException {
+        this.randomAccessFile = randomAccessFile;
+        this.track = track;
+        this.decoder = decoder;
+        this.samples = samples;
+        this.sampleBuffer = new SampleBuffer();
+
+        // The output format, which differs from the track format for HE-AAC, is only known once a frame is decoded
+        decodeNextFrame();
+        this.sampleRate = sampleBuffer.getSampleRate();
+        this.length = duration > 0 ? Math.round(duration * sampleRate) : -1;
+    }
+
+    /**
+     * @param file File. An audio file.
+     * @return boolean. Whether the file name is that of an MP4 audio file, which open may be able to read.
+     */
+    public static boolean canOpen(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".m4a") || name.endsWith(".m4b") || name.endsWith(".mp4");
+    }
+
+    /**
+     * Opens an MP4 file and decodes the first frame of its AAC track.
+     *
+     * @param file    File. An MP4 file with an AAC audio track.
+     * @param samples Samples. Converts the decoded PCM to mono samples.
+     * @return Mp4AacSampleSource. Source of the mono samples of the file.
+     * @throws IOException                   If the file can not be read.
+     * @throws UnsupportedAudioFileException If the file is not an MP4 file with an unprotected AAC track the decoder supports.
+     */
+    public static Mp4AacSampleSource open(File file, Samples samples) throws IOException, UnsupportedAudioFileException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            Movie movie = new MP4Container(randomAccessFile).getMovie();
+            List<Track> tracks = movie.getTracks(AudioTrack.AudioCodec.AAC);
+            if (tracks.isEmpty() || tracks.get(0).getProtection() != null) {
+                throw new UnsupportedAudioFileException("No unprotected AAC track in " + file.getName());
+            }
+
+            Track track = tracks.get(0);
+            Decoder decoder;
+            try {
+                decoder = new Decoder(track.getDecoderSpecificInfo());
+            } catch (AACException e) {
+                throw new UnsupportedAudioFileException("Unsupported AAC track in " + file.getName() + ": " + e.getMessage());
+            }
+            return new Mp4AacSampleSource(randomAccessFile, track, decoder, samples, movie.getDuration());
+        } catch (IOException | UnsupportedAudioFileException | RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(double[] buffer, int offset, int length) throws IOException {
+        if (chunkPosition == chunkLength && !decodeNextFrame()) {
+            return END_OF_STREAM;
+        }
+
+        int count = Math.min(length, chunkLength - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, buffer, offset, count);
+        chunkPosition += count;
+        return count;
+    }
+
+    /**
+     * Skips the rest of the current frame, then whole frames without decoding them.
+     * The frames just before the target are decoded and discarded, to restore the state of the decoder.
+     */
+    @Override
+    public long skip(long numberOfSamples) throws IOException {
+        long skipped = Math.min(numberOfSamples, chunkLength - chunkPosition);
+        chunkPosition += skipped;
+
+        while (numberOfSamples - skipped >= (PRE_ROLL_FRAMES + 1L) * samplesPerFrame && track.hasMoreFrames()) {
+            if (track.readNextFrame() == null) {
+                break;
+            }
+            skipped += samplesPerFrame;
+        }
+        return skipped + SampleSource.super.skip(numberOfSamples - skipped);
+    }
+
+    /**
+     * @return long. The number of mono samples, estimated from the duration of the file.
+     */
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    /**
+     * Decodes the next frame of the track and converts it to mono samples.
+     *
+     * @return boolean. False if the end of the track has been reached.
+     * @throws IOException if the file can not be read, or a frame can not be decoded.
+     */
+    private boolean decodeNextFrame() throws IOException {
+        Frame frame = track.hasMoreFrames() ? track.readNextFrame() : null;
+        if (frame == null) {
+            return false;
+        }
+
+        decoder.decodeFrame(frame.getData(), sampleBuffer);
+
+        if (audioFormat == null || audioFormat.getChannels() != sampleBuffer.getChannels() || audioFormat.getSampleSizeInBits() != sampleBuffer.getBitsPerSample()) {
+            audioFormat = new AudioFormat(sampleBuffer.getSampleRate(), sampleBuffer.getBitsPerSample(), sampleBuffer.getChannels(), true, sampleBuffer.isBigEndian());
+        }
+
+        byte[] data = sampleBuffer.getData();
+        int numberOfSamples = data.length / audioFormat.getFrameSize();
+        if (chunk.length < numberOfSamples) {
+            chunk = new double[numberOfSamples];
+        }
+        samplesPerFrame = Math.max(samplesPerFrame, numberOfSamples);
+
+        chunkLength = samples.getSamplesInMono(data, 0, numberOfSamples * audioFormat.getFrameSize(), audioFormat, chunk, 0);
+        chunkPosition = 0;
+        return true;
+    }
+}
@@ -1,5 +1,6 @@
 package com.mbragg.playlister.models;
 
+import com.mbragg.playlister.tools.numbers.OnlineCovariance;
 import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
 import org.apache.commons.math3.linear.*;
 import org.apache.commons.math3.stat.correlation.Covariance;
@@ -32,6 +33,18 @@ public class MultivariateNormalDistributionModel implements TrackModel {
         return getMultivariateNormalDistribution(getMeanVectorOfMatrix(matrix), getCovarianceMatrix(matrix));
     }
 
+    /**
+     * Method to build the MultivariateNormalDistribution model from accumulated track data.
+     * The feature vectors of each window are never held together as a matrix.
+     *
+     * @param accumulator OnlineCovariance. The mean and covariance of the feature vectors of each window.
+     * @return Multivariate Normal Distribution Model
+     */
+    @Override
+    public MultivariateNormalDistribution buildFromAccumulator(OnlineCovariance accumulator) {
+        return new MultivariateNormalDistribution(accumulator.getMean(), accumulator.getCovariance());
+    }
+
     /**
      * Gets the similarity (the symmetric Kullback-Leibler Divergence) between two Multivariate Normal Distribution models.
      * @param dx First track Multivariate Normal Distribution model.
@@ -0,0 +1,58 @@
+package com.mbragg.playlister.models;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Holds an audio file that has been opened for feature extraction but not yet analysed.
+ * Either the feature matrix of the file was found in the feature cache, or the file is open as a sample source
+ * to be decoded and analysed.
+ *
+ * @author Michael Bragg
+ */
+public class PendingExtraction implements Closeable {
+
+    private final String cacheKey;
+    private final FeatureMatrix cachedFeatureMatrix;
+    private final SampleSource sampleSource;
+
+    public PendingExtraction(String cacheKey, FeatureMatrix cachedFeatureMatrix, SampleSource sampleSource) {
+        this.cacheKey = cacheKey;
+        this.cachedFeatureMatrix = cachedFeatureMatrix;
+        this.sampleSource = sampleSource;
+    }
+
+    /**
+     * @return Boolean. Whether the feature matrix of the file was found in the feature cache.
+     */
+    public boolean isCached() {
+        return cachedFeatureMatrix != null;
+    }
+
+    /**
+     * @return String. The feature cache key of the file, or null if the feature cache is disabled.
+     */
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public FeatureMatrix getCachedFeatureMatrix() {
+        return cachedFeatureMatrix;
+    }
+
+    public SampleSource getSampleSource() {
+        return sampleSource;
+    }
+
+    /**
+     * Closes the sample source, if the file was opened for decoding.
+     *
+     * @throws IOException if the sample source can not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (sampleSource != null) {
+            sampleSource.close();
+        }
+    }
+}
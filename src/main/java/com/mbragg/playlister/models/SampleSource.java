@@ -0,0 +1,58 @@
+package com.mbragg.playlister.models;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Defines a source of mono audio samples that is read incrementally, so that a track can be analysed
+ * without holding all of its samples in memory.
+ *
+ * @author Michael Bragg
+ */
+public interface SampleSource extends Closeable {
+
+    /**
+     * Reads up to length mono samples into the supplied buffer.
+     * Blocks until at least one sample is available or the end of the audio is reached.
+     *
+     * @param buffer double[]. The buffer to read the samples into.
+     * @param offset int. Position in the buffer of the first sample.
+     * @param length int. The maximum number of samples to read.
+     * @return int. The number of samples read, or -1 if the end of the audio has been reached.
+     * @throws IOException if the underlying audio can not be read.
+     */
+    int read(double[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Skips over up to numberOfSamples mono samples without returning them.
+     * The default implementation reads and discards the samples.
+     *
+     * @param numberOfSamples long. The number of samples to skip.
+     * @return long. The number of samples skipped, less than requested if the end of the audio has been reached.
+     * @throws IOException if the underlying audio can not be read.
+     */
+    default long skip(long numberOfSamples) throws IOException {
+        double[] discarded = new double[(int) Math.min(numberOfSamples, 4096)];
+        long skipped = 0;
+        while (skipped < numberOfSamples) {
+            int numberOfSamplesRead = read(discarded, 0, (int) Math.min(numberOfSamples - skipped, discarded.length));
+            if (numberOfSamplesRead < 0) {
+                break;
+            }
+            skipped += numberOfSamplesRead;
+        }
+        return skipped;
+    }
+
+    /**
+     * @return long. The total number of mono samples of the audio, or -1 if not known.
+     */
+    default long getLength() {
+        return -1;
+    }
+
+    /**
+     * @return float. The sample rate of the audio in Hz.
+     */
+    float getSampleRate();
+}
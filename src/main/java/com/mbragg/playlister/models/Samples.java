@@ -3,11 +3,14 @@ package com.mbragg.playlister.models;
 import org.springframework.stereotype.Component;
 
 import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
 import java.nio.ByteBuffer;
-import java.nio.ShortBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Methods for conversion from byte[] to double[], in mono and stereo.
+ * Mono samples are converted straight from the interleaved bytes, without building the per channel arrays.
+ * Supports 8, 16, 24 and 32 bit signed PCM and 32 bit float PCM, in either byte order.
  *
  * @author Michael Bragg
  */
@@ -15,10 +18,13 @@ import java.nio.ShortBuffer;
 @Component
 public class Samples {
 
+    private static final int THIRTY_TWO_BIT = 32;
+    private static final int TWENTY_FOUR_BIT = 24;
     private static final int SIXTEEN_BIT = 16;
     private static final int EIGHT_BIT = 8;
     private static final double MAXIMUM_SAMPLE_OVERHEAD = 2.0;
     private static final int TWO = 2;
+    private static final int THREE = 3;
     private static final int FOUR = 4;
 
     /**
@@ -29,8 +35,179 @@ public class Samples {
      * @return double[] data in mono.
      */
     public double[] getSamplesInMono(byte[] audioBytes, AudioFormat audioFormat) {
-        double[][] audioSamples = getSamplesInStereo(audioBytes, audioFormat);
-        return getSamplesInMono(audioSamples);
+        double[] samplesInMono = new double[getNumberOfSamples(audioBytes.length, audioFormat)];
+        getSamplesInMono(audioBytes, 0, audioBytes.length, audioFormat, samplesInMono, 0);
+        return samplesInMono;
+    }
+
+    /**
+     * For a range of a given byte[] and audio format, write the samples in mono into the supplied buffer.
+     * Converts the interleaved bytes in a single pass, giving the same values as averaging the channels of getSamplesInStereo.
+     *
+     * @param audioBytes   byte[]. Audio byte[] data.
+     * @param offset       int. Position in audioBytes of the first byte.
+     * @param length       int. Number of bytes to convert.
+     * @param audioFormat  AudioFormat. Audio file format information.
+     * @param output       double[]. Buffer for the mono samples.
+     * @param outputOffset int. Position in the output buffer of the first sample.
+     * @return int. The number of samples written.
+     * @throws IllegalArgumentException If the audio format is not supported, as for getSamplesInStereo.
+     */
+    public int getSamplesInMono(byte[] audioBytes, int offset, int length, AudioFormat audioFormat, double[] output, int outputOffset) {
+        int numberOfSamples = getNumberOfSamples(length, audioFormat);
+        int numberOfChannels = audioFormat.getChannels();
+        int bitDepth = audioFormat.getSampleSizeInBits();
+        double maximumSampleValue = findMaximumSampleValue(bitDepth) + MAXIMUM_SAMPLE_OVERHEAD;
+
+        if (audioFormat.getEncoding() == AudioFormat.Encoding.PCM_FLOAT) {
+            convertFloatToMono(wrap(audioBytes, audioFormat), offset, numberOfSamples, numberOfChannels, output, outputOffset);
+        } else if (bitDepth == EIGHT_BIT) {
+            convertEightBitToMono(audioBytes, offset, numberOfSamples, numberOfChannels, maximumSampleValue, output, outputOffset);
+        } else if (bitDepth == SIXTEEN_BIT && audioFormat.isBigEndian()) {
+            convertSixteenBitToMono(audioBytes, offset, numberOfSamples, numberOfChannels, maximumSampleValue, output, outputOffset);
+        } else if (bitDepth == SIXTEEN_BIT) {
+            convertLittleEndianSixteenBitToMono(wrap(audioBytes, audioFormat), offset, numberOfSamples, numberOfChannels, maximumSampleValue, output, outputOffset);
+        } else if (bitDepth == TWENTY_FOUR_BIT) {
+            convertTwentyFourBitToMono(audioBytes, offset, numberOfSamples, numberOfChannels, audioFormat.isBigEndian(), maximumSampleValue, output, outputOffset);
+        } else {
+            convertThirtyTwoBitToMono(wrap(audioBytes, audioFormat), offset, numberOfSamples, numberOfChannels, maximumSampleValue, output, outputOffset);
+        }
+        return numberOfSamples;
+    }
+
+    /**
+     * Checks whether audio of a given format can be converted directly, without a format conversion stream.
+     *
+     * @param audioFormat AudioFormat. Audio file format information.
+     * @return boolean. True for 8, 16, 24 or 32 bit signed PCM or 32 bit float PCM, in either byte order.
+     */
+    public boolean isSupportedFormat(AudioFormat audioFormat) {
+        int bitDepth = audioFormat.getSampleSizeInBits();
+
+        if (audioFormat.getEncoding() == AudioFormat.Encoding.PCM_FLOAT)
+            return bitDepth == THIRTY_TWO_BIT;
+
+        return audioFormat.getEncoding() == AudioFormat.Encoding.PCM_SIGNED &&
+                (bitDepth == EIGHT_BIT || bitDepth == SIXTEEN_BIT || bitDepth == TWENTY_FOUR_BIT || bitDepth == THIRTY_TWO_BIT);
+    }
+
+    private void convertEightBitToMono(byte[] audioBytes, int offset, int numberOfSamples, int numberOfChannels,
+                                       double maximumSampleValue, double[] output, int outputOffset) {
+        if (numberOfChannels == 1) {
+            for (int sample = 0; sample < numberOfSamples; sample++) {
+                output[outputOffset + sample] = (double) audioBytes[offset + sample] / maximumSampleValue;
+            }
+        } else if (numberOfChannels == TWO) {
+            for (int sample = 0, position = offset; sample < numberOfSamples; sample++, position += TWO) {
+                double left = (double) audioBytes[position] / maximumSampleValue;
+                double right = (double) audioBytes[position + 1] / maximumSampleValue;
+                output[outputOffset + sample] = (left + right) / TWO;
+            }
+        } else {
+            for (int sample = 0, position = offset; sample < numberOfSamples; sample++) {
+                double runningSampleTotal = 0.0;
+                for (int chan = 0; chan < numberOfChannels; chan++, position++) {
+                    runningSampleTotal += (double) audioBytes[position] / maximumSampleValue;
+                }
+                output[outputOffset + sample] = runningSampleTotal / numberOfChannels;
+            }
+        }
+    }
+
+    private void convertSixteenBitToMono(byte[] audioBytes, int offset, int numberOfSamples, int numberOfChannels,
+                                         double maximumSampleValue, double[] output, int outputOffset) {
+        if (numberOfChannels == 1) {
+            for (int sample = 0, position = offset; sample < numberOfSamples; sample++, position += TWO) {
+                output[outputOffset + sample] = (double) bigEndianShort(audioBytes, position) / maximumSampleValue;
+            }
+        } else if (numberOfChannels == TWO) {
+            for (int sample = 0, position = offset; sample < numberOfSamples; sample++, position += FOUR) {
+                double left = (double) bigEndianShort(audioBytes, position) / maximumSampleValue;
+                double right = (double) bigEndianShort(audioBytes, position + TWO) / maximumSampleValue;
+                output[outputOffset + sample] = (left + right) / TWO;
+            }
+        } else {
+            for (int sample = 0, position = offset; sample < numberOfSamples; sample++) {
+                double runningSampleTotal = 0.0;
+                for (int chan = 0; chan < numberOfChannels; chan++, position += TWO) {
+                    runningSampleTotal += (double) bigEndianShort(audioBytes, position) / maximumSampleValue;
+                }
+                output[outputOffset + sample] = runningSampleTotal / numberOfChannels;
+            }
+        }
+    }
+
+    private void convertLittleEndianSixteenBitToMono(ByteBuffer byteBuffer, int offset, int numberOfSamples, int numberOfChannels,
+                                                     double maximumSampleValue, double[] output, int outputOffset) {
+        if (numberOfChannels == 1) {
+            for (int sample = 0, position = offset; sample < numberOfSamples; sample++, position += TWO) {
+                output[outputOffset + sample] = (double) byteBuffer.getShort(position) / maximumSampleValue;
+            }
+        } else if (numberOfChannels == TWO) {
+            for (int sample = 0, position = offset; sample < numberOfSamples; sample++, position += FOUR) {
+                double left = (double) byteBuffer.getShort(position) / maximumSampleValue;
+                double right = (double) byteBuffer.getShort(position + TWO) / maximumSampleValue;
+                output[outputOffset + sample] = (left + right) / TWO;
+            }
+        } else {
+            for (int sample = 0, position = offset; sample < numberOfSamples; sample++) {
+                double runningSampleTotal = 0.0;
+                for (int chan = 0; chan < numberOfChannels; chan++, position += TWO) {
+                    runningSampleTotal += (double) byteBuffer.getShort(position) / maximumSampleValue;
+                }
+                output[outputOffset + sample] = runningSampleTotal / numberOfChannels;
+            }
+        }
+    }
+
+    private void convertTwentyFourBitToMono(byte[] audioBytes, int offset, int numberOfSamples, int numberOfChannels, boolean bigEndian,
+                                            double maximumSampleValue, double[] output, int outputOffset) {
+        for (int sample = 0, position = offset; sample < numberOfSamples; sample++) {
+            double runningSampleTotal = 0.0;
+            for (int chan = 0; chan < numberOfChannels; chan++, position += THREE) {
+                int value = bigEndian ? bigEndianTwentyFourBit(audioBytes, position) : littleEndianTwentyFourBit(audioBytes, position);
+                runningSampleTotal += (double) value / maximumSampleValue;
+            }
+            output[outputOffset + sample] = runningSampleTotal / numberOfChannels;
+        }
+    }
+
+    private void convertThirtyTwoBitToMono(ByteBuffer byteBuffer, int offset, int numberOfSamples, int numberOfChannels,
+                                           double maximumSampleValue, double[] output, int outputOffset) {
+        for (int sample = 0, position = offset; sample < numberOfSamples; sample++) {
+            double runningSampleTotal = 0.0;
+            for (int chan = 0; chan < numberOfChannels; chan++, position += FOUR) {
+                runningSampleTotal += (double) byteBuffer.getInt(position) / maximumSampleValue;
+            }
+            output[outputOffset + sample] = runningSampleTotal / numberOfChannels;
+        }
+    }
+
+    private void convertFloatToMono(ByteBuffer byteBuffer, int offset, int numberOfSamples, int numberOfChannels,
+                                    double[] output, int outputOffset) {
+        for (int sample = 0, position = offset; sample < numberOfSamples; sample++) {
+            double runningSampleTotal = 0.0;
+            for (int chan = 0; chan < numberOfChannels; chan++, position += FOUR) {
+                runningSampleTotal += (double) byteBuffer.getFloat(position);
+            }
+            output[outputOffset + sample] = runningSampleTotal / numberOfChannels;
+        }
+    }
+
+    private static ByteBuffer wrap(byte[] audioBytes, AudioFormat audioFormat) {
+        return ByteBuffer.wrap(audioBytes).order(audioFormat.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int bigEndianTwentyFourBit(byte[] audioBytes, int position) {
+        return (audioBytes[position] << SIXTEEN_BIT) | ((audioBytes[position + 1] & 0xFF) << EIGHT_BIT) | (audioBytes[position + 2] & 0xFF);
+    }
+
+    private static int littleEndianTwentyFourBit(byte[] audioBytes, int position) {
+        return (audioBytes[position + 2] << SIXTEEN_BIT) | ((audioBytes[position + 1] & 0xFF) << EIGHT_BIT) | (audioBytes[position] & 0xFF);
+    }
+
+    private static short bigEndianShort(byte[] audioBytes, int position) {
+        return (short) ((audioBytes[position] << EIGHT_BIT) | (audioBytes[position + 1] & 0xFF));
     }
 
     /**
@@ -65,30 +242,45 @@ public class Samples {
      * @param audioBytes byte[]. Audio byte[] data.
      * @param format     AudioFormat. Audio file format information.
      * @return double[][]. Stereo double[][] data.
-     * @throws IllegalArgumentException If the audio format is not supported.
-     *                                  Only 8 or 16 bit signed PCM samples with a big endian, with an even number of bytes for the given bit depth.
+     * @throws IllegalArgumentException If the audio format is not supported, see isSupportedFormat,
+     *                                  or the number of bytes is uneven for the bit depth.
      */
     public double[][] getSamplesInStereo(byte[] audioBytes, AudioFormat format) {
 
+        int numberOfSamples = getNumberOfSamples(audioBytes.length, format);
+
+        return convertBytesToDoubles(format.getChannels(), numberOfSamples, format, audioBytes);
+    }
+
+    /**
+     * Checks the audio format is supported, and finds the number of samples per channel in a number of bytes.
+     *
+     * @param numberOfBytes int. Number of bytes of audio data.
+     * @param format        AudioFormat. Audio file format information.
+     * @return int. The number of samples per channel.
+     * @throws IllegalArgumentException If the audio format is not supported.
+     */
+    private int getNumberOfSamples(int numberOfBytes, AudioFormat format) {
+
         int numberOfChannels = format.getChannels();
         int bitDepth = format.getSampleSizeInBits();
 
-        if ((bitDepth != SIXTEEN_BIT && bitDepth != EIGHT_BIT) || !format.isBigEndian() || format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED)
-            throw new IllegalArgumentException("Only 8 or 16 bit signed PCM samples with a big endian can be processed");
+        if (!isSupportedFormat(format))
+            throw new IllegalArgumentException("Only 8, 16, 24 or 32 bit signed PCM or 32 bit float PCM samples can be processed");
 
-        int numberOfBytes = audioBytes.length;
         int bytesPerSample = bitDepth / EIGHT_BIT;
         int numberOfSamples = numberOfBytes / bytesPerSample / numberOfChannels;
 
         if (((numberOfSamples == TWO || bytesPerSample == TWO) && (numberOfBytes % TWO != 0)) ||
-                ((numberOfSamples == TWO && bytesPerSample == TWO) && (numberOfBytes % FOUR != 0)))
+                ((numberOfSamples == TWO && bytesPerSample == TWO) && (numberOfBytes % FOUR != 0)) ||
+                (bytesPerSample > TWO && numberOfBytes % (bytesPerSample * numberOfChannels) != 0))
             throw new IllegalArgumentException("Uneven number of bytes for given bit depth and number of channels");
 
-        return convertBytesToDoubles(numberOfChannels, numberOfSamples, bitDepth, audioBytes);
+        return numberOfSamples;
     }
 
     /**
-     * Method to carry out the conversion from byte[] to double[][]
+     * Method to carry out the conversion from big endian signed PCM byte[] to double[][]
      *
      * @param numberOfChannels int
      * @param numberOfSamples  int
@@ -97,28 +289,40 @@ public class Samples {
      * @return double[][] audio data.
      */
     protected double[][] convertBytesToDoubles(int numberOfChannels, int numberOfSamples, int bitDepth, byte[] audioBytes) {
+        if (bitDepth != EIGHT_BIT && bitDepth != SIXTEEN_BIT && bitDepth != TWENTY_FOUR_BIT && bitDepth != THIRTY_TWO_BIT) {
+            throw new IllegalArgumentException("Bit depth must be 8, 16, 24 or 32 bit");
+        }
+
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, AudioSystem.NOT_SPECIFIED, bitDepth, numberOfChannels,
+                numberOfChannels * bitDepth / EIGHT_BIT, AudioSystem.NOT_SPECIFIED, true);
+        return convertBytesToDoubles(numberOfChannels, numberOfSamples, format, audioBytes);
+    }
+
+    private double[][] convertBytesToDoubles(int numberOfChannels, int numberOfSamples, AudioFormat format, byte[] audioBytes) {
         double[][] samples = new double[numberOfChannels][numberOfSamples];
 
+        int bitDepth = format.getSampleSizeInBits();
+        int bytesPerSample = bitDepth / EIGHT_BIT;
+        boolean floatingPoint = format.getEncoding() == AudioFormat.Encoding.PCM_FLOAT;
         double maximumSampleValue = findMaximumSampleValue(bitDepth) + MAXIMUM_SAMPLE_OVERHEAD;
 
-        ByteBuffer byteBuffer = ByteBuffer.wrap(audioBytes);
+        ByteBuffer byteBuffer = wrap(audioBytes, format);
 
-        if (bitDepth == EIGHT_BIT) {
-            for (int sample = 0; sample < numberOfSamples; sample++) {
-                for (int chan = 0; chan < numberOfChannels; chan++) {
-                    samples[chan][sample] = (double) byteBuffer.get() / maximumSampleValue;
+        for (int sample = 0, position = 0; sample < numberOfSamples; sample++) {
+            for (int chan = 0; chan < numberOfChannels; chan++, position += bytesPerSample) {
+                if (floatingPoint) {
+                    samples[chan][sample] = byteBuffer.getFloat(position);
+                } else if (bitDepth == EIGHT_BIT) {
+                    samples[chan][sample] = (double) byteBuffer.get(position) / maximumSampleValue;
+                } else if (bitDepth == SIXTEEN_BIT) {
+                    samples[chan][sample] = (double) byteBuffer.getShort(position) / maximumSampleValue;
+                } else if (bitDepth == TWENTY_FOUR_BIT) {
+                    int value = format.isBigEndian() ? bigEndianTwentyFourBit(audioBytes, position) : littleEndianTwentyFourBit(audioBytes, position);
+                    samples[chan][sample] = (double) value / maximumSampleValue;
+                } else {
+                    samples[chan][sample] = (double) byteBuffer.getInt(position) / maximumSampleValue;
                 }
             }
-        } else if (bitDepth == SIXTEEN_BIT) {
-            ShortBuffer shortBuffer = byteBuffer.asShortBuffer();
-            for (int sample = 0; sample < numberOfSamples; sample++) {
-                for (int chan = 0; chan < numberOfChannels; chan++) {
-                    samples[chan][sample] = (double) shortBuffer.get() / maximumSampleValue;
-                }
-            }
-
-        } else {
-            throw new IllegalArgumentException("Bit depth must be either 8 bit or 16 bit");
         }
         return samples;
     }
@@ -130,7 +334,7 @@ public class Samples {
      * @return double. The maximum sample value.
      */
     protected double findMaximumSampleValue(int bitDepth) {
-        int maxSampleValue = 1;
+        long maxSampleValue = 1;
         for (int i = 0; i < (bitDepth - 1); i++) {
             maxSampleValue *= 2;
         }
@@ -0,0 +1,79 @@
+package com.mbragg.playlister.models;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between a walk of a users music directory and the files recorded in the scan manifest.
+ *
+ * @author Michael Bragg
+ */
+public class ScanDelta {
+
+    private final List<File> added = new ArrayList<>();
+    private final List<File> changed = new ArrayList<>();
+    private final Map<String, File> moved = new LinkedHashMap<>();
+    private final List<String> deleted = new ArrayList<>();
+    private int numberOfUnchanged;
+
+    public void addAdded(File file) {
+        added.add(file);
+    }
+
+    public void addChanged(File file) {
+        changed.add(file);
+    }
+
+    public void addMoved(String oldFilePath, File file) {
+        moved.put(oldFilePath, file);
+    }
+
+    public void addDeleted(String filePath) {
+        deleted.add(filePath);
+    }
+
+    public void addUnchanged() {
+        numberOfUnchanged++;
+    }
+
+    /**
+     * @return List of files that are not recorded, at their path or any other.
+     */
+    public List<File> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return List of files recorded at their path, whose content has changed since.
+     */
+    public List<File> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return Map of the recorded path of each moved file, to the file at its new path with the same content.
+     */
+    public Map<String, File> getMoved() {
+        return moved;
+    }
+
+    /**
+     * @return List of the recorded paths of files that are no longer found, at their path or any other.
+     */
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    public int getNumberOfUnchanged() {
+        return numberOfUnchanged;
+    }
+
+    @Override
+    public String toString() {
+        return "added " + added.size() + ", changed " + changed.size() + ", moved " + moved.size()
+                + ", deleted " + deleted.size() + ", unchanged " + numberOfUnchanged;
+    }
+}
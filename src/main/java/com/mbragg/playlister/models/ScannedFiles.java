@@ -0,0 +1,151 @@
+package com.mbragg.playlister.models;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compact in-memory snapshot of the audio files already scanned into the database, for diffing a directory walk
+ * against the database in a single pass instead of one lookup per file.
+ * <p>
+ * Holds a hash set of the file names, and the file paths sorted with the size and last modified time recorded
+ * for each, as parallel arrays searched by binary search.
+ *
+ * @author Michael Bragg
+ */
+public class ScannedFiles {
+
+    // Size or last modified time of a file scanned before they were recorded.
+    public static final long UNKNOWN = -1;
+
+    private final Set<String> filenames;
+    private final String[] filePaths;
+    private final long[] fileSizes;
+    private final long[] lastModifiedTimes;
+
+    private ScannedFiles(Set<String> filenames, String[] filePaths, long[] fileSizes, long[] lastModifiedTimes) {
+        this.filenames = filenames;
+        this.filePaths = filePaths;
+        this.fileSizes = fileSizes;
+        this.lastModifiedTimes = lastModifiedTimes;
+    }
+
+    /**
+     * @return ScannedFiles. A snapshot with no files.
+     */
+    public static ScannedFiles empty() {
+        return new Builder().build();
+    }
+
+    /**
+     * @param filename String. The name of the file to check.
+     * @return Boolean. Whether a file with the name has been scanned.
+     */
+    public boolean containsFilename(String filename) {
+        return filenames.contains(filename);
+    }
+
+    /**
+     * @param filePath String. The absolute path of the file to check.
+     * @return Boolean. Whether the file at the path has been scanned.
+     */
+    public boolean containsFilePath(String filePath) {
+        return Arrays.binarySearch(filePaths, filePath) >= 0;
+    }
+
+    /**
+     * @param file File. The file to check.
+     * @return Boolean. Whether the file at the path of the file has been scanned, and its size and last modified time
+     * are still those recorded when it was scanned. False if they were not recorded.
+     */
+    public boolean isUnchanged(File file) {
+        int index = Arrays.binarySearch(filePaths, file.getAbsolutePath());
+        return index >= 0
+                && fileSizes[index] != UNKNOWN && fileSizes[index] == file.length()
+                && lastModifiedTimes[index] != UNKNOWN && lastModifiedTimes[index] == file.lastModified();
+    }
+
+    /**
+     * @param path String. The absolute path of a file or directory.
+     * @return List of the paths of the scanned files at the path, or inside it at any depth.
+     */
+    public List<String> getFilePaths(String path) {
+        List<String> scannedFilePaths = new ArrayList<>();
+        String directoryPrefix = path + File.separator;
+
+        int index = Arrays.binarySearch(filePaths, path);
+        if (index >= 0) {
+            scannedFilePaths.add(path);
+        }
+        // the paths inside the directory sort together, after the directory prefix
+        index = -Arrays.binarySearch(filePaths, directoryPrefix) - 1;
+        for (int i = Math.max(index, 0); i < filePaths.length && filePaths[i].startsWith(directoryPrefix); i++) {
+            scannedFilePaths.add(filePaths[i]);
+        }
+        return scannedFilePaths;
+    }
+
+    /**
+     * @return int. The number of files scanned.
+     */
+    public int size() {
+        return filePaths.length;
+    }
+
+    /**
+     * Builds a ScannedFiles snapshot from the scanned files, added in any order.
+     */
+    public static class Builder {
+
+        private final Set<String> filenames = new HashSet<>();
+        private final List<ScannedFile> files = new ArrayList<>();
+
+        /**
+         * @param filename     String. The name of the scanned file.
+         * @param filePath     String. The absolute path of the scanned file.
+         * @param fileSize     Long. The size of the file in bytes when scanned, or null if not recorded.
+         * @param lastModified Long. The last modified time of the file when scanned, or null if not recorded.
+         * @return Builder. This builder.
+         */
+        public Builder add(String filename, String filePath, Long fileSize, Long lastModified) {
+            if (filename != null) {
+                filenames.add(filename);
+            }
+            if (filePath != null) {
+                files.add(new ScannedFile(filePath, fileSize != null ? fileSize : UNKNOWN, lastModified != null ? lastModified : UNKNOWN));
+            }
+            return this;
+        }
+
+        public ScannedFiles build() {
+            files.sort(Comparator.comparing(file -> file.filePath));
+
+            String[] filePaths = new String[files.size()];
+            long[] fileSizes = new long[files.size()];
+            long[] lastModifiedTimes = new long[files.size()];
+            for (int i = 0; i < files.size(); i++) {
+                filePaths[i] = files.get(i).filePath;
+                fileSizes[i] = files.get(i).fileSize;
+                lastModifiedTimes[i] = files.get(i).lastModified;
+            }
+            return new ScannedFiles(filenames, filePaths, fileSizes, lastModifiedTimes);
+        }
+    }
+
+    private static class ScannedFile {
+
+        private final String filePath;
+        private final long fileSize;
+        private final long lastModified;
+
+        private ScannedFile(String filePath, long fileSize, long lastModified) {
+            this.filePath = filePath;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.mbragg.playlister.models;
 
+import com.mbragg.playlister.tools.numbers.OnlineCovariance;
 import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
 
 import java.util.List;
@@ -18,6 +19,13 @@ public interface TrackModel {
      */
     MultivariateNormalDistribution build(List<double[]> data);
 
+    /**
+     * Build the model for a track from the mean and covariance accumulated from its data values.
+     * @param accumulator The mean and covariance of the data values for a specific track.
+     * @return A model to represent a track's data values.
+     */
+    MultivariateNormalDistribution buildFromAccumulator(OnlineCovariance accumulator);
+
     /**
      * Gets the similarity between two track models.
      * @param dx First track model.
@@ -26,9 +26,12 @@ public class Track {
     @SuppressWarnings("UnusedDeclaration")
     @GraphId
     private Long id;
-    @Indexed(unique = true)
+    @Indexed
     private String filename;
+    @Indexed(unique = true)
     private String filePath;
+    private Long fileSize;
+    private Long lastModified;
     private String title;
     private String artist;
     private String album;
@@ -95,6 +98,22 @@ public class Track {
         this.filePath = filePath;
     }
 
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public Long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Long lastModified) {
+        this.lastModified = lastModified;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -6,6 +6,8 @@ import org.springframework.data.neo4j.annotation.Query;
 import org.springframework.data.neo4j.conversion.Result;
 import org.springframework.data.neo4j.repository.GraphRepository;
 
+import java.util.Map;
+
 /**
  * Defines Cypher queries for the retrieving results from the Neo4j database.
  * <p>
@@ -15,24 +17,28 @@ import org.springframework.data.neo4j.repository.GraphRepository;
  */
 public interface TrackRepository extends GraphRepository<Track> {
 
-    Track findByFilename(String name);
+    Track findByFilePath(String filePath);
+
+    @Query("MATCH (t:Track) " +
+            "RETURN t.filename AS filename, t.filePath AS filePath, t.fileSize AS fileSize, t.lastModified AS lastModified")
+    Result<Map<String, Object>> findAllScannedFiles();
 
     @Query("START Genre=node({0}) MATCH (Genre)-[s:IS_GENRE]-(t1:Track) RETURN t1")
     Result<Track> findByGenreNode(Genre genreNode);
 
 
-    @Query("MATCH (t1:Track {filename:{0}})-[s:SIMILARITY]-(t2:Track) " +
+    @Query("MATCH (t1:Track {filePath:{0}})-[s:SIMILARITY]-(t2:Track) " +
             "WITH t2, s.similarity AS sim " +
             "ORDER BY sim ASC " +
             "LIMIT {1} " +
             "RETURN t2")
-    Result<Track> findAllSimilarTracks(String filename, int count);
+    Result<Track> findAllSimilarTracks(String filePath, int count);
 
-    @Query("MATCH (t1:Track {filename:{0}})-[d:IS_GENRE]->(Genre)--(t2:Track)-[s:SIMILARITY]-(t1:Track) " +
+    @Query("MATCH (t1:Track {filePath:{0}})-[d:IS_GENRE]->(Genre)--(t2:Track)-[s:SIMILARITY]-(t1:Track) " +
             "WITH t2, s.similarity AS sim " +
             "ORDER BY sim ASC " +
             "LIMIT {1} " +
             "RETURN t2")
-    Result<Track> findAllSimilarTracksWithGenre(String filename, int count);
+    Result<Track> findAllSimilarTracksWithGenre(String filePath, int count);
 
 }
\ No newline at end of file
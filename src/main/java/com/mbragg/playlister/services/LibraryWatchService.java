@@ -0,0 +1,299 @@
+package com.mbragg.playlister.services;
+
+import com.mbragg.playlister.controllers.ApplicationController;
+import com.mbragg.playlister.tools.file.DirectoryParser;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Service to keep the database up to date with a users music directory while the application runs, by watching the
+ * directory for files being created, modified and removed.
+ * <p>
+ * Every directory of the library is registered with a WatchService, as directories are not watched recursively on
+ * every platform. Events are gathered until the directory has been quiet for the debounce interval, so that a file
+ * being copied is processed once it is complete, and a file moved within the library is seen as both its removal and
+ * its creation. Only the changed files are then passed through the application, at a cost proportional to the number
+ * of changes rather than the size of the library. If events are lost, the whole directory is scanned again.
+ *
+ * @author Michael Bragg
+ */
+@Component
+public class LibraryWatchService {
+
+    // Longest wait to process changes, in debounce intervals, while the directory is never quiet.
+    private static final int MAXIMUM_DELAY = 10;
+
+    @Autowired
+    private ApplicationController applicationController;
+
+    @Autowired
+    private Logger logger;
+
+    @Value("${suffix}")
+    private String suffix;
+
+    @Value("${watchLibrary}")
+    private boolean enabled;
+
+    @Value("${watchDebounceMs}")
+    private long debounceMs;
+
+    private Thread watchThread;
+    private WatchService watchService;
+
+    public LibraryWatchService() {
+        // empty public constructor for Spring framework
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized boolean isWatching() {
+        return watchThread != null;
+    }
+
+    /**
+     * Starts watching a users music directory, in place of any directory already watched. The directories are
+     * registered in the background. Does nothing if watching is disabled.
+     *
+     * @param musicDirectoryFilePath String. Path to local music directory, or several separated by the path separator.
+     * @throws IOException if the directory can not be watched.
+     */
+    public synchronized void watch(String musicDirectoryFilePath) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        stop();
+
+        watchService = FileSystems.getDefault().newWatchService();
+        watchThread = new Thread(new Watcher(watchService, musicDirectoryFilePath), "library-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Stops watching. Changes gathered but not yet processed are dropped, and found by the next scan.
+     */
+    public synchronized void stop() {
+        if (watchThread == null) {
+            return;
+        }
+        watchThread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Exception closing the library watch: " + e.getMessage());
+        }
+        watchThread = null;
+        watchService = null;
+    }
+
+    /**
+     * Updates the database with changed files, and scans the files that need processing. Blocks until every file has
+     * been processed, so that the Tracks are saved by the scan pipeline, one scan at a time.
+     *
+     * @param changedFiles List of files created or modified.
+     * @param removedPaths List of the paths of files or directories removed.
+     * @throws InterruptedException if watching is stopped.
+     */
+    protected void process(List<File> changedFiles, List<String> removedPaths) throws InterruptedException {
+        logger.log(Level.INFO, "Library changed: " + changedFiles.size() + " files changed, " + removedPaths.size() + " removed");
+        applicationController.scanWatchedFiles(changedFiles, removedPaths, (file, numberOfFilesProcessed, numberOfFiles) -> {
+        });
+    }
+
+    /**
+     * Scans the whole music directory again, when events have been lost.
+     *
+     * @param musicDirectoryFilePath String. Path to local music directory, or several separated by the path separator.
+     * @throws InterruptedException if watching is stopped.
+     */
+    protected void rescan(String musicDirectoryFilePath) throws InterruptedException {
+        logger.log(Level.INFO, "Library watch events lost, scanning " + musicDirectoryFilePath);
+        applicationController.scanDirectory(musicDirectoryFilePath, (file, numberOfFilesProcessed, numberOfFiles) -> {
+        });
+    }
+
+    /**
+     * Gathers the events of the watched directories, and processes them once the directories are quiet.
+     */
+    private class Watcher implements Runnable {
+
+        private final WatchService watchService;
+        private final String musicDirectoryFilePath;
+        private final List<String> suffixes;
+        private final Map<WatchKey, Path> keys = new HashMap<>();
+        private final Set<Path> changedPaths = new LinkedHashSet<>();
+        private final Set<Path> removedPaths = new LinkedHashSet<>();
+        private boolean overflowed;
+        private long firstEvent;
+        private long lastEvent;
+
+        private Watcher(WatchService watchService, String musicDirectoryFilePath) {
+            this.watchService = watchService;
+            this.musicDirectoryFilePath = musicDirectoryFilePath;
+            this.suffixes = DirectoryParser.getSuffixes(suffix);
+        }
+
+        @Override
+        public void run() {
+            try {
+                // registered on this thread, as registering a large library takes a while
+                for (Path root : DirectoryParser.getRoots(musicDirectoryFilePath)) {
+                    register(root.toAbsolutePath().normalize(), false);
+                }
+                logger.log(Level.INFO, "Watching " + musicDirectoryFilePath + " [" + keys.size() + " directories]");
+
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key;
+                    if (hasChanges()) {
+                        long now = System.nanoTime();
+                        long debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMs);
+                        long wait = Math.min(lastEvent + debounceNanos, firstEvent + MAXIMUM_DELAY * debounceNanos) - now;
+                        if (wait <= 0) {
+                            flush();
+                            continue;
+                        }
+                        key = watchService.poll(wait, TimeUnit.NANOSECONDS);
+                    } else {
+                        key = watchService.take();
+                    }
+                    if (key != null) {
+                        handle(key);
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // watching stopped
+            }
+        }
+
+        private boolean hasChanges() {
+            return overflowed || !changedPaths.isEmpty() || !removedPaths.isEmpty();
+        }
+
+        private void handle(WatchKey key) {
+            Path directory = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (!hasChanges()) {
+                    firstEvent = System.nanoTime();
+                }
+                lastEvent = System.nanoTime();
+
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                    overflowed = true;
+                    continue;
+                }
+
+                Path path = directory.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    changedPaths.remove(path);
+                    removedPaths.add(path);
+                } else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        // files may have been created in the directory before it was registered
+                        register(path, true);
+                    }
+                } else if (isAudioFile(path)) {
+                    removedPaths.remove(path);
+                    changedPaths.add(path);
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+        }
+
+        /*
+         * Registers a directory and every directory inside it, adding the files found to the changed files if asked.
+         */
+        private void register(Path root, boolean addFiles) {
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                        try {
+                            keys.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), directory);
+                        } catch (IOException e) {
+                            // e.g. the limit of watched directories is reached; its changes are found by the next scan
+                            logger.log(Level.WARN, "Unable to watch " + directory + ": " + e.getMessage());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (addFiles && isAudioFile(file)) {
+                            changedPaths.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        logger.log(Level.WARN, "Unable to watch " + file + ": " + e.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                logger.log(Level.WARN, "Unable to watch " + root + ": " + e.getMessage());
+            }
+        }
+
+        private boolean isAudioFile(Path path) {
+            try {
+                return DirectoryParser.isAudioFile(path, suffixes);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private void flush() throws InterruptedException {
+            try {
+                if (overflowed) {
+                    rescan(musicDirectoryFilePath);
+                } else {
+                    process(changedPaths.stream()
+                                    .filter(path -> Files.isRegularFile(path))
+                                    .map(Path::toFile)
+                                    .collect(Collectors.toList()),
+                            removedPaths.stream()
+                                    .filter(path -> !Files.exists(path, LinkOption.NOFOLLOW_LINKS))
+                                    .map(Path::toString)
+                                    .collect(Collectors.toList()));
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.WARN, "Exception processing library changes: " + e.getMessage());
+            }
+            overflowed = false;
+            changedPaths.clear();
+            removedPaths.clear();
+        }
+    }
+}
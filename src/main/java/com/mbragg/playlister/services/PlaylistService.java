@@ -22,12 +22,12 @@ public class PlaylistService extends Service<ObservableList<Track>> {
 
     @Autowired
     private ApplicationController applicationController;
-    private String queryFileName;
+    private String queryFilePath;
     private int sizeOfResult;
     private boolean restrictByGenre;
 
-    public void initializePlaylistService(String queryFileName, int sizeOfResult, boolean restrictByGenre) {
-        this.queryFileName = queryFileName;
+    public void initializePlaylistService(String queryFilePath, int sizeOfResult, boolean restrictByGenre) {
+        this.queryFilePath = queryFilePath;
         this.sizeOfResult = sizeOfResult;
         this.restrictByGenre = restrictByGenre;
     }
@@ -50,7 +50,7 @@ public class PlaylistService extends Service<ObservableList<Track>> {
             protected ObservableList<Track> call() throws ExecutionException, InterruptedException {
                 updateMessage("Building playlist");
 
-                List<Track> tracks = applicationController.query(queryFileName, sizeOfResult, restrictByGenre);
+                List<Track> tracks = applicationController.query(queryFilePath, sizeOfResult, restrictByGenre);
 
                 ObservableList<Track> results = FXCollections.observableArrayList(tracks);
 
@@ -1,8 +1,7 @@
 package com.mbragg.playlister.services;
 
 import com.mbragg.playlister.controllers.ApplicationController;
-import com.mbragg.playlister.models.BatchTrack;
-import com.mbragg.playlister.models.entitys.Track;
+import com.mbragg.playlister.controllers.audioControllers.ScanListener;
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import org.apache.log4j.Level;
@@ -12,8 +11,7 @@ import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service to manage the scanning/processing of a users music directory.
@@ -24,7 +22,6 @@ import java.util.concurrent.Future;
 public class ScanService extends Service {
 
     public static final int INITIAL = 0;
-    public static final int THREAD_SLEEP_MS = 10;
 
     @Autowired
     private ApplicationController applicationController;
@@ -33,18 +30,30 @@ public class ScanService extends Service {
     private Logger logger;
 
     private List<File> listOfFiles;
-    private int numberOfConcurrentThreads;
+    private String musicDirectory;
 
     public ScanService() {
         // empty public constructor for Spring framework
     }
 
-    public void setNumberOfConcurrentThreads(int numberOfConcurrentThreads) {
-        this.numberOfConcurrentThreads = numberOfConcurrentThreads;
-    }
-
+    /**
+     * Sets the files to scan, in place of any music directory.
+     *
+     * @param listOfFiles List of files to process.
+     */
     public void setListOfFiles(List<File> listOfFiles) {
         this.listOfFiles = listOfFiles;
+        this.musicDirectory = null;
+    }
+
+    /**
+     * Sets the music directory to scan, in place of any list of files. Its files are processed as they are found.
+     *
+     * @param musicDirectory String. Path to local music directory.
+     */
+    public void setMusicDirectory(String musicDirectory) {
+        this.musicDirectory = musicDirectory;
+        this.listOfFiles = null;
     }
 
     /**
@@ -56,9 +65,6 @@ public class ScanService extends Service {
     protected Task createTask() {
         return new Task() {
 
-            private int fileCounter;
-            private List<File> filesToProcessBuffer;
-
             @Override
             protected void cancelled() {
                 super.cancelled();
@@ -81,78 +87,47 @@ public class ScanService extends Service {
 
             /**
              * Method called when the Task is created
-             * @throws Exception if the batch extraction process encounters an error.
+             * @throws Exception if the scan process encounters an error.
              */
             @Override
             protected Object call() throws Exception {
 
-                if (listOfFiles.isEmpty()) {
-                    updateMessage("No new files to process");
-                    return null;
-                }
-
-                updateMessage("Files to process: " + listOfFiles.size());
-
-                int filesToProcessStartIndex = INITIAL;
-                int filesToProcessEndIndex = filesToProcessStartIndex + numberOfConcurrentThreads;
-                fileCounter = INITIAL;
-
-                while (true) {
-                    if (filesToProcessEndIndex > listOfFiles.size()) {
-                        filesToProcessEndIndex = listOfFiles.size();
-                    }
-
-                    filesToProcessBuffer = listOfFiles.subList(filesToProcessStartIndex, filesToProcessEndIndex);
-
-                    updateMessage("Extracting audio... ");
-                    List<BatchTrack> audioBytesWithAudioFormats;
-
-                    try {
-                        audioBytesWithAudioFormats = applicationController.extractAudioBatch(filesToProcessBuffer);
-                        updateMessage("Extracting audio complete");
-
-                        createTracksInBatch(audioBytesWithAudioFormats);
-                    } catch (InterruptedException e) {
-                        if (isCancelled()) break;
-                    }
-
-                    if (filesToProcessEndIndex == listOfFiles.size()) {
-                        break;
-                    } else {
-                        filesToProcessStartIndex += numberOfConcurrentThreads;
-                        filesToProcessEndIndex = filesToProcessStartIndex + numberOfConcurrentThreads;
-                    }
-                }
-                updateMessage("Scan complete");
-                return null;
-            }
-
-            /**
-             * Method to create Tracks from a list of BatchTracks
-             * @param batchTracks List of BatchTracks
-             */
-            public void createTracksInBatch(List<BatchTrack> batchTracks)
-                    throws ExecutionException, InterruptedException {
-
-                int numberOfFilesToProcess = listOfFiles.size();
-
-                for (BatchTrack batchTrack : batchTracks) {
-
-                    int progress = ++fileCounter;
-                    String buildStatus = "[" + progress + " of " + numberOfFilesToProcess + "] " + batchTrack.getFile().getName();
+                AtomicInteger filesProcessed = new AtomicInteger();
+                ScanListener listener = (file, numberOfFilesProcessed, numberOfFiles) -> {
+                    filesProcessed.set(numberOfFilesProcessed);
+                    String buildStatus = "[" + numberOfFilesProcessed + " of " + numberOfFiles + "] " + file.getName();
 
                     logger.log(Level.INFO, buildStatus);
                     updateMessage(buildStatus);
-                    updateProgress(progress, numberOfFilesToProcess);
-
-                    Future<Track> track = applicationController.buildTrack(batchTrack);
+                    updateProgress(numberOfFilesProcessed, numberOfFiles);
+                };
+
+                try {
+                    if (musicDirectory != null) {
+                        updateMessage("Scanning " + musicDirectory);
+                        applicationController.scanDirectory(musicDirectory, listener);
+                        // Based on the files processed, not the tracks saved, which is 0 when every file fails.
+                        if (filesProcessed.get() == 0) {
+                            updateMessage("No new files to process");
+                            return null;
+                        }
+                    } else {
+                        if (listOfFiles.isEmpty()) {
+                            updateMessage("No new files to process");
+                            return null;
+                        }
 
-                    while (!track.isDone()) {
-                        Thread.sleep(THREAD_SLEEP_MS);
+                        updateMessage("Files to process: " + listOfFiles.size());
+                        applicationController.scan(listOfFiles, listener);
                     }
+                } catch (InterruptedException e) {
+                    if (isCancelled()) return null;
+                    throw e;
                 }
 
-            } // close createTracksInBatch()
+                updateMessage("Scan complete");
+                return null;
+            }
 
         }; // close the new Task()
 
@@ -1,54 +1,251 @@
 package com.mbragg.playlister.tools.file;
 
-import org.apache.commons.io.filefilter.HiddenFileFilter;
-import org.apache.commons.io.filefilter.SuffixFileFilter;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
- * Provides a single Build method to scan a directory to return a list of files.
+ * Scans music directories for audio files.
+ * <p>
+ * Directories are walked in parallel on a fork/join pool, each subdirectory as its own task, and each file is passed
+ * on as soon as it is found, so that the files found can be processed while the rest of the directories are walked.
+ * Slow file systems, such as network shares, are walked with many directories listed at once.
+ * <p>
+ * A directory that can not be read is skipped and reported, so that the files inside it are not taken to be deleted.
  *
  * @author Michael Bragg
  */
 @Component
 public class DirectoryParser {
 
+    // Separates the suffixes of a list of suffixes.
+    public static final String SUFFIX_SEPARATOR = ",";
+
     @Autowired
     Logger logger;
 
+    @Value("${discoveryThreads}")
+    private int discoveryThreads;
+
+    /**
+     * @param musicDirectoryFilePaths String. The directories to scan, separated by the path separator of the system.
+     * @param suffixes                String. The file extensions to filter by, separated by commas.
+     * @return FileSource. A source of the files in the given directories with a matching suffix, found by walk,
+     * that reports the directories it could not read.
+     */
+    public FileSource source(String musicDirectoryFilePaths, String suffixes) {
+        return new DirectorySource(getRoots(musicDirectoryFilePaths), getSuffixes(suffixes));
+    }
+
     /**
-     * Traverses a supplied file directory to return a list of files.
-     * - Files must have to same extension as the supplied String suffix.
-     * - Hidden files are ignored.
+     * @param musicDirectoryFilePaths String. Directories separated by the path separator of the system.
+     * @return List of the directories.
+     */
+    public static List<Path> getRoots(String musicDirectoryFilePaths) {
+        return Arrays.stream(musicDirectoryFilePaths.split(File.pathSeparator))
+                .map(String::trim)
+                .filter(root -> !root.isEmpty())
+                .map(Paths::get)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param suffixes String. File extensions separated by commas.
+     * @return List of the file extensions.
+     */
+    public static List<String> getSuffixes(String suffixes) {
+        return Arrays.stream(suffixes.split(SUFFIX_SEPARATOR))
+                .map(String::trim)
+                .filter(suffix -> !suffix.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param file     Path. The file to check.
+     * @param suffixes List of the file extensions to filter by.
+     * @return Boolean. Whether the file has one of the extensions and is not hidden.
+     * @throws IOException if the file can not be read.
+     */
+    public static boolean isAudioFile(Path file, List<String> suffixes) throws IOException {
+        return hasSuffix(file, suffixes) && !Files.isHidden(file);
+    }
+
+    /**
+     * Walks the given directories in parallel, passing on each visible file with a matching suffix as it is found.
+     * A directory nested in another of the directories is walked once. A directory that can not be read is logged
+     * and skipped. Symbolic links to directories are not followed.
      *
-     * @param musicDirectoryFilePath String. The directory to scan
-     * @param suffix                 String. The file extension to filter by.
-     * @return List of Files in the given directory with the matching suffix
+     * @param roots    List of the directories to scan.
+     * @param suffixes List of the file extensions to filter by.
+     * @param consumer Consumer of each file found. Called from several threads at once.
+     * @throws InterruptedException if the calling thread is interrupted. The walk is stopped.
      */
-    public List<File> parse(String musicDirectoryFilePath, String suffix) {
+    public void walk(List<Path> roots, List<String> suffixes, Consumer<File> consumer) throws InterruptedException {
+        walk(roots, suffixes, consumer, directory -> {
+        });
+    }
 
-        List<File> files = null;
-        SuffixFileFilter suffixFileFilter = new SuffixFileFilter(suffix);
+    /**
+     * Walks the given directories, as walk(roots, suffixes, consumer), reporting each directory that can not be read.
+     *
+     * @param roots      List of the directories to scan.
+     * @param suffixes   List of the file extensions to filter by.
+     * @param consumer   Consumer of each file found. Called from several threads at once.
+     * @param unreadable Consumer of each root, directory or entry that can not be read. Called from several threads at once.
+     * @throws InterruptedException if the calling thread is interrupted. The walk is stopped.
+     */
+    public void walk(List<Path> roots, List<String> suffixes, Consumer<File> consumer, Consumer<Path> unreadable) throws InterruptedException {
+        List<Path> distinctRoots = getDistinctRoots(roots);
+        if (distinctRoots.isEmpty()) {
+            return;
+        }
 
+        ForkJoinPool forkJoinPool = new ForkJoinPool(getDiscoveryThreads());
         try {
-            files = Files.walk(new File(musicDirectoryFilePath).toPath())
-                    .map(Path::toFile)
-                    .filter(suffixFileFilter::accept)
-                    .filter(HiddenFileFilter.VISIBLE::accept)
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            logger.log(Level.WARN, "Exception scanning music directory:" + e.getMessage());
+            forkJoinPool.submit(() -> RecursiveAction.invokeAll(distinctRoots.stream()
+                    .map(root -> new DirectoryTask(root, suffixes, consumer, unreadable))
+                    .collect(Collectors.toList()))).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            forkJoinPool.shutdownNow();
         }
-        return files;
     }
 
-}
\ No newline at end of file
+    /**
+     * @return int. The number of directories listed at once.
+     */
+    protected int getDiscoveryThreads() {
+        return discoveryThreads > 0 ? discoveryThreads : Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+     * Normalises the roots, and drops the roots inside another root, so that no directory is walked twice.
+     */
+    private static List<Path> getDistinctRoots(List<Path> roots) {
+        List<Path> normalisedRoots = roots.stream()
+                .map(root -> root.toAbsolutePath().normalize())
+                .distinct()
+                .collect(Collectors.toList());
+        return normalisedRoots.stream()
+                .filter(root -> normalisedRoots.stream().noneMatch(other -> !other.equals(root) && root.startsWith(other)))
+                .collect(Collectors.toList());
+    }
+
+    private static boolean hasSuffix(Path file, List<String> suffixes) {
+        String name = file.getFileName().toString();
+        for (String suffix : suffixes) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A walk of music directories, that keeps the directories it could not read during its last walk.
+     */
+    private class DirectorySource implements FileSource {
+
+        private final List<Path> roots;
+        private final List<String> suffixes;
+        private final Queue<Path> unreadableDirectories = new ConcurrentLinkedQueue<>();
+
+        private DirectorySource(List<Path> roots, List<String> suffixes) {
+            this.roots = getDistinctRoots(roots);
+            this.suffixes = suffixes;
+        }
+
+        @Override
+        public void walk(Consumer<File> consumer) throws InterruptedException {
+            unreadableDirectories.clear();
+            DirectoryParser.this.walk(roots, suffixes, consumer, unreadableDirectories::add);
+        }
+
+        @Override
+        public List<Path> getRoots() {
+            return roots;
+        }
+
+        @Override
+        public List<Path> getUnreadableDirectories() {
+            return new ArrayList<>(unreadableDirectories);
+        }
+    }
+
+    /**
+     * Lists a directory, passing on its matching files and forking a task for each of its subdirectories.
+     */
+    private class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final List<String> suffixes;
+        private final Consumer<File> consumer;
+        private final Consumer<Path> unreadable;
+
+        private DirectoryTask(Path directory, List<String> suffixes, Consumer<File> consumer, Consumer<Path> unreadable) {
+            this.directory = directory;
+            this.suffixes = suffixes;
+            this.consumer = consumer;
+            this.unreadable = unreadable;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    try {
+                        BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if (attributes.isDirectory()) {
+                            DirectoryTask subdirectory = new DirectoryTask(entry, suffixes, consumer, unreadable);
+                            subdirectory.fork();
+                            subdirectories.add(subdirectory);
+                        } else if (isAudioFile(entry, suffixes)) {
+                            consumer.accept(entry.toFile());
+                        }
+                    } catch (IOException e) {
+                        // may be a directory
+                        logger.log(Level.WARN, "Exception scanning " + entry + ": " + e.getMessage());
+                        unreadable.accept(entry);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                logger.log(Level.WARN, "Exception scanning music directory " + directory + ": " + e.getMessage());
+                unreadable.accept(directory);
+            }
+
+            for (DirectoryTask subdirectory : subdirectories) {
+                subdirectory.join();
+            }
+        }
+    }
+}
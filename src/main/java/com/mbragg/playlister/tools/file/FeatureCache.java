@@ -0,0 +1,213 @@
+package com.mbragg.playlister.tools.file;
+
+import com.mbragg.playlister.models.FeatureMatrix;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persistent cache of the feature matrices of audio files, so tracks can be modelled again without decoding them.
+ * <p>
+ * Entries are keyed by a SHA-256 hash of the file content and of the feature configuration, so renamed or moved
+ * files still hit the cache and a change to the analysis misses it. Each entry is a small header followed by the
+ * float32 rows of the matrix, optionally deflated. The cache is disabled if no directory is configured.
+ *
+ * @author Michael Bragg
+ */
+@Component
+public class FeatureCache {
+
+    private static final int MAGIC = 0x504C4643;
+    private static final int VERSION = 1;
+    private static final int HASH_BUFFER_SIZE = 1 << 20;
+    private static final String SUFFIX = ".features";
+
+    private final Logger logger;
+    private final Path directory;
+    private final boolean compression;
+
+    /**
+     * @param logger      Logger.
+     * @param directory   String. Directory of the cache, empty to disable the cache.
+     * @param compression boolean. Whether the rows are deflated.
+     */
+    @Autowired
+    public FeatureCache(Logger logger,
+                        @Value("${featureCacheDirectory}") String directory,
+                        @Value("${featureCacheCompression}") boolean compression) {
+        this.logger = logger;
+        this.directory = directory == null || directory.trim().isEmpty() ? null : Paths.get(directory.trim());
+        this.compression = compression;
+    }
+
+    /**
+     * @return FeatureCache. A cache that stores nothing.
+     */
+    public static FeatureCache disabled() {
+        return new FeatureCache(null, null, false);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Builds the key of the cache entry of a file.
+     *
+     * @param file          File. The audio file.
+     * @param configuration String. Description of everything, other than the file content, that the features depend on.
+     * @return String. The key of the entry.
+     * @throws IOException If the file can not be read.
+     */
+    public String getKey(File file, String configuration) throws IOException {
+        MessageDigest fileDigest = newDigest();
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+            while (fileChannel.read(buffer) >= 0) {
+                buffer.flip();
+                fileDigest.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        byte[] configurationHash = newDigest().digest(configuration.getBytes(StandardCharsets.UTF_8));
+        return toHex(fileDigest.digest(), 32) + "-" + toHex(configurationHash, 8);
+    }
+
+    /**
+     * Reads a cache entry.
+     *
+     * @param key String. The key of the entry, from getKey.
+     * @return FeatureMatrix. The cached feature matrix, or null if there is no readable entry.
+     */
+    public FeatureMatrix read(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Path path = getPath(key);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try (DataInputStream header = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                return null;
+            }
+            int numberOfRows = header.readInt();
+            int dimension = header.readInt();
+            boolean compressed = header.readBoolean();
+
+            byte[] bytes = new byte[numberOfRows * dimension * Float.BYTES];
+            InputStream data = compressed ? new InflaterInputStream(header) : header;
+            new DataInputStream(data).readFully(bytes);
+
+            float[] values = new float[numberOfRows * dimension];
+            ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+            return new FeatureMatrix(dimension, values);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARN, "Unreadable feature cache entry " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a cache entry. The entry is written to a temporary file then moved into place,
+     * so a concurrent or interrupted write never leaves a partial entry.
+     *
+     * @param key           String. The key of the entry, from getKey.
+     * @param featureMatrix FeatureMatrix. The feature matrix of the file.
+     */
+    public void write(String key, FeatureMatrix featureMatrix) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Path path = getPath(key);
+        Path temporaryPath = null;
+        try {
+            Files.createDirectories(path.getParent());
+            temporaryPath = Files.createTempFile(path.getParent(), key, ".tmp");
+
+            try (DataOutputStream header = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeInt(featureMatrix.getNumberOfRows());
+                header.writeInt(featureMatrix.getDimension());
+                header.writeBoolean(compression);
+
+                float[] values = featureMatrix.toArray();
+                ByteBuffer bytes = ByteBuffer.allocate(values.length * Float.BYTES);
+                bytes.asFloatBuffer().put(values);
+
+                if (compression) {
+                    DeflaterOutputStream data = new DeflaterOutputStream(header);
+                    data.write(bytes.array());
+                    data.finish();
+                } else {
+                    header.write(bytes.array());
+                }
+            }
+
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Could not write feature cache entry " + path + ": " + e.getMessage());
+            deleteQuietly(temporaryPath);
+        }
+    }
+
+    /**
+     * Entries are spread over subdirectories named by the first two characters of their key.
+     */
+    private Path getPath(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // A stray temporary file is never read as an entry
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes, int length) {
+        StringBuilder hex = new StringBuilder(length * 2);
+        for (int i = 0; i < length; i++) {
+            hex.append(String.format("%02x", bytes[i]));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package com.mbragg.playlister.tools.file;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A source of audio files that passes each file on as it is found, rather than listing them all first.
+ *
+ * @author Michael Bragg
+ */
+@FunctionalInterface
+public interface FileSource {
+
+    /**
+     * Finds the files of the source. Blocks until every file has been passed on.
+     *
+     * @param consumer Consumer of each file found. May be called from several threads at once.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    void walk(Consumer<File> consumer) throws InterruptedException;
+
+    /**
+     * @return List of the directories the source walks. A recorded file inside them that is not found has been moved
+     * or deleted. Empty if not known, in which case no file is taken to be moved or deleted.
+     */
+    default List<Path> getRoots() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return List of the directories, inside the roots, that could not be read by the last walk. Files inside them
+     * may not have been found.
+     */
+    default List<Path> getUnreadableDirectories() {
+        return Collections.emptyList();
+    }
+}
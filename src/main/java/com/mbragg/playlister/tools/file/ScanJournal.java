@@ -0,0 +1,313 @@
+package com.mbragg.playlister.tools.file;
+
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the progress of a scan, so that a scan cut short, by cancelling it or by the application
+ * dying, resumes where it stopped.
+ * <p>
+ * A record is appended as each file is decoded, modelled and persisted, with the size and last modified time of the
+ * file. Modelled records hold the model, so that a file modelled but not persisted is saved without being analysed
+ * again. Each record is framed by its length and a CRC32, and a record torn by the application dying mid-write is
+ * truncated when the journal is next opened. The journal is deleted once a scan completes.
+ * One scan uses the journal at a time, as the scan pipeline runs its scans one after another.
+ * The journal is disabled if no file is configured.
+ *
+ * @author Michael Bragg
+ */
+@Component
+public class ScanJournal {
+
+    /**
+     * The stages of the processing of a file recorded, in order.
+     */
+    public enum Stage {
+        DECODED, MODELLED, PERSISTED
+    }
+
+    private final Logger logger;
+    private final Path path;
+    // The last stage recorded of each file, by absolute path.
+    private final Map<String, Entry> entries = new HashMap<>();
+    private DataOutputStream output;
+
+    /**
+     * @param logger Logger.
+     * @param file   String. Path of the journal file, empty to disable the journal.
+     */
+    @Autowired
+    public ScanJournal(Logger logger, @Value("${scanJournalFile}") String file) {
+        this.logger = logger;
+        this.path = file == null || file.trim().isEmpty() ? null : Paths.get(file.trim());
+    }
+
+    /**
+     * @return ScanJournal. A journal that records nothing.
+     */
+    public static ScanJournal disabled() {
+        return new ScanJournal(null, null);
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * Reads the records left by a scan cut short, and opens the journal to append the records of a new scan.
+     * A journal that can not be opened is logged and disabled until closed.
+     */
+    public synchronized void open() {
+        if (!isEnabled() || output != null) {
+            return;
+        }
+        entries.clear();
+
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            long validLength = read();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+            output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.APPEND)));
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Could not open scan journal " + path + ": " + e.getMessage());
+            entries.clear();
+        }
+
+        if (!entries.isEmpty()) {
+            logger.log(Level.INFO, "Resuming scan: " + entries.size() + " files in the scan journal");
+        }
+    }
+
+    /**
+     * Closes the journal. The journal of a complete scan is deleted, and that of a scan cut short kept to be resumed.
+     *
+     * @param complete Boolean. Whether every file of the scan has been processed.
+     */
+    public synchronized void close(boolean complete) {
+        entries.clear();
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+            if (complete) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Could not close scan journal " + path + ": " + e.getMessage());
+        }
+        output = null;
+    }
+
+    /**
+     * Deletes the journal of a scan cut short, so that the next scan starts afresh. Does nothing during a scan.
+     */
+    public synchronized void clear() {
+        if (!isEnabled() || output != null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Could not delete scan journal " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param file File. An audio file.
+     * @return Stage. The last stage recorded of the file, or null if none has been, or the file has changed since.
+     */
+    public synchronized Stage getStage(File file) {
+        Entry entry = getEntry(file);
+        return entry == null ? null : entry.stage;
+    }
+
+    /**
+     * @param file File. An audio file.
+     * @return MultivariateNormalDistribution. The model recorded of the file if it has been modelled but not
+     * persisted, or null.
+     */
+    public synchronized MultivariateNormalDistribution getModel(File file) {
+        Entry entry = getEntry(file);
+        return entry == null || entry.stage != Stage.MODELLED ? null : entry.model;
+    }
+
+    public void decoded(File file) {
+        append(Stage.DECODED, file, null);
+    }
+
+    public void modelled(File file, MultivariateNormalDistribution model) {
+        append(Stage.MODELLED, file, model);
+    }
+
+    public void persisted(File file) {
+        append(Stage.PERSISTED, file, null);
+    }
+
+    private Entry getEntry(File file) {
+        Entry entry = entries.get(file.getAbsolutePath());
+        if (entry == null || entry.size != file.length() || entry.lastModified != file.lastModified()) {
+            return null;
+        }
+        return entry;
+    }
+
+    /*
+     * Appends a record, and flushes it to the file system so it outlives the application.
+     */
+    private synchronized void append(Stage stage, File file, MultivariateNormalDistribution model) {
+        if (output == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(bytes);
+            record.writeByte(stage.ordinal());
+            record.writeUTF(file.getAbsolutePath());
+            record.writeLong(file.length());
+            record.writeLong(file.lastModified());
+            if (stage == Stage.MODELLED) {
+                writeModel(record, model);
+            }
+
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.writeLong(crc.getValue());
+            output.flush();
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Could not write scan journal " + path + ", journal disabled for this scan: " + e.getMessage());
+            try {
+                output.close();
+            } catch (IOException closeException) {
+                // already failing
+            }
+            output = null;
+        }
+    }
+
+    /*
+     * Reads the valid records of the journal file into the entries.
+     * Returns the length of the valid records, after which the file is torn or corrupt.
+     */
+    private long read() throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return 0;
+        }
+
+        long fileLength = Files.size(path);
+        long validLength = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int length = input.readInt();
+                if (length < 0 || length > fileLength) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                input.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (input.readLong() != crc.getValue()) {
+                    break;
+                }
+
+                readRecord(new DataInputStream(new ByteArrayInputStream(payload)));
+                validLength += Integer.BYTES + length + Long.BYTES;
+            }
+        } catch (EOFException e) {
+            // end of the journal, or a torn record
+        } catch (RuntimeException e) {
+            // a record that can not be read, e.g. from another version of the application
+        }
+
+        if (validLength < fileLength) {
+            logger.log(Level.WARN, "Truncating torn scan journal " + path + " at " + validLength + " bytes");
+        }
+        return validLength;
+    }
+
+    private void readRecord(DataInputStream record) throws IOException {
+        Stage stage = Stage.values()[record.readByte()];
+        String filePath = record.readUTF();
+        long size = record.readLong();
+        long lastModified = record.readLong();
+        MultivariateNormalDistribution model = stage == Stage.MODELLED ? readModel(record) : null;
+
+        Entry entry = entries.get(filePath);
+        boolean sameFile = entry != null && entry.size == size && entry.lastModified == lastModified;
+        if (sameFile && entry.stage.compareTo(stage) > 0) {
+            return;
+        }
+        entries.put(filePath, new Entry(stage, size, lastModified, model != null ? model : sameFile ? entry.model : null));
+    }
+
+    private static void writeModel(DataOutputStream record, MultivariateNormalDistribution model) throws IOException {
+        double[] means = model.getMeans();
+        double[][] covariances = model.getCovariances().getData();
+        record.writeInt(means.length);
+        for (double mean : means) {
+            record.writeDouble(mean);
+        }
+        for (double[] row : covariances) {
+            for (double covariance : row) {
+                record.writeDouble(covariance);
+            }
+        }
+    }
+
+    private static MultivariateNormalDistribution readModel(DataInputStream record) throws IOException {
+        int dimension = record.readInt();
+        double[] means = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            means[i] = record.readDouble();
+        }
+        double[][] covariances = new double[dimension][dimension];
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j < dimension; j++) {
+                covariances[i][j] = record.readDouble();
+            }
+        }
+        return new MultivariateNormalDistribution(means, covariances);
+    }
+
+    private static class Entry {
+
+        private final Stage stage;
+        private final long size;
+        private final long lastModified;
+        private final MultivariateNormalDistribution model;
+
+        private Entry(Stage stage, long size, long lastModified, MultivariateNormalDistribution model) {
+            this.stage = stage;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.model = model;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.mbragg.playlister.tools.file;
+
+import com.mbragg.playlister.models.ScanDelta;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent record of the path, size, last modified time and a fast content hash of every audio file scanned,
+ * so that a rescan can be computed as a delta of added, changed, moved and deleted files.
+ * <p>
+ * The fast hash covers the size of a file and its first and last HASH_SAMPLE_SIZE bytes, where the audio tags and
+ * container indexes of an audio file are kept, so re-tagged and re-encoded files are seen as changed without
+ * reading them whole. A file whose size and last modified time are unchanged is not read at all.
+ * The manifest is disabled if no file is configured.
+ *
+ * @author Michael Bragg
+ */
+@Component
+public class ScanManifest {
+
+    private static final int MAGIC = 0x504C534D;
+    private static final int VERSION = 1;
+    private static final int HASH_SAMPLE_SIZE = 64 * 1024;
+
+    private final Logger logger;
+    private final Path path;
+    // Recorded files by absolute path. Read from the manifest file on first use.
+    private Map<String, Entry> entries;
+
+    /**
+     * @param logger Logger.
+     * @param file   String. Path of the manifest file, empty to disable the manifest.
+     */
+    @Autowired
+    public ScanManifest(Logger logger, @Value("${scanManifestFile}") String file) {
+        this.logger = logger;
+        this.path = file == null || file.trim().isEmpty() ? null : Paths.get(file.trim());
+    }
+
+    /**
+     * @return ScanManifest. A manifest that records nothing.
+     */
+    public static ScanManifest disabled() {
+        return new ScanManifest(null, null);
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * @return int. The number of files recorded.
+     */
+    public synchronized int size() {
+        return getEntries().size();
+    }
+
+    /**
+     * Computes the difference between a walk of music directories and the files recorded.
+     *
+     * @param roots List of the directories walked.
+     * @param files List of the audio files found in the directories.
+     * @return ScanDelta. The added, changed, moved and deleted files.
+     * @see Diff
+     */
+    public ScanDelta diff(List<Path> roots, List<File> files) {
+        Diff diff = newDiff(roots);
+        files.forEach(diff::check);
+        return diff.finish();
+    }
+
+    /**
+     * @param roots List of the directories walked. Only the recorded files inside them may be found moved or deleted,
+     *              so that a walk of one directory leaves the files of any other recorded.
+     * @return Diff. A new difference between a walk of music directories and the files recorded,
+     * to be fed the files of the walk as they are found.
+     */
+    public synchronized Diff newDiff(List<Path> roots) {
+        return newDiff(roots.stream()
+                .flatMap(root -> getRecordedFilePaths(root).stream())
+                .collect(Collectors.toSet()));
+    }
+
+    /**
+     * @param removedFilePaths Collection of the paths of the recorded files known to be gone, e.g. from file system
+     *                         events. Only these may be found moved or deleted.
+     * @return Diff. A new difference between some changed files of a music directory and the files recorded,
+     * to be fed the changed files.
+     */
+    public synchronized Diff newDiff(Collection<String> removedFilePaths) {
+        Set<String> removed = removedFilePaths.stream().filter(getEntries()::containsKey).collect(Collectors.toSet());
+        return new Diff(removed, removed.stream().map(filePath -> getEntries().get(filePath).size).collect(Collectors.toSet()));
+    }
+
+    /**
+     * @param directory Path. A directory.
+     * @return List of the paths of the recorded files inside the directory, at any depth.
+     */
+    public synchronized List<String> getRecordedFilePaths(Path directory) {
+        String prefix = getPrefix(directory);
+        return getEntries().keySet().stream()
+                .filter(filePath -> filePath.startsWith(prefix))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Records a scanned file, replacing any record of a file at the same path.
+     *
+     * @param file File. The scanned audio file.
+     * @throws IOException if the file can not be read.
+     */
+    public synchronized void record(File file) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        getEntries().put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), getFastHash(file)));
+    }
+
+    /**
+     * Moves the record of a file to its new path, keeping its hash.
+     *
+     * @param oldFilePath String. The recorded path of the file.
+     * @param file        File. The file at its new path.
+     */
+    public synchronized void move(String oldFilePath, File file) {
+        if (!isEnabled()) {
+            return;
+        }
+        Entry entry = getEntries().remove(oldFilePath);
+        if (entry != null) {
+            getEntries().put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), entry.hash));
+        }
+    }
+
+    /**
+     * @param filePath String. The recorded path of a file to forget.
+     */
+    public synchronized void remove(String filePath) {
+        if (isEnabled()) {
+            getEntries().remove(filePath);
+        }
+    }
+
+    /**
+     * Forgets every recorded file.
+     */
+    public synchronized void clear() {
+        if (isEnabled()) {
+            getEntries().clear();
+        }
+    }
+
+    /**
+     * Writes the manifest file. It is written to a temporary file then moved into place,
+     * so an interrupted write never leaves a partial manifest.
+     */
+    public synchronized void save() {
+        if (!isEnabled() || entries == null) {
+            return;
+        }
+
+        Path temporaryPath = null;
+        try {
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temporaryPath = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(entries.size());
+                for (Map.Entry<String, Entry> recorded : entries.entrySet()) {
+                    output.writeUTF(recorded.getKey());
+                    output.writeLong(recorded.getValue().size);
+                    output.writeLong(recorded.getValue().lastModified);
+                    output.writeUTF(recorded.getValue().hash);
+                }
+            }
+
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Could not write scan manifest " + path + ": " + e.getMessage());
+            if (temporaryPath != null) {
+                temporaryPath.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Hashes the size of a file and its first and last HASH_SAMPLE_SIZE bytes.
+     *
+     * @param file File. The file to hash.
+     * @return String. The hash in hex.
+     * @throws IOException if the file can not be read.
+     */
+    protected String getFastHash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            long length = randomAccessFile.length();
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, length));
+
+            byte[] sample = new byte[(int) Math.min(HASH_SAMPLE_SIZE, length)];
+            randomAccessFile.readFully(sample);
+            digest.update(sample);
+
+            if (length > HASH_SAMPLE_SIZE) {
+                sample = new byte[(int) Math.min(HASH_SAMPLE_SIZE, length - HASH_SAMPLE_SIZE)];
+                randomAccessFile.seek(length - sample.length);
+                randomAccessFile.readFully(sample);
+                digest.update(sample);
+            }
+        }
+        return toHex(digest.digest(), 16);
+    }
+
+    /**
+     * @return String. The fast hash of the file, or null if it can not be read, which matches no recorded hash.
+     */
+    private String getFastHashQuietly(File file) {
+        try {
+            return getFastHash(file);
+        } catch (IOException e) {
+            logger.log(Level.WARN, "Could not hash " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = isEnabled() ? read() : new HashMap<>();
+        }
+        return entries;
+    }
+
+    private Map<String, Entry> read() {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!Files.isRegularFile(path)) {
+            return entries;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                logger.log(Level.WARN, "Unrecognised scan manifest " + path);
+                return entries;
+            }
+            int numberOfEntries = input.readInt();
+            for (int i = 0; i < numberOfEntries; i++) {
+                entries.put(input.readUTF(), new Entry(input.readLong(), input.readLong(), input.readUTF()));
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARN, "Unreadable scan manifest " + path + ": " + e.getMessage());
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /*
+     * The start of the paths of the files inside a directory.
+     */
+    private static String getPrefix(Path directory) {
+        String prefix = directory.toAbsolutePath().normalize().toString();
+        return prefix.endsWith(File.separator) ? prefix : prefix + File.separator;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes, int length) {
+        StringBuilder hex = new StringBuilder(length * 2);
+        for (int i = 0; i < length; i++) {
+            hex.append(String.format("%02x", bytes[i]));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * The status of a walked file, as checked by a Diff.
+     */
+    public enum Status {
+        // Recorded at its path with the same content.
+        UNCHANGED,
+        // Recorded at its path with different content.
+        CHANGED,
+        // Not recorded, and no recorded file has its size, so it can not have moved.
+        ADDED,
+        // Not recorded. Whether it is a moved file or an added one is only known once the walk is finished.
+        PENDING
+    }
+
+    /**
+     * The difference between a walk of a music directory and the files recorded, fed the files of the walk as they
+     * are found so that changed and added files can be processed before the walk is finished. May be fed from
+     * several threads at once.
+     * <p>
+     * A recorded file whose last modified time has changed but whose content has not, e.g. after a copy,
+     * is unchanged and recorded again with its new time.
+     * A file that is not recorded at its path, but has the same size and hash as a recorded file no longer found
+     * at its path, is moved. Only files whose size matches a recorded file are hashed.
+     */
+    public class Diff {
+
+        // Recorded files that may be found moved or deleted.
+        private final Set<String> removedFilePaths;
+        private final Set<Long> recordedSizes;
+        private final Set<String> walkedFilePaths = new HashSet<>();
+        private final List<File> pending = new ArrayList<>();
+        private final ScanDelta scanDelta = new ScanDelta();
+
+        private Diff(Set<String> removedFilePaths, Set<Long> recordedSizes) {
+            this.removedFilePaths = removedFilePaths;
+            this.recordedSizes = recordedSizes;
+        }
+
+        /**
+         * @param file File. A file found by the walk.
+         * @return Status. The status of the file.
+         */
+        public Status check(File file) {
+            String filePath = file.getAbsolutePath();
+            long size = file.length();
+            long lastModified = file.lastModified();
+
+            Entry entry;
+            synchronized (ScanManifest.this) {
+                walkedFilePaths.add(filePath);
+                entry = getEntries().get(filePath);
+                if (entry == null) {
+                    if (recordedSizes.contains(size)) {
+                        pending.add(file);
+                        return Status.PENDING;
+                    }
+                    scanDelta.addAdded(file);
+                    return Status.ADDED;
+                }
+                if (entry.size == size && entry.lastModified == lastModified) {
+                    scanDelta.addUnchanged();
+                    return Status.UNCHANGED;
+                }
+            }
+
+            // hashed outside the lock, so that files are read in parallel
+            boolean unchanged = entry.size == size && entry.hash.equals(getFastHashQuietly(file));
+
+            synchronized (ScanManifest.this) {
+                if (unchanged) {
+                    getEntries().put(filePath, new Entry(size, lastModified, entry.hash));
+                    scanDelta.addUnchanged();
+                    return Status.UNCHANGED;
+                }
+                scanDelta.addChanged(file);
+                return Status.CHANGED;
+            }
+        }
+
+        /**
+         * Resolves the pending files into moved and added files, once every file of the walk has been checked.
+         *
+         * @return ScanDelta. The added, changed, moved and deleted files of the whole walk.
+         */
+        public ScanDelta finish() {
+            return finish(Collections.emptyList());
+        }
+
+        /**
+         * Resolves the pending files into moved and added files, once every file of the walk has been checked.
+         * The recorded files inside directories the walk could not read are neither moved nor deleted.
+         *
+         * @param unreadableDirectories Collection of the directories the walk could not read.
+         * @return ScanDelta. The added, changed, moved and deleted files of the whole walk.
+         */
+        public ScanDelta finish(Collection<Path> unreadableDirectories) {
+            List<String> unreadablePrefixes = unreadableDirectories.stream().map(ScanManifest::getPrefix).collect(Collectors.toList());
+
+            // Recorded files no longer at their path, by size then hash. Either moved or deleted.
+            Map<Long, Map<String, Deque<String>>> missing = new HashMap<>();
+            synchronized (ScanManifest.this) {
+                for (Map.Entry<String, Entry> recorded : getEntries().entrySet()) {
+                    String filePath = recorded.getKey();
+                    if (!walkedFilePaths.contains(filePath) && removedFilePaths.contains(filePath)
+                            && unreadablePrefixes.stream().noneMatch(filePath::startsWith)) {
+                        missing.computeIfAbsent(recorded.getValue().size, size -> new HashMap<>())
+                                .computeIfAbsent(recorded.getValue().hash, hash -> new ArrayDeque<>())
+                                .add(recorded.getKey());
+                    }
+                }
+            }
+
+            for (File file : pending) {
+                Map<String, Deque<String>> sameSize = missing.get(file.length());
+                Deque<String> sameContent = sameSize == null ? null : sameSize.get(getFastHashQuietly(file));
+                if (sameContent != null && !sameContent.isEmpty()) {
+                    scanDelta.addMoved(sameContent.poll(), file);
+                } else {
+                    scanDelta.addAdded(file);
+                }
+            }
+
+            for (Map<String, Deque<String>> sameSize : missing.values()) {
+                for (Deque<String> sameContent : sameSize.values()) {
+                    sameContent.forEach(scanDelta::addDeleted);
+                }
+            }
+            return scanDelta;
+        }
+    }
+
+    private static class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        private Entry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
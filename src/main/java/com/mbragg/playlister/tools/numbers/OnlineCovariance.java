@@ -0,0 +1,140 @@
+package com.mbragg.playlister.tools.numbers;
+
+/**
+ * Single pass accumulator for the mean vector and covariance matrix of a stream of vectors.
+ * <p>
+ * Uses Welford's algorithm, so vectors can be added one at a time as they are produced, in O(d^2) memory,
+ * without the precision loss of summing raw squares. Accumulators of separate parts of a stream can be merged.
+ *
+ * @author Michael Bragg
+ */
+public class OnlineCovariance {
+
+    private static final int MINIMUM_COUNT = 2;
+
+    private final int dimension;
+    private final double[] mean;
+    // Upper triangle of the matrix of sums of the products of the deviations from the mean. [row * dimension + column]
+    private final double[] comoments;
+    private final double[] deviations;
+    private long count;
+
+    public OnlineCovariance(int dimension) {
+        this.dimension = dimension;
+        this.mean = new double[dimension];
+        this.comoments = new double[dimension * dimension];
+        this.deviations = new double[dimension];
+    }
+
+    /**
+     * Adds a single vector.
+     *
+     * @param vector double[]. Vector with the same dimension as the accumulator.
+     */
+    public void add(double[] vector) {
+        add(vector, 0);
+    }
+
+    /**
+     * Adds a single vector, read from the supplied array starting at the offset.
+     *
+     * @param values double[]. Array containing the vector.
+     * @param offset int. Position in the array of the first value of the vector.
+     */
+    public void add(double[] values, int offset) {
+        count++;
+
+        for (int i = 0; i < dimension; i++) {
+            deviations[i] = values[offset + i] - mean[i];
+            mean[i] += deviations[i] / count;
+        }
+
+        for (int row = 0; row < dimension; row++) {
+            double deviation = deviations[row];
+            int rowStart = row * dimension;
+            for (int column = row; column < dimension; column++) {
+                comoments[rowStart + column] += deviation * (values[offset + column] - mean[column]);
+            }
+        }
+    }
+
+    /**
+     * Merges the vectors of another accumulator into this one, using the pairwise update of Chan et al.
+     * Merging into an empty accumulator copies the other accumulator exactly.
+     *
+     * @param other OnlineCovariance. Accumulator with the same dimension. Not modified.
+     */
+    public void merge(OnlineCovariance other) {
+        if (other.dimension != dimension) {
+            throw new IllegalArgumentException("Cannot merge an accumulator of dimension " + other.dimension + " into dimension " + dimension);
+        }
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = other.count;
+            System.arraycopy(other.mean, 0, mean, 0, dimension);
+            System.arraycopy(other.comoments, 0, comoments, 0, comoments.length);
+            return;
+        }
+
+        double total = count + other.count;
+        double weight = (double) count * other.count / total;
+
+        for (int i = 0; i < dimension; i++) {
+            deviations[i] = other.mean[i] - mean[i];
+        }
+
+        for (int row = 0; row < dimension; row++) {
+            double deviation = deviations[row];
+            int rowStart = row * dimension;
+            for (int column = row; column < dimension; column++) {
+                comoments[rowStart + column] += other.comoments[rowStart + column] + deviation * deviations[column] * weight;
+            }
+        }
+
+        for (int i = 0; i < dimension; i++) {
+            mean[i] += deviations[i] * other.count / total;
+        }
+        count += other.count;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return double[]. A copy of the mean vector.
+     */
+    public double[] getMean() {
+        return mean.clone();
+    }
+
+    /**
+     * Returns the bias corrected (sample) covariance matrix, as calculated by a commons-math Covariance.
+     *
+     * @return double[][]. The covariance matrix.
+     * @throws IllegalStateException if less than two vectors have been added.
+     */
+    public double[][] getCovariance() {
+        if (count < MINIMUM_COUNT) {
+            throw new IllegalStateException("At least " + MINIMUM_COUNT + " vectors are needed to calculate a covariance matrix, found " + count);
+        }
+
+        double[][] covariance = new double[dimension][dimension];
+        double denominator = count - 1;
+
+        for (int row = 0; row < dimension; row++) {
+            for (int column = row; column < dimension; column++) {
+                double value = comoments[row * dimension + column] / denominator;
+                covariance[row][column] = value;
+                covariance[column][row] = value;
+            }
+        }
+        return covariance;
+    }
+}
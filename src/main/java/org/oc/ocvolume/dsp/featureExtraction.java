@@ -44,6 +44,10 @@ Please visit http://ocvolume.sourceforge.net.
 
 package org.oc.ocvolume.dsp;
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * last updated on June 15, 2002<br>
  * <b>description:</b> feature extraction class used to parse mel-frequency cepstral coefficients from input signal<br>
@@ -66,11 +70,15 @@ public class featureExtraction{
      * Number of overlapping samples (usually 50% of frame length)
      */
     protected final static int shiftInterval = frameLength / 2;
+    /**
+     * Default number of MFCCs per frame
+     */
+    public final static int defaultNumCepstra = 13;
     /**
      * Number of MFCCs per frame
      * Modifed 4/5/06 to be non final variable - Daniel McEnnnis
      */
-    public int numCepstra = 13;
+    public int numCepstra = defaultNumCepstra;
     /**
      * FFT Size (Must be be a power of 2)
      */
@@ -102,7 +110,15 @@ public class featureExtraction{
     /**
      * Fast Fourier Transformation
      */
-    protected fft FFT;
+    protected fft FFT = new fft(fftSize);
+    /**
+     * Mel filter banks and DCT tables shared by all instances, keyed by sampling rate, frame size and number of MFCCs
+     */
+    private static final ConcurrentMap<String, FilterBank> filterBanks = new ConcurrentHashMap<>();
+    /**
+     * The filter bank used for the previous frame
+     */
+    private FilterBank filterBank;
     /**
      * takes a speech signal and returns the Mel-Frequency Cepstral Coefficient (MFCC)<br>
      * calls: fft<br>
@@ -132,21 +148,19 @@ public class featureExtraction{
         // Below computations are all based on individual frames with Hamming Window already applied to them
         //
         for (int k = 0; k < frames.length; k++){
-            FFT = new fft();
-            
             // Magnitude Spectrum
             double bin[] = magnitudeSpectrum(frames[k]);
 
             // Mel Filtering
-            int cbin[] = fftBinIndices(samplingRate,512);
+            FilterBank bank = filterBank(samplingRate, fftSize);
             // get Mel Filterbank
-            double fbank[] = melFilter(bin, cbin);
+            double fbank[] = bank.melFilter(bin);
 
             // Non-linear transformation
             double f[] = nonLinearTransformation(fbank);
 
             // Cepstral coefficients
-            double cepc[] = cepCoefficients(f);
+            double cepc[] = bank.cepCoefficients(f);
 
             // Add resulting MFCC to array
             for (int i = 0; i < numCepstra; i++){
@@ -156,6 +170,23 @@ public class featureExtraction{
 
         return MFCC;
     }
+    /**
+     * returns the precomputed mel filter bank and DCT tables for the given sampling rate and frame size<br>
+     * calls: FilterBank<br>
+     * called by: featureExtraction
+     * @param samplingRate sampling rate in Hz
+     * @param frameSize number of samples per frame
+     * @return the shared filter bank
+     */
+    public FilterBank filterBank(double samplingRate, int frameSize){
+        FilterBank bank = filterBank;
+        if (bank == null || !bank.matches(samplingRate, frameSize, numCepstra)){
+            bank = filterBanks.computeIfAbsent(samplingRate + ":" + frameSize + ":" + numCepstra,
+                    key -> new FilterBank(this, samplingRate, frameSize, numCepstra));
+            filterBank = bank;
+        }
+        return bank;
+    }
     /**
      * calculates the FFT bin indices<br>
      * calls: none<br>
@@ -234,7 +265,17 @@ public class featureExtraction{
      * @return Natural log of the output of mel filtering
      */
     public double[] nonLinearTransformation(double fbank[]){
-        double f[] = new double[fbank.length];
+        return nonLinearTransformation(fbank, new double[fbank.length]);
+    }
+    /**
+     * the output of mel filtering is subjected to a logarithm function (natural logarithm)<br>
+     * calls: none<br>
+     * called by: featureExtraction
+     * @param fbank Output of mel filtering
+     * @param f Array to store the output in, may be the same array as fbank
+     * @return Natural log of the output of mel filtering, stored in f
+     */
+    public double[] nonLinearTransformation(double fbank[], double f[]){
         final double FLOOR = -50;
         
         for (int i = 0; i < fbank.length; i++){
@@ -299,14 +340,23 @@ public class featureExtraction{
      * @return Magnitude Spectrum array
      */
     public double[] magnitudeSpectrum(double frame[]){
-        double magSpectrum[] = new double[frame.length];
-        
+        return magnitudeSpectrum(frame, new double[frame.length]);
+    }
+    /**
+     * computes the magnitude spectrum of the input frame<br>
+     * calls: none<br>
+     * called by: featureExtraction
+     * @param frame Input frame signal
+     * @param magSpectrum Array of the frame length to store the magnitude spectrum in
+     * @return Magnitude Spectrum array, stored in magSpectrum
+     */
+    public double[] magnitudeSpectrum(double frame[], double magSpectrum[]){
         // calculate FFT for current frame
-        fft.computeFFT( frame );
+        FFT.computeFFT( frame );
         
         // calculate magnitude spectrum
         for (int k = 0; k < frame.length; k++){
-            magSpectrum[k] = Math.pow(fft.real[k] * fft.real[k] + fft.imag[k] * fft.imag[k], 0.5);
+            magSpectrum[k] = Math.sqrt(FFT.real[k] * FFT.real[k] + FFT.imag[k] * FFT.imag[k]);
         }
 
         return magSpectrum;
@@ -374,4 +424,162 @@ public class featureExtraction{
         
         return outputSignal;
     }
-}
\ No newline at end of file
+    /**
+     * <b>description:</b> immutable mel filter bank and DCT basis for a single sampling rate and frame size.
+     * The filters are stored sparsely, so applying them is a sparse matrix-vector product. Instances are
+     * shared between threads.<br>
+     * <b>calls:</b> none<br>
+     * <b>called by:</b> featureExtraction
+     */
+    public static final class FilterBank{
+        private final double samplingRate;
+        private final int frameSize;
+        private final int numCepstra;
+        /**
+         * FFT bin index of each non-zero filter weight, per filter
+         */
+        private final int binIndices[][];
+        /**
+         * non-zero filter weights, per filter
+         */
+        private final double weights[][];
+        /**
+         * position of the first weight above the center frequency, per filter
+         */
+        private final int upperStart[];
+        /**
+         * DCT basis [cepstrum][filter]
+         */
+        private final double dct[][];
+
+        private FilterBank(featureExtraction fe, double samplingRate, int frameSize, int numCepstra){
+            this.samplingRate = samplingRate;
+            this.frameSize = frameSize;
+            this.numCepstra = numCepstra;
+
+            int cbin[] = fe.fftBinIndices(samplingRate, frameSize);
+
+            binIndices = new int[numMelFilters][];
+            weights = new double[numMelFilters][];
+            upperStart = new int[numMelFilters];
+
+            // same weights as melFilter, keeping only the non-zero ones
+            for (int k = 1; k <= numMelFilters; k++){
+                int indices[] = new int[Math.max(cbin[k] - cbin[k - 1] + 1, 0) + Math.max(cbin[k + 1] - cbin[k], 0)];
+                double values[] = new double[indices.length];
+                int count = 0;
+
+                for (int i = cbin[k - 1]; i <= cbin[k]; i++){
+                    double weight = ((i - cbin[k - 1] + 1) / (cbin[k] - cbin[k-1] + 1));
+                    if (weight != 0){
+                        indices[count] = i;
+                        values[count++] = weight;
+                    }
+                }
+                upperStart[k - 1] = count;
+
+                for (int i = cbin[k] + 1; i <= cbin[k + 1]; i++){
+                    double weight = (1 - ((i - cbin[k]) / (cbin[k + 1] - cbin[k] + 1)));
+                    if (weight != 0){
+                        indices[count] = i;
+                        values[count++] = weight;
+                    }
+                }
+
+                binIndices[k - 1] = Arrays.copyOf(indices, count);
+                weights[k - 1] = Arrays.copyOf(values, count);
+            }
+
+            dct = new double[numCepstra][numMelFilters];
+            for (int i = 0; i < numCepstra; i++){
+                for (int j = 1; j <= numMelFilters; j++){
+                    dct[i][j - 1] = Math.cos(Math.PI * i / numMelFilters * (j - 0.5));
+                }
+            }
+        }
+
+        /**
+         * @return true if this filter bank was built for the given parameters
+         */
+        boolean matches(double samplingRate, int frameSize, int numCepstra){
+            return this.samplingRate == samplingRate && this.frameSize == frameSize && this.numCepstra == numCepstra;
+        }
+
+        /**
+         * @return number of mel filters, the length of the mel filter output
+         */
+        public int getNumMelFilters(){
+            return numMelFilters;
+        }
+
+        /**
+         * Calculate the output of the mel filter<br>
+         * calls: none<br>
+         * called by: featureExtraction
+         * @param bin magnitude spectrum
+         * @return output of each mel filter
+         */
+        public double[] melFilter(double bin[]){
+            return melFilter(bin, new double[numMelFilters]);
+        }
+
+        /**
+         * Calculate the output of the mel filter into the given array<br>
+         * calls: none<br>
+         * called by: featureExtraction
+         * @param bin magnitude spectrum
+         * @param fbank array to write the output of each mel filter to
+         * @return fbank
+         */
+        public double[] melFilter(double bin[], double fbank[]){
+            for (int k = 0; k < numMelFilters; k++){
+                int indices[] = binIndices[k];
+                double values[] = weights[k];
+                double num1 = 0, num2 = 0;
+
+                for (int i = 0; i < upperStart[k]; i++){
+                    num1 += values[i] * bin[indices[i]];
+                }
+
+                for (int i = upperStart[k]; i < indices.length; i++){
+                    num2 += values[i] * bin[indices[i]];
+                }
+
+                fbank[k] = num1 + num2;
+            }
+            return fbank;
+        }
+
+        /**
+         * Cepstral coefficients are calculated from the output of the Non-linear Transformation method<br>
+         * calls: none<br>
+         * called by: featureExtraction
+         * @param f Output of the Non-linear Transformation method
+         * @return Cepstral Coefficients
+         */
+        public double[] cepCoefficients(double f[]){
+            return cepCoefficients(f, new double[numCepstra], 0);
+        }
+
+        /**
+         * Cepstral coefficients are calculated from the output of the Non-linear Transformation method<br>
+         * calls: none<br>
+         * called by: featureExtraction
+         * @param f Output of the Non-linear Transformation method
+         * @param cepc array to write the Cepstral Coefficients to
+         * @param offset position in cepc of the first coefficient
+         * @return cepc
+         */
+        public double[] cepCoefficients(double f[], double cepc[], int offset){
+            for (int i = 0; i < numCepstra; i++){
+                double basis[] = dct[i];
+                double sum = 0;
+                for (int j = 0; j < numMelFilters; j++){
+                    sum += f[j] * basis[j];
+                }
+                cepc[offset + i] = sum;
+            }
+            return cepc;
+        }
+    }
+}
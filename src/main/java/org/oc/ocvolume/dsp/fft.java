@@ -53,117 +53,196 @@ package org.oc.ocvolume.dsp;
  * <b>called by:</b> featureExtraction<br>
  * <b>input:</b> speech signal<br>
  * <b>output:</b> real and imaginary part of DFT output
+ * <p>
+ * Modified to be instance scoped so that separate instances can be used concurrently. Each instance owns its
+ * output and scratch buffers along with the bit reversal and twiddle factor tables for its current size.
+ * The real input signal is packed into a complex signal of half the size, transformed, and then split back
+ * into the spectrum of the real signal. The input signal is no longer modified.
  * @author Danny Su
  */
 public class fft{
     /**
      * number of points
      */
-    protected static int numPoints;
+    protected int numPoints;
     /**
      * real part
      */
-    public static double real[];
+    public double real[];
     /**
      * imaginary part
      */
-    public static double imag[];
-    
+    public double imag[];
+    /**
+     * real part of the half size complex signal
+     */
+    private double packedReal[];
+    /**
+     * imaginary part of the half size complex signal
+     */
+    private double packedImag[];
+    /**
+     * bit reversal permutation of the half size complex signal
+     */
+    private int bitReverse[];
+    /**
+     * twiddle factors of the half size complex FFT
+     */
+    private double twiddleReal[];
+    private double twiddleImag[];
+    /**
+     * twiddle factors used to split the half size spectrum into the spectrum of the real signal
+     */
+    private double splitReal[];
+    private double splitImag[];
+
+    public fft(){
+    }
+
+    /**
+     * creates an instance with tables precomputed for the given number of points
+     * @param numPoints number of points, must be a power of 2
+     */
+    public fft(int numPoints){
+        initialize(numPoints);
+    }
+
     /**
      * performs Fast Fourier Transformation<br>
      * calls: none<br>
      * called by: featureExtraction
      * @param signal  */
-    public static void computeFFT(double signal[]){
-        numPoints = signal.length;
+    public void computeFFT(double signal[]){
+        if (signal.length != numPoints){
+            initialize(signal.length);
+        }
+
+        if (numPoints == 1){
+            real[0] = signal[0];
+            imag[0] = 0;
+            return;
+        }
+
+        int halfNumPoints = numPoints >> 1;
+
+        // pack the even samples into the real part and the odd samples into the imaginary part
+        for (int i = 0; i < halfNumPoints; i++){
+            packedReal[i] = signal[i << 1];
+            packedImag[i] = signal[(i << 1) + 1];
+        }
+
+        // perform FFT using the packed arrays
+        FFT();
+
+        // split the half size spectrum into the spectrum of the real signal
+        for (int k = 0; k <= halfNumPoints; k++){
+            int index = k == halfNumPoints ? 0 : k;
+            int mirror = k == 0 ? 0 : halfNumPoints - k;
 
-        // initialize real & imag array
+            double evenReal = (packedReal[index] + packedReal[mirror]) * 0.5;
+            double evenImag = (packedImag[index] - packedImag[mirror]) * 0.5;
+            double oddReal = (packedImag[index] + packedImag[mirror]) * 0.5;
+            double oddImag = (packedReal[mirror] - packedReal[index]) * 0.5;
+
+            real[k] = evenReal + oddReal * splitReal[k] - oddImag * splitImag[k];
+            imag[k] = evenImag + oddReal * splitImag[k] + oddImag * splitReal[k];
+        }
+
+        // the upper half of the spectrum of a real signal is the complex conjugate of the lower half
+        for (int k = halfNumPoints + 1; k < numPoints; k++){
+            real[k] = real[numPoints - k];
+            imag[k] = -imag[numPoints - k];
+        }
+    }
+
+    /**
+     * allocates the buffers and precomputes the tables for the given number of points<br>
+     * calls: none<br>
+     * called by: fft
+     * @param numPoints number of points, must be a power of 2
+     */
+    private void initialize(int numPoints){
+        if (numPoints < 1 || (numPoints & (numPoints - 1)) != 0){
+            throw new IllegalArgumentException("Number of points must be a power of 2: " + numPoints);
+        }
+
+        this.numPoints = numPoints;
         real = new double[numPoints];
         imag = new double[numPoints];
-        
-        // move the N point signal into the real part of the complex DFT's time domain
-        real = signal;
-        
-        // set all of the samples in the imaginary part to zero
-        for (int i = 0; i < imag.length; i++){
-            imag[i] = 0;
+
+        int halfNumPoints = Math.max(numPoints >> 1, 1);
+        packedReal = new double[halfNumPoints];
+        packedImag = new double[halfNumPoints];
+
+        // bit reversal permutation
+        int numBits = Integer.numberOfTrailingZeros(halfNumPoints);
+        bitReverse = new int[halfNumPoints];
+        for (int i = 0; i < halfNumPoints; i++){
+            bitReverse[i] = numBits == 0 ? 0 : Integer.reverse(i) >>> (Integer.SIZE - numBits);
+        }
+
+        // twiddle factors of the half size FFT
+        twiddleReal = new double[halfNumPoints >> 1];
+        twiddleImag = new double[halfNumPoints >> 1];
+        for (int i = 0; i < twiddleReal.length; i++){
+            twiddleReal[i] = Math.cos(2 * Math.PI * i / halfNumPoints);
+            twiddleImag[i] = -Math.sin(2 * Math.PI * i / halfNumPoints);
+        }
+
+        // twiddle factors of the split
+        splitReal = new double[halfNumPoints + 1];
+        splitImag = new double[halfNumPoints + 1];
+        for (int k = 0; k <= halfNumPoints; k++){
+            splitReal[k] = Math.cos(2 * Math.PI * k / numPoints);
+            splitImag[k] = -Math.sin(2 * Math.PI * k / numPoints);
         }
-        
-        // perform FFT using the real & imag array
-        FFT();
     }
-    
+
     /**
      * performs Fast Fourier Transformation<br>
      * calls: none<br>
      * called by: fft
      */
-    private static void FFT(){
-        if (numPoints == 1) return;
+    private void FFT(){
+        int size = packedReal.length;
+        if (size == 1) return;
 
-        final double pi = Math.PI;
-        final int numStages = (int)(Math.log(numPoints) / Math.log(2));
-        
-        int halfNumPoints = numPoints >> 1;
-        int j = halfNumPoints;
-        
         // FFT time domain decomposition carried out by "bit reversal sorting" algorithm
-        int k = 0;
-        for (int i = 1; i < numPoints - 2; i++){
+        for (int i = 0; i < size; i++){
+            int j = bitReverse[i];
             if (i < j){
                 // swap
-                double tempReal = real[j];
-                double tempImag = imag[j];
-                real[j] = real[i];
-                imag[j] = imag[i];
-                real[i] = tempReal;
-                imag[i] = tempImag;
+                double tempReal = packedReal[j];
+                double tempImag = packedImag[j];
+                packedReal[j] = packedReal[i];
+                packedImag[j] = packedImag[i];
+                packedReal[i] = tempReal;
+                packedImag[i] = tempImag;
             }
-            
-            k = halfNumPoints;
-            
-            while ( k <= j ){
-                j -= k;
-                k >>=1;
-            }
-            
-            j += k;
         }
 
         // loop for each stage
-        for (int stage = 1; stage <= numStages; stage++){
-
-            int LE = 1;
-            for (int i = 0; i < stage; i++)
-                LE <<= 1;
-
+        for (int LE = 2; LE <= size; LE <<= 1){
             int LE2 = LE >> 1;
-            double UR = 1;
-            double UI = 0;
-            
-            // calculate sine & cosine values
-            double SR = Math.cos( pi / LE2 );
-            double SI = -Math.sin( pi / LE2 );
-            
+            int twiddleStep = size / LE;
+
             // loop for each sub DFT
-            for (int subDFT = 1; subDFT <= LE2; subDFT++){
-                
+            for (int subDFT = 0; subDFT < LE2; subDFT++){
+                double UR = twiddleReal[subDFT * twiddleStep];
+                double UI = twiddleImag[subDFT * twiddleStep];
+
                 // loop for each butterfly
-                for (int butterfly = subDFT - 1; butterfly <= numPoints - 1; butterfly+=LE){
+                for (int butterfly = subDFT; butterfly < size; butterfly += LE){
                     int ip = butterfly + LE2;
-                    
+
                     // butterfly calculation
-                    double tempReal = real[ip] * UR - imag[ip] * UI;
-                    double tempImag = real[ip] * UI + imag[ip] * UR;
-                    real[ip] = real[butterfly] - tempReal;
-                    imag[ip] = imag[butterfly] - tempImag;
-                    real[butterfly] += tempReal;
-                    imag[butterfly] += tempImag;
+                    double tempReal = packedReal[ip] * UR - packedImag[ip] * UI;
+                    double tempImag = packedReal[ip] * UI + packedImag[ip] * UR;
+                    packedReal[ip] = packedReal[butterfly] - tempReal;
+                    packedImag[ip] = packedImag[butterfly] - tempImag;
+                    packedReal[butterfly] += tempReal;
+                    packedImag[butterfly] += tempImag;
                 }
-                
-                double tempUR = UR;
-                UR = tempUR * SR - UI * SI;
-                UI = tempUR * SI + UI * SR;
             }
         }
     }
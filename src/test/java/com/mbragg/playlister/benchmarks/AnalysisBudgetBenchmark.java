@@ -0,0 +1,116 @@
+package com.mbragg.playlister.benchmarks;
+
+import com.mbragg.playlister.controllers.extractionControllers.FeatureExtractionController;
+import com.mbragg.playlister.models.AudioStream;
+import com.mbragg.playlister.models.MultivariateNormalDistributionModel;
+import com.mbragg.playlister.models.PendingExtraction;
+import com.mbragg.playlister.models.Samples;
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.stat.correlation.SpearmansCorrelation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark of the analysis budget against full analysis.
+ * <p>
+ * Extracts the model of each audio file in full and with the given budget, then reports the analysis time,
+ * the divergence between the full and budgeted model of each track, and how well the pairwise track
+ * similarities of the budgeted models agree with those of the full models.
+ * <p>
+ * Usage: AnalysisBudgetBenchmark directory [segments] [segmentSeconds] [maxWindows] [suffix]
+ *
+ * @author Michael Bragg
+ */
+public class AnalysisBudgetBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: AnalysisBudgetBenchmark directory [segments] [segmentSeconds] [maxWindows] [suffix]");
+            System.exit(1);
+        }
+
+        File directory = new File(args[0]);
+        int segments = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        double segmentSeconds = args.length > 2 ? Double.parseDouble(args[2]) : 3.0;
+        int maxWindows = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        String suffix = args.length > 4 ? args[4] : ".m4a";
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+        if (files == null || files.length == 0) {
+            System.err.println("No " + suffix + " files found in " + directory);
+            System.exit(1);
+        }
+
+        AudioStream audioStream = new AudioStream();
+        MultivariateNormalDistributionModel trackModel = new MultivariateNormalDistributionModel();
+        FeatureExtractionController full = new FeatureExtractionController(new Samples(), trackModel);
+        FeatureExtractionController budgeted = new FeatureExtractionController(new Samples(), trackModel);
+        budgeted.setAnalysisBudget(segments, segmentSeconds, maxWindows);
+
+        List<MultivariateNormalDistribution> fullModels = new ArrayList<>();
+        List<MultivariateNormalDistribution> budgetedModels = new ArrayList<>();
+        long fullNanos = 0;
+        long budgetedNanos = 0;
+
+        System.out.printf("%-40s %10s %10s %12s%n", "track", "full ms", "budget ms", "divergence");
+        for (File file : files) {
+            long start = System.nanoTime();
+            MultivariateNormalDistribution fullModel = extract(full, audioStream, file);
+            long fullTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            MultivariateNormalDistribution budgetedModel = extract(budgeted, audioStream, file);
+            long budgetedTime = System.nanoTime() - start;
+
+            fullModels.add(fullModel);
+            budgetedModels.add(budgetedModel);
+            fullNanos += fullTime;
+            budgetedNanos += budgetedTime;
+
+            System.out.printf("%-40s %10d %10d %12.4f%n", file.getName(), fullTime / 1000000, budgetedTime / 1000000,
+                    trackModel.getSimilarity(fullModel, budgetedModel));
+        }
+
+        System.out.printf("%nTotal: full %d ms, budget %d ms, speed up %.2fx%n",
+                fullNanos / 1000000, budgetedNanos / 1000000, (double) fullNanos / budgetedNanos);
+
+        if (files.length > 2) {
+            List<Double> fullSimilarities = new ArrayList<>();
+            List<Double> budgetedSimilarities = new ArrayList<>();
+            double relativeError = 0.0;
+
+            for (int i = 0; i < files.length; i++) {
+                for (int j = i + 1; j < files.length; j++) {
+                    double fullSimilarity = trackModel.getSimilarity(fullModels.get(i), fullModels.get(j));
+                    double budgetedSimilarity = trackModel.getSimilarity(budgetedModels.get(i), budgetedModels.get(j));
+                    fullSimilarities.add(fullSimilarity);
+                    budgetedSimilarities.add(budgetedSimilarity);
+                    relativeError += Math.abs(budgetedSimilarity - fullSimilarity) / Math.abs(fullSimilarity);
+                }
+            }
+
+            double rankCorrelation = new SpearmansCorrelation().correlation(toArray(fullSimilarities), toArray(budgetedSimilarities));
+            System.out.printf("Pairwise similarity: mean relative error %.4f, rank correlation %.4f%n",
+                    relativeError / fullSimilarities.size(), rankCorrelation);
+        }
+    }
+
+    /*
+     * Extracts through a sample source, as a scan does, so the length of the track is known and the budget applied.
+     */
+    private static MultivariateNormalDistribution extract(FeatureExtractionController controller, AudioStream audioStream, File file) throws Exception {
+        try (PendingExtraction pendingExtraction = new PendingExtraction(null, null, audioStream.openSampleSource(file))) {
+            return controller.extract(pendingExtraction);
+        }
+    }
+
+    private static double[] toArray(List<Double> values) {
+        double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
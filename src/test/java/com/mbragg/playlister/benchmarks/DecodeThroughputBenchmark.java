@@ -0,0 +1,92 @@
+package com.mbragg.playlister.benchmarks;
+
+import com.mbragg.playlister.models.AudioInputStreamSampleSource;
+import com.mbragg.playlister.models.AudioStream;
+import com.mbragg.playlister.models.Mp4AacSampleSource;
+import com.mbragg.playlister.models.SampleSource;
+import com.mbragg.playlister.models.Samples;
+
+import java.io.File;
+
+/**
+ * Benchmark of the decoding of MP4 AAC files to mono samples.
+ * <p>
+ * Decodes each audio file with the streaming javax.sound path (AudioInputStreamSampleSource) and the direct JAAD
+ * decoder (Mp4AacSampleSource), and reports the decode throughput of each as seconds of audio decoded per second.
+ * <p>
+ * Usage: DecodeThroughputBenchmark directory [repetitions] [suffix]
+ *
+ * @author Michael Bragg
+ */
+public class DecodeThroughputBenchmark {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: DecodeThroughputBenchmark directory [repetitions] [suffix]");
+            System.exit(1);
+        }
+
+        File directory = new File(args[0]);
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        String suffix = args.length > 2 ? args[2] : ".m4a";
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+        if (files == null || files.length == 0) {
+            System.err.println("No " + suffix + " files found in " + directory);
+            System.exit(1);
+        }
+
+        Samples samples = new Samples();
+        AudioStream audioStream = new AudioStream(samples);
+
+        long streamingNanos = 0;
+        long directNanos = 0;
+        double audioSeconds = 0;
+
+        // The first repetition warms up the decoders, and is not timed
+        for (int repetition = 0; repetition <= repetitions; repetition++) {
+            for (File file : files) {
+                long start = System.nanoTime();
+                try (SampleSource sampleSource = new AudioInputStreamSampleSource(audioStream.getAudioInputStream(file), samples)) {
+                    readAll(sampleSource);
+                }
+                long streamingTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long numberOfSamples;
+                float sampleRate;
+                try (SampleSource sampleSource = Mp4AacSampleSource.open(file, samples)) {
+                    numberOfSamples = readAll(sampleSource);
+                    sampleRate = sampleSource.getSampleRate();
+                }
+                long directTime = System.nanoTime() - start;
+
+                if (repetition > 0) {
+                    streamingNanos += streamingTime;
+                    directNanos += directTime;
+                    audioSeconds += numberOfSamples / sampleRate;
+                }
+            }
+        }
+
+        System.out.printf("%-30s %12s %16s%n", "decoder", "total ms", "x real time");
+        print("streaming javax.sound", streamingNanos, audioSeconds);
+        print("direct JAAD", directNanos, audioSeconds);
+    }
+
+    private static long readAll(SampleSource sampleSource) throws Exception {
+        double[] buffer = new double[BUFFER_SIZE];
+        long numberOfSamples = 0;
+        int numberOfSamplesRead;
+        while ((numberOfSamplesRead = sampleSource.read(buffer, 0, buffer.length)) > 0) {
+            numberOfSamples += numberOfSamplesRead;
+        }
+        return numberOfSamples;
+    }
+
+    private static void print(String decoder, long nanos, double audioSeconds) {
+        System.out.printf("%-30s %12d %16.1f%n", decoder, nanos / 1000000, audioSeconds / (nanos / 1e9));
+    }
+}
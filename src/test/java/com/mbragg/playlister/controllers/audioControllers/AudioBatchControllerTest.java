@@ -0,0 +1,119 @@
+package com.mbragg.playlister.controllers.audioControllers;
+
+import com.mbragg.playlister.dao.DAO;
+import com.mbragg.playlister.models.ScannedFiles;
+import com.mbragg.playlister.tools.file.DirectoryParser;
+import com.mbragg.playlister.tools.file.ScanManifest;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * @author Michael Bragg
+ */
+public class AudioBatchControllerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private DAO dao;
+    @Mock
+    private Logger logger;
+
+    private DirectoryParser directoryParser;
+    private File library;
+    private File manifestFile;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        directoryParser = new DirectoryParser();
+        ReflectionTestUtils.setField(directoryParser, "logger", logger);
+        library = temporaryFolder.newFolder("library");
+        manifestFile = new File(temporaryFolder.newFolder(), "tracks.manifest");
+        when(dao.getScannedFiles()).thenReturn(ScannedFiles.empty());
+    }
+
+    @Test
+    public void testRescanWithoutManifestSkipsScannedFiles() throws Exception {
+        File scanned = newAudioFile("scanned.m4a", 1);
+        File added = newAudioFile("added.m4a", 2);
+        when(dao.getScannedFiles()).thenReturn(new ScannedFiles.Builder()
+                .add(scanned.getName(), scanned.getAbsolutePath(), null, null).build());
+
+        List<File> filesToProcess = rescan(newAudioBatchController(new ScanManifest(logger, "")));
+
+        assertEquals(Collections.singletonList(added), filesToProcess);
+    }
+
+    @Test
+    public void testRescanSkipsUnchangedFiles() throws Exception {
+        File unchanged = newAudioFile("unchanged.m4a", 1);
+        File added = newAudioFile("added.m4a", 2);
+        ScanManifest scanManifest = new ScanManifest(logger, manifestFile.getPath());
+        scanManifest.record(unchanged);
+
+        List<File> filesToProcess = rescan(newAudioBatchController(scanManifest));
+
+        assertEquals(Collections.singletonList(added), filesToProcess);
+        verify(dao, never()).deleteTrack(anyString());
+    }
+
+    @Test
+    public void testRescanRelinksMovedFilesAndDeletesRemovedFiles() throws Exception {
+        File moved = newAudioFile("moved.m4a", 1);
+        File deleted = newAudioFile("deleted.m4a", 2);
+        ScanManifest scanManifest = new ScanManifest(logger, manifestFile.getPath());
+        scanManifest.record(moved);
+        scanManifest.record(deleted);
+        File movedTo = new File(library, "renamed.m4a");
+        Files.move(moved.toPath(), movedTo.toPath());
+        Files.delete(deleted.toPath());
+
+        List<File> filesToProcess = rescan(newAudioBatchController(scanManifest));
+
+        assertEquals(Collections.emptyList(), filesToProcess);
+        verify(dao).relinkTrack(moved.getAbsolutePath(), movedTo);
+        verify(dao).deleteTrack(deleted.getAbsolutePath());
+    }
+
+    private AudioBatchController newAudioBatchController(ScanManifest scanManifest) {
+        AudioBatchController audioBatchController = new AudioBatchController(dao, scanManifest);
+        ReflectionTestUtils.setField(audioBatchController, "logger", logger);
+        return audioBatchController;
+    }
+
+    private List<File> rescan(AudioBatchController audioBatchController) throws Exception {
+        List<File> filesToProcess = Collections.synchronizedList(new ArrayList<>());
+        audioBatchController.rescan(directoryParser.source(library.getPath(), ".m4a"), filesToProcess::add, Runnable::run);
+        filesToProcess.sort(null);
+        return filesToProcess;
+    }
+
+    private File newAudioFile(String name, int seed) throws Exception {
+        byte[] content = new byte[3000];
+        new Random(seed).nextBytes(content);
+        File file = new File(library, name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+}
@@ -0,0 +1,56 @@
+package com.mbragg.playlister.controllers.audioControllers;
+
+import com.mbragg.playlister.controllers.extractionControllers.GenreExtractionController;
+import com.mbragg.playlister.controllers.extractionControllers.MetaExtractionController;
+import com.mbragg.playlister.models.entitys.Track;
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Michael Bragg
+ */
+public class AudioTrackControllerTest {
+
+    private AudioTrackController audioTrackController;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        MetaExtractionController metaExtractionController = mock(MetaExtractionController.class);
+        GenreExtractionController genreExtractionController = mock(GenreExtractionController.class);
+        when(genreExtractionController.build()).thenReturn(new HashMap<>());
+
+        file = new File("track.m4a");
+        Map<String, String> meta = new HashMap<>();
+        meta.put("TITLE", "Title");
+        meta.put("GENRE", "Rock");
+        when(metaExtractionController.extract(file)).thenReturn(meta);
+
+        audioTrackController = new AudioTrackController(metaExtractionController, genreExtractionController);
+        ReflectionTestUtils.setField(audioTrackController, "logger", mock(Logger.class));
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        MultivariateNormalDistribution model = new MultivariateNormalDistribution(new double[]{1.0, 2.0}, new double[][]{{1.0, 0.0}, {0.0, 1.0}});
+
+        Track track = audioTrackController.build(file, model);
+
+        assertEquals("Title", track.getTitle());
+        assertEquals("Rock", track.getSubGenre());
+        assertEquals(file.getAbsolutePath(), track.getFilePath());
+        assertArrayEquals(model.getMeans(), (double[]) track.getModelPropertyValue("means"), 0.0);
+    }
+}
@@ -0,0 +1,88 @@
+package com.mbragg.playlister.controllers.audioControllers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Michael Bragg
+ */
+public class ConcurrencyControllerTest {
+
+    private static final long INTERVAL = 1000000000L;
+    private static final double CPU_LOAD = 0.5;
+
+    @Test
+    public void testFixed() {
+        ConcurrencyController concurrencyController = ConcurrencyController.fixed(5);
+
+        assertFalse(concurrencyController.isAdaptive());
+        assertEquals(5, concurrencyController.update(100, 5 * INTERVAL, INTERVAL, CPU_LOAD));
+        assertEquals(5, concurrencyController.update(100, 0, INTERVAL, CPU_LOAD));
+    }
+
+    @Test
+    public void testGrowsWhileThroughputRises() {
+        ConcurrencyController concurrencyController = new ConcurrencyController(2, 1, 32, false);
+        assertTrue(concurrencyController.isAdaptive());
+
+        assertEquals(3, concurrencyController.update(4, 2 * INTERVAL, INTERVAL, CPU_LOAD));
+        assertEquals(4, concurrencyController.update(6, 3 * INTERVAL, INTERVAL, CPU_LOAD));
+        assertEquals(6, concurrencyController.update(8, 4 * INTERVAL, INTERVAL, CPU_LOAD));
+    }
+
+    @Test
+    public void testRevertsProbeWhenThroughputDoesNotRise() {
+        ConcurrencyController concurrencyController = new ConcurrencyController(2, 1, 32, false);
+
+        assertEquals(3, concurrencyController.update(4, 2 * INTERVAL, INTERVAL, CPU_LOAD));
+        // e.g. a disk that thrashes with another parallel reader
+        assertEquals(2, concurrencyController.update(4, 3 * INTERVAL, INTERVAL, CPU_LOAD));
+
+        // backs off before probing again
+        for (int i = 0; i < 5; i++) {
+            assertEquals(2, concurrencyController.update(4, 2 * INTERVAL, INTERVAL, CPU_LOAD));
+        }
+        assertEquals(3, concurrencyController.update(4, 2 * INTERVAL, INTERVAL, CPU_LOAD));
+    }
+
+    @Test
+    public void testShrinksWhenIdle() {
+        ConcurrencyController concurrencyController = new ConcurrencyController(3, 2, 32, false);
+
+        assertEquals(2, concurrencyController.update(4, INTERVAL, INTERVAL, CPU_LOAD));
+        assertEquals(2, concurrencyController.update(4, INTERVAL / 2, INTERVAL, CPU_LOAD));
+    }
+
+    @Test
+    public void testDoesNotGrowCpuBoundStageWhenCpuSaturated() {
+        ConcurrencyController cpuBound = new ConcurrencyController(2, 1, 32, true);
+        ConcurrencyController ioBound = new ConcurrencyController(2, 1, 32, false);
+
+        assertEquals(2, cpuBound.update(4, 2 * INTERVAL, INTERVAL, 1.0));
+        assertEquals(3, ioBound.update(4, 2 * INTERVAL, INTERVAL, 1.0));
+    }
+
+    @Test
+    public void testAccumulatesMeasurementsUntilEnoughItems() {
+        ConcurrencyController concurrencyController = new ConcurrencyController(2, 1, 32, false);
+
+        assertEquals(2, concurrencyController.update(1, 2 * INTERVAL, INTERVAL, CPU_LOAD));
+        assertEquals(2, concurrencyController.update(2, 2 * INTERVAL, INTERVAL, CPU_LOAD));
+        assertEquals(3, concurrencyController.update(1, 2 * INTERVAL, INTERVAL, CPU_LOAD));
+    }
+
+    @Test
+    public void testDoesNotGrowPastMaximum() {
+        ConcurrencyController concurrencyController = new ConcurrencyController(2, 1, 2, false);
+
+        assertEquals(2, concurrencyController.update(4, 2 * INTERVAL, INTERVAL, CPU_LOAD));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWorkers() {
+        new ConcurrencyController(1, 2, 4, false);
+    }
+}
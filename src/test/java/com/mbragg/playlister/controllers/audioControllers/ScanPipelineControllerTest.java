@@ -0,0 +1,251 @@
+package com.mbragg.playlister.controllers.audioControllers;
+
+import com.mbragg.playlister.controllers.extractionControllers.FeatureExtractionController;
+import com.mbragg.playlister.dao.DAO;
+import com.mbragg.playlister.models.PendingExtraction;
+import com.mbragg.playlister.models.SampleSource;
+import com.mbragg.playlister.models.entitys.Track;
+import com.mbragg.playlister.tools.file.ScanJournal;
+import com.mbragg.playlister.tools.file.ScanManifest;
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Michael Bragg
+ */
+public class ScanPipelineControllerTest {
+
+    private static final int NUMBER_OF_FILES = 50;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FeatureExtractionController featureExtractionController;
+    private AudioTrackController audioTrackController;
+    private DAO dao;
+    private ScanPipelineController scanPipelineController;
+    private List<File> files;
+
+    @Before
+    public void setUp() throws Exception {
+        featureExtractionController = mock(FeatureExtractionController.class);
+        audioTrackController = mock(AudioTrackController.class);
+        dao = mock(DAO.class);
+
+        when(featureExtractionController.open(any(File.class)))
+                .thenAnswer(invocation -> new PendingExtraction(null, null, mock(SampleSource.class)));
+        when(featureExtractionController.extract(any(PendingExtraction.class))).thenReturn(mock(MultivariateNormalDistribution.class));
+        when(audioTrackController.build(any(File.class), any(MultivariateNormalDistribution.class)))
+                .thenAnswer(invocation -> new Track());
+
+        scanPipelineController = new ScanPipelineController(featureExtractionController, audioTrackController, dao, ScanManifest.disabled(), ScanJournal.disabled(), mock(Logger.class));
+        scanPipelineController.setPipelineSize(2, 3, 2, 2);
+
+        files = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_FILES; i++) {
+            files.add(new File("track" + i + ".m4a"));
+        }
+    }
+
+    @Test
+    public void testScanSavesEveryTrackOnTheCallingThread() throws Exception {
+        Set<Thread> persistThreads = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> persistThreads.add(Thread.currentThread())).when(dao).saveTrack(any(Track.class));
+        List<File> filesProcessed = new ArrayList<>();
+
+        int numberOfTracksSaved = scanPipelineController.scan(files, (file, numberOfFilesProcessed, numberOfFiles) -> {
+            filesProcessed.add(file);
+            assertEquals(filesProcessed.size(), numberOfFilesProcessed);
+            assertEquals(NUMBER_OF_FILES, numberOfFiles);
+        });
+
+        assertEquals(NUMBER_OF_FILES, numberOfTracksSaved);
+        assertEquals(NUMBER_OF_FILES, filesProcessed.size());
+        assertTrue(filesProcessed.containsAll(files));
+        verify(dao, times(NUMBER_OF_FILES)).saveTrack(any(Track.class));
+        assertEquals(1, persistThreads.size());
+        assertTrue(persistThreads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void testScanSkipsFilesThatFail() throws Exception {
+        when(featureExtractionController.open(eq(files.get(3)))).thenThrow(new UnsupportedAudioFileException("unsupported"));
+        List<File> filesProcessed = new ArrayList<>();
+
+        int numberOfTracksSaved = scanPipelineController.scan(files, (file, numberOfFilesProcessed, numberOfFiles) -> filesProcessed.add(file));
+
+        assertEquals(NUMBER_OF_FILES - 1, numberOfTracksSaved);
+        assertEquals(NUMBER_OF_FILES, filesProcessed.size());
+        verify(audioTrackController, times(NUMBER_OF_FILES - 1)).build(any(File.class), any(MultivariateNormalDistribution.class));
+    }
+
+    @Test
+    public void testScanSkipsFilesThatThrowErrors() throws Exception {
+        when(featureExtractionController.open(eq(files.get(3)))).thenThrow(new StackOverflowError());
+        List<File> filesProcessed = new ArrayList<>();
+
+        int numberOfTracksSaved = scanPipelineController.scan(files, (file, numberOfFilesProcessed, numberOfFiles) -> filesProcessed.add(file));
+
+        assertEquals(NUMBER_OF_FILES - 1, numberOfTracksSaved);
+        assertEquals(NUMBER_OF_FILES, filesProcessed.size());
+    }
+
+    @Test
+    public void testAdaptiveScanSavesEveryTrack() throws Exception {
+        when(featureExtractionController.extract(any(PendingExtraction.class))).thenAnswer(invocation -> {
+            Thread.sleep(1);
+            return mock(MultivariateNormalDistribution.class);
+        });
+        scanPipelineController.setPipelineSize(0, 0, 2, 2);
+        scanPipelineController.setAdaptiveInterval(1);
+        List<File> filesProcessed = new ArrayList<>();
+
+        int numberOfTracksSaved = scanPipelineController.scan(files, (file, numberOfFilesProcessed, numberOfFiles) -> filesProcessed.add(file));
+
+        assertEquals(NUMBER_OF_FILES, numberOfTracksSaved);
+        assertTrue(filesProcessed.containsAll(files));
+        verify(dao, times(NUMBER_OF_FILES)).saveTrack(any(Track.class));
+    }
+
+    @Test
+    public void testScanFromSourceCountsFilesAsTheyAreFound() throws Exception {
+        List<File> filesProcessed = new ArrayList<>();
+
+        int numberOfTracksSaved = scanPipelineController.scan((consumer, graphUpdates) -> {
+            Thread other = new Thread(() -> files.subList(0, NUMBER_OF_FILES / 2).forEach(consumer));
+            other.start();
+            files.subList(NUMBER_OF_FILES / 2, NUMBER_OF_FILES).forEach(consumer);
+            other.join();
+        }, (file, numberOfFilesProcessed, numberOfFiles) -> {
+            filesProcessed.add(file);
+            assertTrue(numberOfFilesProcessed <= numberOfFiles);
+            assertTrue(numberOfFiles <= NUMBER_OF_FILES);
+        });
+
+        assertEquals(NUMBER_OF_FILES, numberOfTracksSaved);
+        assertTrue(filesProcessed.containsAll(files));
+        verify(dao, times(NUMBER_OF_FILES)).saveTrack(any(Track.class));
+    }
+
+    @Test
+    public void testGraphUpdatesRunOnTheCallingThreadBeforeLaterFiles() throws Exception {
+        List<String> events = new ArrayList<>();
+        Set<Thread> updateThreads = ConcurrentHashMap.newKeySet();
+
+        int numberOfTracksSaved = scanPipelineController.scan((consumer, graphUpdates) -> files.forEach(file -> {
+            graphUpdates.execute(() -> {
+                updateThreads.add(Thread.currentThread());
+                events.add("update " + file.getName());
+            });
+            consumer.accept(file);
+        }), (file, numberOfFilesProcessed, numberOfFiles) -> events.add("processed " + file.getName()));
+
+        assertEquals(NUMBER_OF_FILES, numberOfTracksSaved);
+        assertEquals(2 * NUMBER_OF_FILES, events.size());
+        for (File file : files) {
+            assertTrue(events.indexOf("update " + file.getName()) < events.indexOf("processed " + file.getName()));
+        }
+        assertEquals(1, updateThreads.size());
+        assertTrue(updateThreads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void testScanResumesFromJournal() throws Exception {
+        File persisted = temporaryFolder.newFile("persisted.m4a");
+        File modelled = temporaryFolder.newFile("modelled.m4a");
+        File added = temporaryFolder.newFile("added.m4a");
+        MultivariateNormalDistribution model = new MultivariateNormalDistribution(new double[]{0, 0}, new double[][]{{1, 0}, {0, 1}});
+        when(featureExtractionController.extract(any(PendingExtraction.class))).thenReturn(model);
+        File journalFile = new File(temporaryFolder.getRoot(), "tracks.journal");
+        ScanJournal scanJournal = new ScanJournal(mock(Logger.class), journalFile.getPath());
+        scanJournal.open();
+        scanJournal.persisted(persisted);
+        scanJournal.modelled(modelled, model);
+        scanJournal.close(false);
+
+        scanPipelineController = new ScanPipelineController(featureExtractionController, audioTrackController, dao, ScanManifest.disabled(), scanJournal, mock(Logger.class));
+        int numberOfTracksSaved = scanPipelineController.scan(Arrays.asList(persisted, modelled, added), (file, numberOfFilesProcessed, numberOfFiles) -> {
+        });
+
+        assertEquals(2, numberOfTracksSaved);
+        verify(featureExtractionController, times(1)).open(any(File.class));
+        verify(featureExtractionController).open(eq(added));
+        verify(featureExtractionController, times(1)).extract(any(PendingExtraction.class));
+        verify(audioTrackController, never()).build(eq(persisted), any(MultivariateNormalDistribution.class));
+        verify(audioTrackController).build(eq(modelled), any(MultivariateNormalDistribution.class));
+        verify(dao).deleteTrack(modelled.getAbsolutePath());
+        verify(dao, times(2)).saveTrack(any(Track.class));
+        assertFalse(journalFile.exists());
+    }
+
+    @Test
+    public void testConcurrentScansRunOneAtATime() throws Exception {
+        AtomicInteger saving = new AtomicInteger();
+        AtomicInteger mostSaving = new AtomicInteger();
+        doAnswer(invocation -> {
+            mostSaving.accumulateAndGet(saving.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            saving.decrementAndGet();
+            return null;
+        }).when(dao).saveTrack(any(Track.class));
+        AtomicInteger otherTracksSaved = new AtomicInteger();
+        Thread other = new Thread(() -> {
+            try {
+                otherTracksSaved.set(scanPipelineController.scan(files, (file, numberOfFilesProcessed, numberOfFiles) -> {
+                }));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.start();
+
+        int numberOfTracksSaved = scanPipelineController.scan(files, (file, numberOfFilesProcessed, numberOfFiles) -> {
+        });
+        other.join();
+
+        assertEquals(NUMBER_OF_FILES, numberOfTracksSaved);
+        assertEquals(NUMBER_OF_FILES, otherTracksSaved.get());
+        assertEquals(1, mostSaving.get());
+    }
+
+    @Test
+    public void testScanWithNoFiles() throws Exception {
+        assertEquals(0, scanPipelineController.scan(new ArrayList<>(), (file, numberOfFilesProcessed, numberOfFiles) -> {
+        }));
+    }
+
+    @Test
+    public void testCpuLoadIsAtMostOne() {
+        assertTrue(scanPipelineController.getCpuLoad() <= 1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPipelineSize() {
+        scanPipelineController.setPipelineSize(-1, 1, 1, 1);
+    }
+}
@@ -1,21 +1,39 @@
 package com.mbragg.playlister.controllers.extractionControllers;
 
-import com.mbragg.playlister.models.Samples;
+import com.mbragg.playlister.factories.FeatureFactory;
+import com.mbragg.playlister.models.AudioInputStreamSampleSource;
 import com.mbragg.playlister.models.AudioStream;
+import com.mbragg.playlister.models.FeatureMatrix;
+import com.mbragg.playlister.models.PendingExtraction;
+import com.mbragg.playlister.models.SampleSource;
+import com.mbragg.playlister.models.Samples;
 import com.mbragg.playlister.features.Feature;
 import com.mbragg.playlister.models.TrackModel;
+import com.mbragg.playlister.tools.file.FeatureCache;
+import com.mbragg.playlister.tools.numbers.OnlineCovariance;
 import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.log4j.Logger;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -27,8 +45,8 @@ public class FeatureExtractionControllerTest {
     private static final double DELTA = 1e-15;
     private FeatureExtractionController featureExtractionController;
 
-    @Mock
-    private AudioStream audioStream;
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
     @Mock
     private Samples samples;
@@ -57,13 +75,12 @@ public class FeatureExtractionControllerTest {
         initMocks(this);
 
         when(audioInputStream.available()).thenReturn(1);
-        when(audioStream.getAudioInputStream(any())).thenReturn(audioInputStream);
-        when(audioStream.getSampleRate()).thenReturn(44.0f);
+        when(audioFormat.getSampleRate()).thenReturn(44.0f);
 
         double[] testDoubleArray = {1.0, 2.0, 3.0};
-        when(samples.getSamplesInMono(any(), any())).thenReturn(testDoubleArray);
+        when(samples.getSamplesInMono(any(byte[].class), any(AudioFormat.class))).thenReturn(testDoubleArray);
 
-        featureExtractionController = new FeatureExtractionController(audioStream, samples, trackModel);
+        featureExtractionController = new FeatureExtractionController(samples, trackModel);
     }
 
 //    @Test
@@ -76,14 +93,16 @@ public class FeatureExtractionControllerTest {
 
     @Test
     public void testExtract() throws Exception {
-        when(trackModel.build(any())).thenReturn(multivariateNormalDistribution);
+        when(trackModel.buildFromAccumulator(any())).thenReturn(multivariateNormalDistribution);
         when(multivariateNormalDistribution.toString()).thenReturn("test model");
 
         byte[] bytes = {1, 2, 3, 4};
         MultivariateNormalDistribution actual = featureExtractionController.extract(bytes, audioFormat);
 
         assertEquals("test model", actual.toString());
-        verify(trackModel).build(any());
+        verify(trackModel).buildFromAccumulator(any());
+        // The sample rate is taken from the format of the track, not from shared state
+        verify(audioFormat, atLeastOnce()).getSampleRate();
     }
 
     @Test
@@ -98,54 +117,219 @@ public class FeatureExtractionControllerTest {
     }
 
     @Test
-    public void testGetFeatures() throws Exception {
-        double[] testFeatureResults = {10.0, 20.0};
-        when(feature.extractFeature(any(), anyDouble())).thenReturn(testFeatureResults);
+    public void testCalculateWindowStartPositions() throws Exception {
+        int[] actual = featureExtractionController.calculateWindowStartPositions(2000);
+
+        assertEquals(0, actual[0]);
+        assertEquals(512, actual[1]);
+        assertEquals(1024, actual[2]);
+        assertEquals(1536, actual[3]);
+    }
 
-        double[] testSamples = new double[1000];
+    @Test
+    public void testExtractFeatureMatrix() throws Exception {
+        Samples realSamples = new Samples();
+        FeatureExtractionController controller = new FeatureExtractionController(realSamples, trackModel);
+
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100.0f, 16, 1, 2, 44100.0f, true);
+        int frames = 4 * 512 + 100;
+        byte[] audioBytes = new byte[2 * frames];
+        new Random(1).nextBytes(audioBytes);
+
+        FeatureMatrix actual;
+        try (SampleSource sampleSource = new AudioInputStreamSampleSource(new AudioInputStream(new ByteArrayInputStream(audioBytes), format, frames), realSamples)) {
+            actual = controller.extractFeatureMatrix(sampleSource);
+        }
 
-        for (int i = 0; i < 1000; i++) {
-            testSamples[i] = 1.0;
+        // One row per window, the first being the values of each feature for the first window, in feature order
+        double[] window = Arrays.copyOf(realSamples.getSamplesInMono(audioBytes, format), 512);
+        List<Double> expected = new ArrayList<>();
+        for (Feature feature : FeatureFactory.getInstance().getFeatureList()) {
+            for (double value : feature.extractFeature(window, 44100.0)) {
+                expected.add(value);
+            }
         }
+        double[] row = new double[actual.getDimension()];
+        actual.getRow(0, row);
+
+        assertEquals(controller.calculateWindowStartPositions(frames).length, actual.getNumberOfRows());
+        assertEquals(expected.size(), row.length);
+        for (int i = 0; i < row.length; i++) {
+            assertEquals(expected.get(i), row[i], 1e-5 * Math.max(1.0, Math.abs(expected.get(i))));
+        }
+    }
+
+    @Test
+    public void testAccumulateFeatures() throws Exception {
+        when(feature.extractFeature(any(), anyDouble())).thenReturn(new double[]{10.0, 20.0}, new double[]{30.0, 40.0});
 
         List<Feature> listOfMockFeatures = new ArrayList<>();
         listOfMockFeatures.add(feature);
 
-        double[][][] actual = featureExtractionController.getFeatures(testSamples, listOfMockFeatures);
-        // First window, the only feature, two values feature extraction vector [10.0, 20.0]
-        assertEquals(10.0, actual[0][0][0], DELTA);
-        assertEquals(20.0, actual[0][0][1], DELTA);
+        OnlineCovariance actual = featureExtractionController.accumulateFeatures(new double[1000], 44.0, listOfMockFeatures);
 
-        // Second window, the only feature, the same two values feature extraction vector
-        assertEquals(10.0, actual[1][0][0], DELTA);
-        assertEquals(20.0, actual[1][0][1], DELTA);
+        // Two windows, each adding one feature vector
+        assertEquals(2, actual.getCount());
+        assertEquals(2, actual.getDimension());
+        assertEquals(20.0, actual.getMean()[0], DELTA);
+        assertEquals(30.0, actual.getMean()[1], DELTA);
+    }
+
+    @Test
+    public void testStreamingExtractMatchesBufferedFeatures() throws Exception {
+        Samples realSamples = new Samples();
+        FeatureExtractionController controller = new FeatureExtractionController(realSamples, trackModel);
 
+        // 16 bit stereo, with a number of frames that does not fill the last window
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100.0f, 16, 2, 4, 44100.0f, true);
+        byte[] audioBytes = new byte[4 * 10000];
+        new Random(1).nextBytes(audioBytes);
+
+        AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(audioBytes), format, 10000);
+        controller.extract(stream);
+
+        ArgumentCaptor<OnlineCovariance> captor = ArgumentCaptor.forClass(OnlineCovariance.class);
+        verify(trackModel).buildFromAccumulator(captor.capture());
+        OnlineCovariance actual = captor.getValue();
+
+        OnlineCovariance expected = controller.accumulateFeatures(realSamples.getSamplesInMono(audioBytes, format), 44100.0, FeatureFactory.getInstance().getFeatureList());
+
+        assertEquals(expected.getCount(), actual.getCount());
+        assertArrayEquals(expected.getMean(), actual.getMean(), 0.0);
+        for (int row = 0; row < expected.getDimension(); row++) {
+            assertArrayEquals(expected.getCovariance()[row], actual.getCovariance()[row], 0.0);
+        }
     }
 
     @Test
-    public void testCalculateWindowStartPositions() throws Exception {
-        int[] actual = featureExtractionController.calculateWindowStartPositions(2000);
+    public void testAccumulateFeaturesInParallelMatchesSequential() throws Exception {
 
-        assertEquals(0, actual[0]);
-        assertEquals(512, actual[1]);
-        assertEquals(1024, actual[2]);
-        assertEquals(1536, actual[3]);
+        // Enough samples for several chunks of windows, with a last window that is not full
+        double[] testSamples = new double[700 * 512 + 100];
+        Random random = new Random(1);
+        for (int i = 0; i < testSamples.length; i++) {
+            testSamples[i] = random.nextDouble() * 2 - 1;
+        }
+
+        OnlineCovariance expected = featureExtractionController.accumulateFeatures(testSamples, 44100.0, FeatureFactory.getInstance().getFeatureList());
+        OnlineCovariance actual = featureExtractionController.accumulateFeaturesInParallel(testSamples, 44100.0, FeatureFactory.getInstance()::getFeatureList);
+
+        assertAccumulatorsEqual(expected, actual);
     }
 
     @Test
-    public void testGetFeatureVectorList() throws Exception {
-        double[][][] testData = {{{10.0, 20.0}, {30.0, 40.0}}, {{1.0, 2.0}, {3.0, 4.0}}};
+    public void testParallelStreamingMatchesSequentialStreaming() throws Exception {
+        Samples realSamples = new Samples();
+        FeatureExtractionController controller = new FeatureExtractionController(realSamples, trackModel);
+
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100.0f, 16, 1, 2, 44100.0f, true);
+        int frames = 600 * 512 + 100;
+        byte[] audioBytes = new byte[2 * frames];
+        new Random(1).nextBytes(audioBytes);
+
+        controller.extract(new AudioInputStream(new ByteArrayInputStream(audioBytes), format, frames));
+        ArgumentCaptor<OnlineCovariance> captor = ArgumentCaptor.forClass(OnlineCovariance.class);
+        verify(trackModel).buildFromAccumulator(captor.capture());
+
+        OnlineCovariance actual;
+        try (SampleSource sampleSource = new AudioInputStreamSampleSource(new AudioInputStream(new ByteArrayInputStream(audioBytes), format, frames), realSamples)) {
+            actual = controller.accumulateInParallel(sampleSource, FeatureFactory.getInstance()::getFeatureList);
+        }
 
-        List<double[]> actual = featureExtractionController.getFeatureVectorList(testData);
+        assertAccumulatorsEqual(captor.getValue(), actual);
+    }
 
-        assertEquals(10.0, actual.get(0)[0], DELTA);
-        assertEquals(20.0, actual.get(0)[1], DELTA);
-        assertEquals(30.0, actual.get(0)[2], DELTA);
-        assertEquals(40.0, actual.get(0)[3], DELTA);
+    @Test
+    public void testBudgetedStreamingMatchesBudgetedBuffered() throws Exception {
+        Samples realSamples = new Samples();
+        FeatureExtractionController controller = new FeatureExtractionController(realSamples, trackModel);
+        // 3 segments of half a second, at 8000 / 512 windows per second
+        controller.setAnalysisBudget(3, 0.5, 0);
+
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 8000.0f, 16, 1, 2, 8000.0f, true);
+        int frames = 200 * 512 + 100;
+        byte[] audioBytes = new byte[2 * frames];
+        new Random(1).nextBytes(audioBytes);
+
+        controller.extract(new AudioInputStream(new ByteArrayInputStream(audioBytes), format, frames));
+        controller.extract(audioBytes, format);
+
+        ArgumentCaptor<OnlineCovariance> captor = ArgumentCaptor.forClass(OnlineCovariance.class);
+        verify(trackModel, times(2)).buildFromAccumulator(captor.capture());
+
+        OnlineCovariance streamed = captor.getAllValues().get(0);
+        assertEquals(3 * 8, streamed.getCount());
+        assertAccumulatorsEqual(captor.getAllValues().get(1), streamed);
+    }
 
-        assertEquals(1.0, actual.get(1)[0], DELTA);
-        assertEquals(2.0, actual.get(1)[1], DELTA);
-        assertEquals(3.0, actual.get(1)[2], DELTA);
-        assertEquals(4.0, actual.get(1)[3], DELTA);
+    @Test
+    public void testParallelFeatureMatrixMatchesSequential() throws Exception {
+        Samples realSamples = new Samples();
+        FeatureExtractionController controller = new FeatureExtractionController(realSamples, trackModel);
+
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100.0f, 16, 1, 2, 44100.0f, true);
+        int frames = 600 * 512 + 100;
+        byte[] audioBytes = new byte[2 * frames];
+        new Random(1).nextBytes(audioBytes);
+
+        FeatureMatrix expected;
+        try (SampleSource sampleSource = new AudioInputStreamSampleSource(new AudioInputStream(new ByteArrayInputStream(audioBytes), format, frames), realSamples)) {
+            expected = controller.extractFeatureMatrix(sampleSource);
+        }
+
+        ReflectionTestUtils.setField(controller, "parallelExtraction", true);
+        FeatureMatrix actual;
+        try (SampleSource sampleSource = new AudioInputStreamSampleSource(new AudioInputStream(new ByteArrayInputStream(audioBytes), format, frames), realSamples)) {
+            actual = controller.extractFeatureMatrix(sampleSource);
+        }
+
+        assertEquals(601, actual.getNumberOfRows());
+        assertArrayEquals(expected.toArray(), actual.toArray(), 0.0f);
+
+        // The rows are float32, so the model is close to, but not the same as, the model of the double feature vectors
+        OnlineCovariance accumulated = controller.accumulateFeatureMatrix(actual);
+        double[] mean = controller.accumulateFeatures(realSamples.getSamplesInMono(audioBytes, format), 44100.0, FeatureFactory.getInstance().getFeatureList()).getMean();
+        assertEquals(601, accumulated.getCount());
+        for (int i = 0; i < mean.length; i++) {
+            assertEquals(mean[i], accumulated.getMean()[i], 1e-5 * Math.max(1.0, Math.abs(mean[i])));
+        }
+    }
+
+    @Test
+    public void testExtractUsesFeatureCache() throws Exception {
+        Samples realSamples = new Samples();
+        AudioStream audioStream = mock(AudioStream.class);
+        FeatureCache featureCache = new FeatureCache(mock(Logger.class), temporaryFolder.newFolder().getPath(), true);
+        FeatureExtractionController controller = new FeatureExtractionController(realSamples, trackModel, audioStream, featureCache);
+
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100.0f, 16, 1, 2, 44100.0f, true);
+        int frames = 10 * 512;
+        byte[] audioBytes = new byte[2 * frames];
+        new Random(1).nextBytes(audioBytes);
+        File audioFile = temporaryFolder.newFile("track.m4a");
+        Files.write(audioFile.toPath(), audioBytes);
+        when(audioStream.openSampleSource(audioFile)).thenReturn(
+                new AudioInputStreamSampleSource(new AudioInputStream(new ByteArrayInputStream(audioBytes), format, frames), realSamples));
+
+        for (int i = 0; i < 2; i++) {
+            try (PendingExtraction pendingExtraction = controller.open(audioFile)) {
+                controller.extract(pendingExtraction);
+            }
+        }
+
+        // Decoded once, then read from the cache
+        verify(audioStream, times(1)).openSampleSource(audioFile);
+        ArgumentCaptor<OnlineCovariance> captor = ArgumentCaptor.forClass(OnlineCovariance.class);
+        verify(trackModel, times(2)).buildFromAccumulator(captor.capture());
+        assertEquals(10, captor.getAllValues().get(0).getCount());
+        assertAccumulatorsEqual(captor.getAllValues().get(0), captor.getAllValues().get(1));
+    }
+
+    private void assertAccumulatorsEqual(OnlineCovariance expected, OnlineCovariance actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertArrayEquals(expected.getMean(), actual.getMean(), 0.0);
+        for (int row = 0; row < expected.getDimension(); row++) {
+            assertArrayEquals(expected.getCovariance()[row], actual.getCovariance()[row], 0.0);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,14 @@
 package com.mbragg.playlister.factories;
 
 import com.mbragg.playlister.features.Feature;
+import com.mbragg.playlister.features.MFCC;
+import com.mbragg.playlister.features.RMS;
+import com.mbragg.playlister.features.ZeroCrossing;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 import static junit.framework.TestCase.*;
 
@@ -34,5 +39,46 @@ public class FeatureFactoryTest {
 
         // Test calling getFeatureList() again returns a different list
         assertNotSame(featureList, featureFactory.getFeatureList());
+
+        // Test each list holds its own feature instances
+        assertNotSame(featureList.get(0), featureFactory.getFeatureList().get(0));
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        FeatureFactory featureFactory = FeatureFactory.getInstance();
+        int numberOfFeatures = featureFactory.getFeatureList().size();
+
+        Supplier<Feature> featureSupplier = RMS::new;
+        featureFactory.register(featureSupplier);
+        try {
+            List<Feature> featureList = featureFactory.getFeatureList();
+            assertEquals(numberOfFeatures + 1, featureList.size());
+            assertTrue(featureList.get(numberOfFeatures) instanceof RMS);
+        } finally {
+            featureFactory.unregister(featureSupplier);
+        }
+
+        assertEquals(numberOfFeatures, featureFactory.getFeatureList().size());
+    }
+
+    @Test
+    public void testGetFeatureVectorDimension() throws Exception {
+        List<Feature> featureList = new ArrayList<>();
+        featureList.add(new MFCC());
+        featureList.add(new RMS());
+        featureList.add(new ZeroCrossing());
+
+        assertEquals(15, FeatureFactory.getFeatureVectorDimension(featureList));
+
+        // A feature without a declared dimension
+        featureList.add(new Feature() {
+            @Override
+            public double[] extractFeature(double[] samples, double samplingRate) {
+                return new double[0];
+            }
+        });
+
+        assertEquals(-1, FeatureFactory.getFeatureVectorDimension(featureList));
     }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package com.mbragg.playlister.features;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oc.ocvolume.dsp.featureExtraction;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Michael Bragg
+ */
+public class MFCCTest {
+
+    private static final double DELTA = 1e-15;
+    private MFCC mfcc;
+
+    @Before
+    public void setUp() throws Exception {
+        mfcc = new MFCC();
+    }
+
+    @Test
+    public void testExtractFeature() throws Exception {
+        double[] testData = new double[512];
+        Random random = new Random(1);
+        for (int i = 0; i < testData.length; i++) {
+            testData[i] = random.nextDouble() * 2 - 1;
+        }
+
+        // Expected values from the separate OC Volume steps
+        featureExtraction fe = new featureExtraction();
+        double[] magnitudeSpectrum = fe.magnitudeSpectrum(testData);
+        featureExtraction.FilterBank filterBank = fe.filterBank(44100.0, magnitudeSpectrum.length);
+        double[] expected = filterBank.cepCoefficients(fe.nonLinearTransformation(filterBank.melFilter(magnitudeSpectrum)));
+
+        double[] actual = mfcc.extractFeature(testData, 44100.0);
+        assertEquals(mfcc.getDimension(), actual.length);
+        assertArrayEquals(expected, actual, DELTA);
+
+        // Into a buffer at an offset, twice to check the intermediate buffers are reused correctly
+        double[] output = new double[mfcc.getDimension() + 2];
+        mfcc.extractFeature(testData, 44100.0, output, 2);
+        mfcc.extractFeature(testData, 44100.0, output, 2);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], output[i + 2], DELTA);
+        }
+    }
+}
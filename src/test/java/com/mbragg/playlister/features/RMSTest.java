@@ -28,4 +28,18 @@ public class RMSTest {
         assertEquals(expected, actual[0], DELTA);
 
     }
+
+    @Test
+    public void testExtractFeatureIntoBuffer() throws Exception {
+        double[] testData = {0.2, 0.3, 0.6};
+        double[] output = {1.0, 2.0, 3.0};
+        rms.extractFeature(testData, 0.0, output, 1);
+
+        double expected = Math.sqrt((0.2 * 0.2 + 0.3 * 0.3 + 0.6 * 0.6) / 3);
+
+        assertEquals(1, rms.getDimension());
+        assertEquals(1.0, output[0], DELTA);
+        assertEquals(expected, output[1], DELTA);
+        assertEquals(3.0, output[2], DELTA);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.mbragg.playlister.features;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Michael Bragg
+ */
+public class SpectralCentroidTest {
+
+    private static final double DELTA = 1e-6;
+    private SpectralCentroid spectralCentroid;
+
+    @Before
+    public void setUp() throws Exception {
+        spectralCentroid = new SpectralCentroid();
+    }
+
+    @Test
+    public void testExtractFeature() throws Exception {
+        // 512 Hz sine, centred on FFT bin 32 at a sampling rate of 8192 Hz
+        double[] testData = new double[512];
+        for (int i = 0; i < testData.length; i++) {
+            testData[i] = Math.sin(2 * Math.PI * 32 * i / testData.length);
+        }
+
+        double[] actual = spectralCentroid.extractFeature(testData, 8192.0);
+
+        assertEquals(512.0, actual[0], DELTA);
+    }
+
+    @Test
+    public void testExtractFeatureOfSilence() throws Exception {
+        double[] actual = spectralCentroid.extractFeature(new double[512], 8192.0);
+
+        assertEquals(0.0, actual[0], 0.0);
+    }
+}
@@ -0,0 +1,31 @@
+package com.mbragg.playlister.features;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Michael Bragg
+ */
+public class SpectralRolloffTest {
+
+    private static final double DELTA = 1e-6;
+
+    @Test
+    public void testExtractFeature() throws Exception {
+        // Equal power sines on FFT bins 16 and 64, at a sampling rate of 8192 Hz
+        double[] testData = new double[512];
+        for (int i = 0; i < testData.length; i++) {
+            testData[i] = Math.sin(2 * Math.PI * 16 * i / testData.length) + Math.sin(2 * Math.PI * 64 * i / testData.length);
+        }
+
+        // Half of the power lies at or below bin 16, all of it at or below bin 64
+        assertEquals(256.0, new SpectralRolloff(0.5).extractFeature(testData, 8192.0)[0], DELTA);
+        assertEquals(1024.0, new SpectralRolloff().extractFeature(testData, 8192.0)[0], DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFraction() throws Exception {
+        new SpectralRolloff(0.0);
+    }
+}
@@ -0,0 +1,73 @@
+package com.mbragg.playlister.features;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oc.ocvolume.dsp.featureExtraction;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Michael Bragg
+ */
+public class WindowContextTest {
+
+    private static final double DELTA = 1e-12;
+    private WindowContext windowContext;
+    private double[] testData;
+
+    @Before
+    public void setUp() throws Exception {
+        windowContext = new WindowContext();
+        testData = new double[512];
+        Random random = new Random(1);
+        for (int i = 0; i < testData.length; i++) {
+            testData[i] = random.nextDouble() * 2 - 1;
+        }
+    }
+
+    @Test
+    public void testIntermediates() throws Exception {
+        windowContext.setWindow(testData, 44100.0);
+
+        featureExtraction fe = new featureExtraction();
+        double[] expectedMagnitudes = fe.magnitudeSpectrum(testData);
+        double[] expectedMelEnergies = fe.filterBank(44100.0, 512).melFilter(expectedMagnitudes);
+
+        assertArrayEquals(expectedMagnitudes, windowContext.getMagnitudeSpectrum(), 0.0);
+        assertArrayEquals(expectedMelEnergies, windowContext.getMelEnergies(), 0.0);
+        assertArrayEquals(fe.nonLinearTransformation(expectedMelEnergies), windowContext.getLogMelEnergies(), 0.0);
+
+        double[] power = windowContext.getPowerSpectrum();
+        for (int i = 0; i < power.length; i++) {
+            assertEquals(expectedMagnitudes[i] * expectedMagnitudes[i], power[i], DELTA);
+        }
+    }
+
+    @Test
+    public void testIntermediatesAreComputedOncePerWindow() throws Exception {
+        windowContext.setWindow(testData, 44100.0);
+        double[] magnitudes = windowContext.getMagnitudeSpectrum();
+        double first = magnitudes[1];
+
+        // Changing the frame does not change the intermediates of the current window
+        testData[0] += 1.0;
+        assertSame(magnitudes, windowContext.getMagnitudeSpectrum());
+        assertEquals(first, windowContext.getMagnitudeSpectrum()[1], 0.0);
+
+        // Setting the window again recomputes them
+        windowContext.setWindow(testData, 44100.0);
+        assertNotEquals(first, windowContext.getMagnitudeSpectrum()[1], 0.0);
+    }
+
+    @Test
+    public void testGetBinFrequency() throws Exception {
+        windowContext.setWindow(testData, 8192.0);
+
+        assertEquals(257, windowContext.getNumberOfSpectrumBins());
+        assertEquals(0.0, windowContext.getBinFrequency(0), DELTA);
+        assertEquals(16.0, windowContext.getBinFrequency(1), DELTA);
+        assertEquals(4096.0, windowContext.getBinFrequency(256), DELTA);
+    }
+}
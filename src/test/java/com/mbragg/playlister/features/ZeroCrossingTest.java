@@ -24,4 +24,15 @@ public class ZeroCrossingTest {
         double[] actual = zeroCrossing.extractFeature(testData, 0.0);
         assertEquals(5.0, actual[0], DELTA);
     }
+
+    @Test
+    public void testExtractFeatureIntoBuffer() throws Exception {
+        double[] testData = {0, 1, -2, 3, 4, -5, 6};
+        double[] output = new double[2];
+        zeroCrossing.extractFeature(testData, 0.0, output, 1);
+
+        assertEquals(1, zeroCrossing.getDimension());
+        assertEquals(0.0, output[0], DELTA);
+        assertEquals(5.0, output[1], DELTA);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.mbragg.playlister.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Michael Bragg
+ */
+public class AnalysisBudgetTest {
+
+    @Test
+    public void testUnlimited() throws Exception {
+        assertTrue(AnalysisBudget.unlimited().isUnlimited());
+        assertTrue(new AnalysisBudget(4, 0.0, 0).isUnlimited());
+
+        int[][] actual = AnalysisBudget.unlimited().selectWindows(1000, 86.0);
+        assertEquals(1, actual.length);
+        assertArrayEquals(new int[]{0, 1000}, actual[0]);
+    }
+
+    @Test
+    public void testSelectEvenlySpacedSegments() throws Exception {
+        // 3 segments of 1 second, at 10 windows per second
+        int[][] actual = new AnalysisBudget(3, 1.0, 0).selectWindows(1000, 10.0);
+
+        assertEquals(3, actual.length);
+        assertArrayEquals(new int[]{0, 10}, actual[0]);
+        assertArrayEquals(new int[]{495, 505}, actual[1]);
+        assertArrayEquals(new int[]{990, 1000}, actual[2]);
+    }
+
+    @Test
+    public void testMaxWindowsLimitsSegments() throws Exception {
+        int[][] actual = new AnalysisBudget(2, 10.0, 50).selectWindows(1000, 10.0);
+
+        assertEquals(2, actual.length);
+        assertArrayEquals(new int[]{0, 25}, actual[0]);
+        assertArrayEquals(new int[]{975, 1000}, actual[1]);
+
+        // Maximum windows on its own is spread over the default number of segments
+        actual = new AnalysisBudget(0, 0.0, 80).selectWindows(1000, 10.0);
+        assertEquals(AnalysisBudget.DEFAULT_SEGMENTS, actual.length);
+        assertEquals(10, actual[0][1] - actual[0][0]);
+    }
+
+    @Test
+    public void testMaxWindowsBelowSegmentsLimitsNumberOfSegments() throws Exception {
+        int[][] actual = new AnalysisBudget(8, 10.0, 3).selectWindows(1000, 10.0);
+
+        assertEquals(3, actual.length);
+        int windows = 0;
+        for (int[] range : actual) {
+            windows += range[1] - range[0];
+        }
+        assertEquals(3, windows);
+    }
+
+    @Test
+    public void testShortTrackIsAnalysedInFull() throws Exception {
+        int[][] actual = new AnalysisBudget(3, 1.0, 0).selectWindows(25, 10.0);
+
+        assertEquals(1, actual.length);
+        assertArrayEquals(new int[]{0, 25}, actual[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBudget() throws Exception {
+        new AnalysisBudget(-1, 0.0, 0);
+    }
+}
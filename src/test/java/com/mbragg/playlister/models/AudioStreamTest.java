@@ -8,6 +8,7 @@ import java.io.File;
 import java.net.URL;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author Michael Bragg
@@ -78,10 +79,13 @@ public class AudioStreamTest {
     }
 
     @Test
-    public void testGetSampleRate() throws Exception {
-        audioStream.getAudioInputStream(file);
-
-        assertEquals(audioStream.getSampleRate(), 44100.0f, DELTA);
+    public void testOpen() throws Exception {
+        try (AudioHandle audioHandle = audioStream.open(file)) {
+            assertSame(file, audioHandle.getFile());
+            assertEquals(44100.0f, audioHandle.getSampleRate(), DELTA);
+            assertSame(audioHandle.getFormat(), audioHandle.getAudioInputStream().getFormat());
+            assertEquals(2, audioHandle.getSourceFormat().getChannels());
+        }
     }
 
 }
\ No newline at end of file
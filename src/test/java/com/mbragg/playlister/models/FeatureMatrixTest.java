@@ -0,0 +1,65 @@
+package com.mbragg.playlister.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Michael Bragg
+ */
+public class FeatureMatrixTest {
+
+    private static final double DELTA = 1e-15;
+
+    @Test
+    public void testAddRow() {
+        FeatureMatrix featureMatrix = new FeatureMatrix(2);
+        for (int row = 0; row < 1000; row++) {
+            featureMatrix.addRow(new double[]{row, -row});
+        }
+
+        double[] actual = new double[2];
+        featureMatrix.getRow(999, actual);
+
+        assertEquals(1000, featureMatrix.getNumberOfRows());
+        assertArrayEquals(new double[]{999, -999}, actual, DELTA);
+    }
+
+    @Test
+    public void testAddRowRoundsToFloat() {
+        FeatureMatrix featureMatrix = new FeatureMatrix(1);
+        featureMatrix.addRow(new double[]{0.1});
+
+        double[] actual = new double[1];
+        featureMatrix.getRow(0, actual);
+
+        assertEquals((double) 0.1f, actual[0], DELTA);
+    }
+
+    @Test
+    public void testAppend() {
+        FeatureMatrix first = new FeatureMatrix(2, new float[]{1, 2});
+        FeatureMatrix second = new FeatureMatrix(2, new float[]{3, 4, 5, 6});
+
+        first.append(second);
+
+        assertEquals(3, first.getNumberOfRows());
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5, 6}, first.toArray(), 0.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppendNeedsSameDimension() {
+        new FeatureMatrix(2, new float[]{1, 2}).append(new FeatureMatrix(3, new float[]{1, 2, 3}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddRowNeedsSameDimension() {
+        new FeatureMatrix(2).addRow(new double[]{1, 2, 3});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValuesMustBeWholeRows() {
+        new FeatureMatrix(2, new float[]{1, 2, 3});
+    }
+}
@@ -0,0 +1,166 @@
+package com.mbragg.playlister.models;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Michael Bragg
+ */
+public class MappedPcmSampleSourceTest {
+
+    private static final double DELTA = 1e-15;
+    private static final int NUMBER_OF_FRAMES = 1000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private byte[] stereoBytes;
+
+    @Before
+    public void setUp() throws Exception {
+        // 16 bit big endian stereo, a different tone in each channel
+        ByteBuffer byteBuffer = ByteBuffer.allocate(NUMBER_OF_FRAMES * 4);
+        for (int frame = 0; frame < NUMBER_OF_FRAMES; frame++) {
+            byteBuffer.putShort((short) (Math.sin(frame * 0.05) * 30000));
+            byteBuffer.putShort((short) (Math.cos(frame * 0.13) * 20000));
+        }
+        stereoBytes = byteBuffer.array();
+    }
+
+    @Test
+    public void testWaveMatchesSamples() throws Exception {
+        File file = write(AudioFileFormat.Type.WAVE, "test.wav");
+
+        assertArrayEquals(expectedSamples(), readMapped(file), DELTA);
+    }
+
+    @Test
+    public void testAiffMatchesSamples() throws Exception {
+        File file = write(AudioFileFormat.Type.AIFF, "test.aiff");
+
+        assertArrayEquals(expectedSamples(), readMapped(file), DELTA);
+    }
+
+    @Test
+    public void testGetLengthAndSampleRate() throws Exception {
+        File file = write(AudioFileFormat.Type.WAVE, "test.wav");
+
+        try (MappedPcmSampleSource sampleSource = MappedPcmSampleSource.open(file)) {
+            assertEquals(NUMBER_OF_FRAMES, sampleSource.getLength());
+            assertEquals(44100.0f, sampleSource.getSampleRate(), DELTA);
+        }
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        File file = write(AudioFileFormat.Type.AIFF, "test.aiff");
+        double[] samples = readMapped(file);
+
+        try (MappedPcmSampleSource sampleSource = MappedPcmSampleSource.open(file)) {
+            assertEquals(600, sampleSource.skip(600));
+
+            double[] buffer = new double[NUMBER_OF_FRAMES];
+            assertEquals(400, sampleSource.read(buffer, 0, buffer.length));
+            assertEquals(samples[600], buffer[0], DELTA);
+            assertEquals(samples[999], buffer[399], DELTA);
+
+            assertEquals(0, sampleSource.skip(10));
+            assertEquals(-1, sampleSource.read(buffer, 0, buffer.length));
+        }
+    }
+
+    @Test
+    public void testTwentyFourBitWave() throws Exception {
+        ByteBuffer data = ByteBuffer.allocate(6).order(ByteOrder.LITTLE_ENDIAN);
+        data.put((byte) 0x00).put((byte) 0x00).put((byte) 0x40);
+        data.put((byte) 0x00).put((byte) 0x00).put((byte) 0x80);
+        File file = writeWave(1, 24, 1, data.array());
+
+        assertArrayEquals(new double[]{0.5, -1.0}, readMapped(file), DELTA);
+    }
+
+    @Test
+    public void testFloatWave() throws Exception {
+        ByteBuffer data = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        data.putFloat(0.25f).putFloat(0.75f).putFloat(-0.5f).putFloat(0.0f);
+        File file = writeWave(3, 32, 2, data.array());
+
+        assertArrayEquals(new double[]{0.5, -0.25}, readMapped(file), DELTA);
+    }
+
+    @Test(expected = UnsupportedAudioFileException.class)
+    public void testCompressedWaveIsUnsupported() throws Exception {
+        File file = writeWave(2, 4, 1, new byte[16]);
+
+        MappedPcmSampleSource.open(file);
+    }
+
+    @Test
+    public void testCanOpen() throws Exception {
+        assertTrue(MappedPcmSampleSource.canOpen(new File("track.WAV")));
+        assertTrue(MappedPcmSampleSource.canOpen(new File("track.aiff")));
+        assertFalse(MappedPcmSampleSource.canOpen(new File("track.m4a")));
+    }
+
+    private File write(AudioFileFormat.Type type, String name) throws Exception {
+        AudioFormat format = new AudioFormat(44100.0f, 16, 2, true, true);
+        File file = temporaryFolder.newFile(name);
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(stereoBytes), format, NUMBER_OF_FRAMES), type, file);
+        return file;
+    }
+
+    private File writeWave(int formatTag, int bitsPerSample, int channels, byte[] data) throws Exception {
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes()).putInt(36 + data.length).put("WAVE".getBytes());
+        header.put("fmt ".getBytes()).putInt(16).putShort((short) formatTag).putShort((short) channels).putInt(44100)
+                .putInt(44100 * channels * bitsPerSample / 8).putShort((short) (channels * bitsPerSample / 8)).putShort((short) bitsPerSample);
+        header.put("data".getBytes()).putInt(data.length);
+
+        File file = temporaryFolder.newFile();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(header.array());
+            outputStream.write(data);
+        }
+        return file;
+    }
+
+    private double[] readMapped(File file) throws Exception {
+        try (MappedPcmSampleSource sampleSource = MappedPcmSampleSource.open(file)) {
+            return readAll(sampleSource);
+        }
+    }
+
+    private double[] expectedSamples() {
+        return new Samples().getSamplesInMono(stereoBytes, new AudioFormat(44100.0f, 16, 2, true, true));
+    }
+
+    private double[] readAll(SampleSource sampleSource) throws Exception {
+        double[] samples = new double[NUMBER_OF_FRAMES * 2];
+        int length = 0;
+        int numberOfSamplesRead;
+        while ((numberOfSamplesRead = sampleSource.read(samples, length, samples.length - length)) > 0) {
+            length += numberOfSamplesRead;
+        }
+        double[] result = new double[length];
+        System.arraycopy(samples, 0, result, 0, length);
+        return result;
+    }
+}
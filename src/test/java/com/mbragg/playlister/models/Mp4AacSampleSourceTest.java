@@ -0,0 +1,99 @@
+package com.mbragg.playlister.models;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Michael Bragg
+ */
+public class Mp4AacSampleSourceTest {
+
+    private static final float DELTA = 1e-15f;
+
+    private Samples samples;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        /*
+        Test file: Testname.m4a
+        AAC, 44100.0 Hz, stereo
+         */
+        URL url = Thread.currentThread().getContextClassLoader().getResource("Testname.m4a");
+        if (url != null) {
+            file = new File(url.getPath());
+        }
+
+        samples = new Samples();
+    }
+
+    @Test
+    public void testMatchesAudioInputStream() throws Exception {
+        double[] expected;
+        try (SampleSource sampleSource = new AudioInputStreamSampleSource(new AudioStream().getAudioInputStream(file), samples)) {
+            expected = readAll(sampleSource);
+        }
+
+        try (Mp4AacSampleSource sampleSource = Mp4AacSampleSource.open(file, samples)) {
+            assertEquals(44100.0f, sampleSource.getSampleRate(), DELTA);
+            assertArrayEquals(expected, readAll(sampleSource), 0.0);
+        }
+    }
+
+    @Test
+    public void testGetLength() throws Exception {
+        try (Mp4AacSampleSource sampleSource = Mp4AacSampleSource.open(file, samples)) {
+            long length = sampleSource.getLength();
+
+            // Estimated from the duration, so within a frame of the decoded length
+            assertEquals(readAll(sampleSource).length, length, 2048);
+        }
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        double[] expected;
+        try (Mp4AacSampleSource sampleSource = Mp4AacSampleSource.open(file, samples)) {
+            expected = readAll(sampleSource);
+        }
+
+        int start = expected.length / 2 + 100;
+        try (Mp4AacSampleSource sampleSource = Mp4AacSampleSource.open(file, samples)) {
+            assertEquals(start, sampleSource.skip(start));
+
+            double[] actual = readAll(sampleSource);
+
+            assertEquals(expected.length - start, actual.length);
+            assertArrayEquals(Arrays.copyOfRange(expected, start, expected.length), actual, 1e-3);
+        }
+    }
+
+    @Test
+    public void testCanOpen() throws Exception {
+        assertTrue(Mp4AacSampleSource.canOpen(file));
+        assertFalse(Mp4AacSampleSource.canOpen(new File("track.wav")));
+    }
+
+    private double[] readAll(SampleSource sampleSource) throws Exception {
+        double[] samples = new double[1 << 16];
+        int length = 0;
+        int numberOfSamplesRead;
+        while ((numberOfSamplesRead = sampleSource.read(samples, length, samples.length - length)) > 0) {
+            length += numberOfSamplesRead;
+            if (length == samples.length) {
+                samples = Arrays.copyOf(samples, samples.length * 2);
+            }
+        }
+        return Arrays.copyOf(samples, length);
+    }
+}
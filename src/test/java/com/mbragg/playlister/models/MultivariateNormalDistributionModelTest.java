@@ -1,5 +1,6 @@
 package com.mbragg.playlister.models;
 
+import com.mbragg.playlister.tools.numbers.OnlineCovariance;
 import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.ArrayRealVector;
@@ -49,6 +50,26 @@ public class MultivariateNormalDistributionModelTest {
         assertEquals(1.0, actualCoMatrix.getEntry(1, 1), DELTA);
     }
 
+    @Test
+    public void testBuildFromAccumulator() throws Exception {
+        OnlineCovariance accumulator = new OnlineCovariance(2);
+        accumulator.add(new double[]{4, 7});
+        accumulator.add(new double[]{2, 6});
+        accumulator.add(new double[]{7, 8});
+
+        MultivariateNormalDistribution actualModel = multivariateNormalDistributionModel.buildFromAccumulator(accumulator);
+        double[] actualMeans = actualModel.getMeans();
+        RealMatrix actualCoMatrix = actualModel.getCovariances();
+
+        assertEquals(4.333333333333333, actualMeans[0], DELTA);
+        assertEquals(7.0, actualMeans[1], DELTA);
+
+        assertEquals(6.333333333333333, actualCoMatrix.getEntry(0, 0), 1e-14);
+        assertEquals(2.5, actualCoMatrix.getEntry(0, 1), 1e-14);
+        assertEquals(2.5, actualCoMatrix.getEntry(1, 0), 1e-14);
+        assertEquals(1.0, actualCoMatrix.getEntry(1, 1), 1e-14);
+    }
+
     @Test
     public void testTwoIdenticalModelsShouldHaveAKullbackLeiblerDivergenceOfZero() {
         double[] actualVector1A = {4, 7};
@@ -5,8 +5,13 @@ import org.junit.Test;
 import org.mockito.Mock;
 
 import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -74,11 +79,43 @@ public class SamplesTest {
         assertEquals(2.0 / 128, samples[1][0], DELTA);
     }
 
-    @Test(expected = IllegalArgumentException.class)
+    @Test
     public void testGetSamplesInStereoLittleEndian() {
-        byte[] audioBytes = {1,2};
+        byte[] audioBytes = {1, 2, 3, 4};
         when(audioFormat.isBigEndian()).thenReturn(false);
-        samples.getSamplesInStereo(audioBytes,audioFormat);
+        when(audioFormat.getSampleSizeInBits()).thenReturn(16);
+
+        double[][] samples = this.samples.getSamplesInStereo(audioBytes, audioFormat);
+
+        assertEquals(0x0201 / 32768.0, samples[0][0], DELTA);
+        assertEquals(0x0403 / 32768.0, samples[1][0], DELTA);
+    }
+
+    @Test
+    public void testGetSamplesInStereoFloat() {
+        when(audioFormat.getEncoding()).thenReturn(AudioFormat.Encoding.PCM_FLOAT);
+        when(audioFormat.getSampleSizeInBits()).thenReturn(32);
+        byte[] audioBytes = ByteBuffer.allocate(8).putFloat(0.25f).putFloat(-0.5f).array();
+
+        double[][] samples = this.samples.getSamplesInStereo(audioBytes, audioFormat);
+
+        assertEquals(0.25, samples[0][0], DELTA);
+        assertEquals(-0.5, samples[1][0], DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetSamplesInStereo64BitFloat() {
+        byte[] audioBytes = new byte[16];
+        when(audioFormat.getEncoding()).thenReturn(AudioFormat.Encoding.PCM_FLOAT);
+        when(audioFormat.getSampleSizeInBits()).thenReturn(64);
+        samples.getSamplesInStereo(audioBytes, audioFormat);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetSamplesInStereoPartFrameFor24Bit() {
+        byte[] audioBytes = {1, 2, 3, 4};
+        when(audioFormat.getSampleSizeInBits()).thenReturn(24);
+        samples.getSamplesInStereo(audioBytes, audioFormat);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -118,10 +155,20 @@ public class SamplesTest {
         assertEquals(0.01568603515625, actual[0][1], DELTA);
     }
 
-    @Test(expected = IllegalArgumentException.class)
+    @Test
     public void testConvertBytesToDoubles24Bit() {
-        byte[] audioBytes = {1, 1, 2, 2};
-        samples.convertBytesToDoubles(1, audioBytes.length, 24, audioBytes);
+        byte[] audioBytes = {64, 0, 0, -128, 0, 0};
+        double[][] actual = samples.convertBytesToDoubles(1, audioBytes.length / 3, 24, audioBytes);
+        assertEquals(0.5, actual[0][0], DELTA);
+        assertEquals(-1.0, actual[0][1], DELTA);
+    }
+
+    @Test
+    public void testConvertBytesToDoubles32Bit() {
+        byte[] audioBytes = {64, 0, 0, 0, -64, 0, 0, 0};
+        double[][] actual = samples.convertBytesToDoubles(1, audioBytes.length / 4, 32, audioBytes);
+        assertEquals(0.5, actual[0][0], DELTA);
+        assertEquals(-0.5, actual[0][1], DELTA);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -143,4 +190,49 @@ public class SamplesTest {
         assertEquals(126.0, actual, DELTA);
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testGetSamplesInMonoMatchesAveragedStereo() {
+        // Whole frames for every bit depth and number of channels
+        byte[] audioBytes = new byte[72 * 20];
+        new Random(1).nextBytes(audioBytes);
+
+        for (AudioFormat.Encoding encoding : new AudioFormat.Encoding[]{AudioFormat.Encoding.PCM_SIGNED, AudioFormat.Encoding.PCM_FLOAT}) {
+            for (int bitDepth : encoding == AudioFormat.Encoding.PCM_FLOAT ? new int[]{32} : new int[]{8, 16, 24, 32}) {
+                for (boolean bigEndian : new boolean[]{true, false}) {
+                    for (int channels = 1; channels <= 3; channels++) {
+                        AudioFormat format = new AudioFormat(encoding, 44100.0f, bitDepth, channels,
+                                channels * bitDepth / 8, 44100.0f, bigEndian);
+
+                        double[] expected = samples.getSamplesInMono(samples.getSamplesInStereo(audioBytes, format));
+                        double[] actual = samples.getSamplesInMono(audioBytes, format);
+
+                        assertArrayEquals(format.toString(), expected, actual, 0.0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIsSupportedFormat() {
+        assertTrue(samples.isSupportedFormat(new AudioFormat(44100.0f, 24, 2, true, false)));
+        assertTrue(samples.isSupportedFormat(new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, 44100.0f, 32, 2, 8, 44100.0f, false)));
+        assertFalse(samples.isSupportedFormat(new AudioFormat(44100.0f, 8, 2, false, false)));
+        assertFalse(samples.isSupportedFormat(new AudioFormat(44100.0f, 12, 2, true, true)));
+    }
+
+    @Test
+    public void testGetSamplesInMonoIntoBuffer() {
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100.0f, 16, 2, 4, 44100.0f, true);
+        byte[] audioBytes = {9, 9, 0, 1, 0, 3, 0, 2, 0, 4};
+        double[] output = new double[3];
+
+        int actual = samples.getSamplesInMono(audioBytes, 2, 8, format, output, 1);
+
+        assertEquals(2, actual);
+        assertEquals(0.0, output[0], DELTA);
+        assertEquals(2.0 / 32768, output[1], DELTA);
+        assertEquals(3.0 / 32768, output[2], DELTA);
+    }
+}
@@ -0,0 +1,83 @@
+package com.mbragg.playlister.models;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Michael Bragg
+ */
+public class ScannedFilesTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testContains() {
+        ScannedFiles scannedFiles = new ScannedFiles.Builder()
+                .add("b.m4a", "/music/b.m4a", 10L, 20L)
+                .add("a.m4a", "/music/album/a.m4a", null, null)
+                .add("c.m4a", "/music/c.m4a", 30L, 40L)
+                .build();
+
+        assertEquals(3, scannedFiles.size());
+        assertTrue(scannedFiles.containsFilename("a.m4a"));
+        assertFalse(scannedFiles.containsFilename("d.m4a"));
+        assertTrue(scannedFiles.containsFilePath("/music/album/a.m4a"));
+        assertTrue(scannedFiles.containsFilePath("/music/b.m4a"));
+        assertTrue(scannedFiles.containsFilePath("/music/c.m4a"));
+        assertFalse(scannedFiles.containsFilePath("/music/a.m4a"));
+    }
+
+    @Test
+    public void testIsUnchanged() throws Exception {
+        File unchanged = temporaryFolder.newFile("unchanged.m4a");
+        File resized = temporaryFolder.newFile("resized.m4a");
+        File unrecorded = temporaryFolder.newFile("unrecorded.m4a");
+        Files.write(unchanged.toPath(), new byte[100]);
+
+        ScannedFiles scannedFiles = new ScannedFiles.Builder()
+                .add(unchanged.getName(), unchanged.getAbsolutePath(), unchanged.length(), unchanged.lastModified())
+                .add(resized.getName(), resized.getAbsolutePath(), resized.length() + 1, resized.lastModified())
+                .add(unrecorded.getName(), unrecorded.getAbsolutePath(), null, null)
+                .build();
+
+        assertTrue(scannedFiles.isUnchanged(unchanged));
+        assertFalse(scannedFiles.isUnchanged(resized));
+        assertFalse(scannedFiles.isUnchanged(unrecorded));
+        assertFalse(scannedFiles.isUnchanged(temporaryFolder.newFile("new.m4a")));
+    }
+
+    @Test
+    public void testGetFilePaths() {
+        ScannedFiles scannedFiles = new ScannedFiles.Builder()
+                .add("a.m4a", "/music/album/a.m4a", null, null)
+                .add("b.m4a", "/music/album/disc 2/b.m4a", null, null)
+                .add("c.m4a", "/music/album 2/c.m4a", null, null)
+                .add("d.m4a", "/music/d.m4a", null, null)
+                .build();
+
+        assertEquals(Arrays.asList("/music/album/a.m4a", "/music/album/disc 2/b.m4a"), scannedFiles.getFilePaths("/music/album"));
+        assertEquals(Collections.singletonList("/music/d.m4a"), scannedFiles.getFilePaths("/music/d.m4a"));
+        assertEquals(4, scannedFiles.getFilePaths("/music").size());
+        assertTrue(scannedFiles.getFilePaths("/other").isEmpty());
+    }
+
+    @Test
+    public void testEmpty() {
+        ScannedFiles scannedFiles = ScannedFiles.empty();
+
+        assertEquals(0, scannedFiles.size());
+        assertFalse(scannedFiles.containsFilename("a.m4a"));
+        assertFalse(scannedFiles.containsFilePath("/music/a.m4a"));
+    }
+}
@@ -0,0 +1,114 @@
+package com.mbragg.playlister.services;
+
+import com.mbragg.playlister.controllers.ApplicationController;
+import com.mbragg.playlister.controllers.audioControllers.ScanListener;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Michael Bragg
+ */
+public class LibraryWatchServiceTest {
+
+    private static final int TIMEOUT_MS = 10000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ApplicationController applicationController;
+    private Logger logger;
+    private LibraryWatchService libraryWatchService;
+
+    @Before
+    public void setUp() {
+        applicationController = mock(ApplicationController.class);
+        logger = mock(Logger.class);
+
+        libraryWatchService = new LibraryWatchService();
+        ReflectionTestUtils.setField(libraryWatchService, "applicationController", applicationController);
+        ReflectionTestUtils.setField(libraryWatchService, "logger", logger);
+        ReflectionTestUtils.setField(libraryWatchService, "suffix", ".m4a");
+        ReflectionTestUtils.setField(libraryWatchService, "enabled", true);
+        ReflectionTestUtils.setField(libraryWatchService, "debounceMs", 50L);
+    }
+
+    @After
+    public void tearDown() {
+        libraryWatchService.stop();
+    }
+
+    @Test
+    public void testCreatedFilesAreProcessed() throws Exception {
+        File album = temporaryFolder.newFolder("album");
+        watch();
+
+        File track = new File(album, "track.m4a");
+        assertTrue(track.createNewFile());
+        assertTrue(new File(album, "cover.jpg").createNewFile());
+
+        List<File> changedFiles = Collections.singletonList(track.getAbsoluteFile());
+        verify(applicationController, timeout(TIMEOUT_MS)).scanWatchedFiles(eq(changedFiles), eq(Collections.<String>emptyList()), any(ScanListener.class));
+    }
+
+    @Test
+    public void testFilesInCreatedDirectoriesAreProcessed() throws Exception {
+        watch();
+
+        File album = new File(temporaryFolder.getRoot(), "album");
+        File disc = new File(album, "disc 1");
+        assertTrue(disc.mkdirs());
+        File track = new File(disc, "track.m4a");
+        assertTrue(track.createNewFile());
+
+        verify(applicationController, timeout(TIMEOUT_MS)).scanWatchedFiles(
+                eq(Collections.singletonList(track.getAbsoluteFile())), eq(Collections.<String>emptyList()), any(ScanListener.class));
+    }
+
+    @Test
+    public void testRemovedFilesAreRemoved() throws Exception {
+        File track = temporaryFolder.newFile("track.m4a");
+        watch();
+
+        assertTrue(track.delete());
+
+        verify(applicationController, timeout(TIMEOUT_MS)).scanWatchedFiles(
+                eq(Collections.<File>emptyList()), eq(Collections.singletonList(track.getAbsolutePath())), any(ScanListener.class));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        ReflectionTestUtils.setField(libraryWatchService, "enabled", false);
+
+        libraryWatchService.watch(temporaryFolder.getRoot().getPath());
+
+        assertFalse(libraryWatchService.isWatching());
+    }
+
+    /*
+     * Starts watching the temporary folder, and waits for its directories to be registered.
+     */
+    private void watch() throws Exception {
+        libraryWatchService.watch(temporaryFolder.getRoot().getPath());
+        assertTrue(libraryWatchService.isWatching());
+        verify(logger, timeout(TIMEOUT_MS)).log(any(Level.class), startsWith("Watching"));
+    }
+}
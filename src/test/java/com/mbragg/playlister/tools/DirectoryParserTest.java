@@ -0,0 +1,113 @@
+package com.mbragg.playlister.tools;
+
+import com.mbragg.playlister.tools.file.DirectoryParser;
+import com.mbragg.playlister.tools.file.FileSource;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Michael Bragg
+ */
+public class DirectoryParserTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private DirectoryParser directoryParser;
+    private File library;
+    private File podcasts;
+    private List<File> audioFiles;
+
+    @Before
+    public void setUp() throws Exception {
+        directoryParser = new DirectoryParser();
+        ReflectionTestUtils.setField(directoryParser, "logger", mock(Logger.class));
+
+        library = temporaryFolder.newFolder("library");
+        podcasts = temporaryFolder.newFolder("podcasts");
+        audioFiles = new ArrayList<>();
+        for (String album : Arrays.asList("a", "b/c", "b/d/e")) {
+            File albumFolder = new File(library, album);
+            assertTrue(albumFolder.mkdirs());
+            for (int i = 0; i < 5; i++) {
+                audioFiles.add(newFile(albumFolder, "track" + i + ".m4a"));
+            }
+            newFile(albumFolder, "cover.jpg");
+            newFile(albumFolder, ".track.m4a");
+        }
+        audioFiles.add(newFile(podcasts, "episode.mp3"));
+        audioFiles.sort(null);
+    }
+
+    @Test
+    public void testWalkMultipleRootsAndSuffixes() throws Exception {
+        List<File> files = walk(library.getPath() + File.pathSeparator + podcasts.getPath(), ".m4a, .mp3");
+
+        assertEquals(audioFiles, files);
+    }
+
+    @Test
+    public void testWalkSingleSuffix() throws Exception {
+        List<File> files = walk(library.getPath() + File.pathSeparator + podcasts.getPath(), ".mp3");
+
+        assertEquals(1, files.size());
+        assertEquals("episode.mp3", files.get(0).getName());
+    }
+
+    @Test
+    public void testNestedRootIsWalkedOnce() throws Exception {
+        List<File> files = walk(library.getPath() + File.pathSeparator + new File(library, "b").getPath(), ".m4a");
+
+        assertEquals(15, files.size());
+    }
+
+    @Test
+    public void testMissingRootIsSkipped() throws Exception {
+        List<File> files = walk(new File(temporaryFolder.getRoot(), "missing").getPath() + File.pathSeparator + podcasts.getPath(), ".mp3");
+
+        assertEquals(1, files.size());
+    }
+
+    @Test
+    public void testSourceReportsUnreadableDirectories() throws Exception {
+        File missing = new File(temporaryFolder.getRoot(), "missing");
+        FileSource source = directoryParser.source(missing.getPath() + File.pathSeparator + podcasts.getPath(), ".mp3");
+        List<File> files = new ArrayList<>();
+
+        source.walk(files::add);
+
+        assertEquals(1, files.size());
+        assertEquals(Arrays.asList(missing.toPath().toAbsolutePath(), podcasts.toPath().toAbsolutePath()), source.getRoots());
+        assertEquals(Collections.singletonList(missing.toPath().toAbsolutePath()), source.getUnreadableDirectories());
+    }
+
+    /*
+     * Walks the source of the directories, returning the files found sorted by path.
+     */
+    private List<File> walk(String musicDirectoryFilePaths, String suffixes) throws Exception {
+        List<File> files = Collections.synchronizedList(new ArrayList<>());
+        directoryParser.source(musicDirectoryFilePaths, suffixes).walk(files::add);
+        files.sort(null);
+        return files;
+    }
+
+    private static File newFile(File folder, String name) throws Exception {
+        File file = new File(folder, name);
+        assertTrue(file.createNewFile());
+        return file.getAbsoluteFile();
+    }
+}
@@ -0,0 +1,117 @@
+package com.mbragg.playlister.tools;
+
+import com.mbragg.playlister.models.FeatureMatrix;
+import com.mbragg.playlister.tools.file.FeatureCache;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * @author Michael Bragg
+ */
+public class FeatureCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private Logger logger;
+
+    private File file;
+
+    private FeatureMatrix featureMatrix;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+
+        byte[] content = new byte[3000];
+        new Random(1).nextBytes(content);
+        file = temporaryFolder.newFile("track.m4a");
+        Files.write(file.toPath(), content);
+
+        float[] values = new float[15 * 100];
+        Random random = new Random(2);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextFloat();
+        }
+        featureMatrix = new FeatureMatrix(15, values);
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        FeatureCache featureCache = new FeatureCache(logger, temporaryFolder.newFolder().getPath(), false);
+        String key = featureCache.getKey(file, "configuration");
+
+        assertNull(featureCache.read(key));
+        featureCache.write(key, featureMatrix);
+        FeatureMatrix actual = featureCache.read(key);
+
+        assertEquals(15, actual.getDimension());
+        assertArrayEquals(featureMatrix.toArray(), actual.toArray(), 0.0f);
+    }
+
+    @Test
+    public void testWriteReadCompressed() throws Exception {
+        FeatureCache featureCache = new FeatureCache(logger, temporaryFolder.newFolder().getPath(), true);
+        String key = featureCache.getKey(file, "configuration");
+
+        featureCache.write(key, featureMatrix);
+
+        assertArrayEquals(featureMatrix.toArray(), featureCache.read(key).toArray(), 0.0f);
+    }
+
+    @Test
+    public void testKeyDependsOnContentAndConfiguration() throws Exception {
+        FeatureCache featureCache = new FeatureCache(logger, temporaryFolder.newFolder().getPath(), true);
+        String key = featureCache.getKey(file, "configuration");
+
+        File copy = temporaryFolder.newFile("copy.m4a");
+        Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertEquals(key, featureCache.getKey(copy, "configuration"));
+
+        assertNotEquals(key, featureCache.getKey(file, "other configuration"));
+
+        Files.write(copy.toPath(), new byte[]{1});
+        assertNotEquals(key, featureCache.getKey(copy, "configuration"));
+    }
+
+    @Test
+    public void testCorruptEntryIsAMiss() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        FeatureCache featureCache = new FeatureCache(logger, directory.getPath(), true);
+        String key = featureCache.getKey(file, "configuration");
+        featureCache.write(key, featureMatrix);
+
+        File entry = new File(new File(directory, key.substring(0, 2)), key + ".features");
+        byte[] bytes = Files.readAllBytes(entry.toPath());
+        Files.write(entry.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertNull(featureCache.read(key));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        FeatureCache featureCache = FeatureCache.disabled();
+
+        assertFalse(featureCache.isEnabled());
+        featureCache.write("key", featureMatrix);
+        assertNull(featureCache.read("key"));
+    }
+}
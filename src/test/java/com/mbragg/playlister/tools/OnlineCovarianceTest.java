@@ -0,0 +1,106 @@
+package com.mbragg.playlister.tools;
+
+import com.mbragg.playlister.tools.numbers.OnlineCovariance;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.stat.correlation.Covariance;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Michael Bragg
+ */
+public class OnlineCovarianceTest {
+
+    private static final double DELTA = 1e-10;
+
+    @Test
+    public void testMatchesTwoPassMeanAndCovariance() {
+        Random random = new Random(1);
+        double[][] data = new double[1000][4];
+        for (double[] row : data) {
+            for (int i = 0; i < row.length; i++) {
+                // Large offset to check for the loss of precision of the naive sum of squares
+                row[i] = 1e6 + random.nextGaussian() * (i + 1);
+            }
+        }
+
+        OnlineCovariance accumulator = new OnlineCovariance(4);
+        for (double[] row : data) {
+            accumulator.add(row);
+        }
+
+        RealMatrix matrix = new Array2DRowRealMatrix(data);
+        RealMatrix expected = new Covariance(matrix).getCovarianceMatrix();
+        double[][] actual = accumulator.getCovariance();
+
+        assertEquals(1000, accumulator.getCount());
+        for (int column = 0; column < 4; column++) {
+            double expectedMean = 0.0;
+            for (double[] row : data) {
+                expectedMean += row[column] / data.length;
+            }
+            assertEquals(expectedMean, accumulator.getMean()[column], 1e-6);
+
+            for (int row = 0; row < 4; row++) {
+                assertEquals(expected.getEntry(row, column), actual[row][column], DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void testAddWithOffset() {
+        OnlineCovariance accumulator = new OnlineCovariance(2);
+        accumulator.add(new double[]{0, 4, 7}, 1);
+        accumulator.add(new double[]{0, 2, 6}, 1);
+
+        assertEquals(3.0, accumulator.getMean()[0], DELTA);
+        assertEquals(6.5, accumulator.getMean()[1], DELTA);
+        assertEquals(2.0, accumulator.getCovariance()[0][0], DELTA);
+        assertEquals(1.0, accumulator.getCovariance()[0][1], DELTA);
+        assertEquals(0.5, accumulator.getCovariance()[1][1], DELTA);
+    }
+
+    @Test
+    public void testMerge() {
+        Random random = new Random(2);
+        OnlineCovariance whole = new OnlineCovariance(3);
+        OnlineCovariance first = new OnlineCovariance(3);
+        OnlineCovariance second = new OnlineCovariance(3);
+        for (int n = 0; n < 500; n++) {
+            double[] vector = {1e6 + random.nextGaussian(), random.nextGaussian() * 2, n};
+            whole.add(vector);
+            (n < 200 ? first : second).add(vector);
+        }
+
+        // Merging into an empty accumulator copies it exactly
+        OnlineCovariance merged = new OnlineCovariance(3);
+        merged.merge(first);
+        assertEquals(first.getCount(), merged.getCount());
+        assertEquals(first.getCovariance()[0][1], merged.getCovariance()[0][1], 0.0);
+
+        merged.merge(second);
+        assertEquals(whole.getCount(), merged.getCount());
+        for (int row = 0; row < 3; row++) {
+            assertEquals(whole.getMean()[row], merged.getMean()[row], DELTA * 1e6);
+            for (int column = 0; column < 3; column++) {
+                assertEquals(whole.getCovariance()[row][column], merged.getCovariance()[row][column], DELTA * 1e2);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeNeedsSameDimension() {
+        new OnlineCovariance(2).merge(new OnlineCovariance(3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCovarianceNeedsTwoVectors() {
+        OnlineCovariance accumulator = new OnlineCovariance(2);
+        accumulator.add(new double[]{4, 7});
+        accumulator.getCovariance();
+    }
+}
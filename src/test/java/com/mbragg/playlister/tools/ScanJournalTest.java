@@ -0,0 +1,146 @@
+package com.mbragg.playlister.tools;
+
+import com.mbragg.playlister.tools.file.ScanJournal;
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * @author Michael Bragg
+ */
+public class ScanJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private Logger logger;
+
+    private File journalFile;
+    private ScanJournal scanJournal;
+    private MultivariateNormalDistribution model;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        journalFile = new File(temporaryFolder.newFolder(), "tracks.journal");
+        scanJournal = new ScanJournal(logger, journalFile.getPath());
+        model = new MultivariateNormalDistribution(new double[]{1.5, -2.0}, new double[][]{{2.0, 0.5}, {0.5, 1.0}});
+    }
+
+    @Test
+    public void testScanCutShortResumes() throws Exception {
+        File decoded = newAudioFile("decoded.m4a", 1);
+        File modelled = newAudioFile("modelled.m4a", 2);
+        File persisted = newAudioFile("persisted.m4a", 3);
+
+        scanJournal.open();
+        scanJournal.decoded(decoded);
+        scanJournal.decoded(modelled);
+        scanJournal.modelled(modelled, model);
+        scanJournal.decoded(persisted);
+        scanJournal.modelled(persisted, model);
+        scanJournal.persisted(persisted);
+        scanJournal.close(false);
+
+        ScanJournal resumedScanJournal = new ScanJournal(logger, journalFile.getPath());
+        resumedScanJournal.open();
+
+        assertEquals(ScanJournal.Stage.DECODED, resumedScanJournal.getStage(decoded));
+        assertNull(resumedScanJournal.getModel(decoded));
+        assertEquals(ScanJournal.Stage.MODELLED, resumedScanJournal.getStage(modelled));
+        assertArrayEquals(model.getMeans(), resumedScanJournal.getModel(modelled).getMeans(), 0);
+        assertEquals(model.getCovariances(), resumedScanJournal.getModel(modelled).getCovariances());
+        assertEquals(ScanJournal.Stage.PERSISTED, resumedScanJournal.getStage(persisted));
+        assertNull(resumedScanJournal.getModel(persisted));
+    }
+
+    @Test
+    public void testChangedFileIsNotResumed() throws Exception {
+        File file = newAudioFile("a.m4a", 1);
+        scanJournal.open();
+        scanJournal.modelled(file, model);
+        scanJournal.close(false);
+
+        Files.write(file.toPath(), new byte[100]);
+        scanJournal.open();
+
+        assertNull(scanJournal.getStage(file));
+        assertNull(scanJournal.getModel(file));
+    }
+
+    @Test
+    public void testTornRecordIsTruncated() throws Exception {
+        File first = newAudioFile("first.m4a", 1);
+        File second = newAudioFile("second.m4a", 2);
+        scanJournal.open();
+        scanJournal.persisted(first);
+        long validLength = journalFile.length();
+        scanJournal.modelled(second, model);
+        scanJournal.close(false);
+
+        try (RandomAccessFile journal = new RandomAccessFile(journalFile, "rw")) {
+            journal.setLength(journal.length() - 5);
+        }
+        scanJournal.open();
+
+        assertEquals(ScanJournal.Stage.PERSISTED, scanJournal.getStage(first));
+        assertNull(scanJournal.getStage(second));
+        assertEquals(validLength, journalFile.length());
+
+        scanJournal.persisted(second);
+        scanJournal.close(false);
+        scanJournal.open();
+        assertEquals(ScanJournal.Stage.PERSISTED, scanJournal.getStage(second));
+    }
+
+    @Test
+    public void testCompleteScanDeletesJournal() throws Exception {
+        File file = newAudioFile("a.m4a", 1);
+        scanJournal.open();
+        scanJournal.persisted(file);
+        scanJournal.close(true);
+
+        assertFalse(journalFile.exists());
+        scanJournal.open();
+        assertNull(scanJournal.getStage(file));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        ScanJournal disabled = ScanJournal.disabled();
+        File file = newAudioFile("a.m4a", 1);
+        disabled.open();
+        disabled.modelled(file, model);
+        disabled.close(false);
+        disabled.open();
+
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.getStage(file));
+        assertTrue(scanJournal.isEnabled());
+    }
+
+    private File newAudioFile(String name, int seed) throws Exception {
+        byte[] content = new byte[3000];
+        new Random(seed).nextBytes(content);
+        File file = temporaryFolder.newFile(name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+}
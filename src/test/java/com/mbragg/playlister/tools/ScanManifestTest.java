@@ -0,0 +1,185 @@
+package com.mbragg.playlister.tools;
+
+import com.mbragg.playlister.models.ScanDelta;
+import com.mbragg.playlister.tools.file.ScanManifest;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * @author Michael Bragg
+ */
+public class ScanManifestTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private Logger logger;
+
+    private ScanManifest scanManifest;
+    private File manifestFile;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        manifestFile = new File(temporaryFolder.newFolder(), "tracks.manifest");
+        scanManifest = new ScanManifest(logger, manifestFile.getPath());
+    }
+
+    @Test
+    public void testUnrecordedFilesAreAdded() throws Exception {
+        File file = newAudioFile("a.m4a", 1);
+
+        ScanDelta scanDelta = scanManifest.diff(roots(), Collections.singletonList(file));
+
+        assertEquals(Collections.singletonList(file), scanDelta.getAdded());
+        assertEquals(0, scanDelta.getNumberOfUnchanged());
+    }
+
+    @Test
+    public void testTouchedFileIsUnchangedAndEditedFileIsChanged() throws Exception {
+        File touched = newAudioFile("touched.m4a", 1);
+        File edited = newAudioFile("edited.m4a", 2);
+        scanManifest.record(touched);
+        scanManifest.record(edited);
+
+        assertTrue(touched.setLastModified(touched.lastModified() - 10000));
+        byte[] content = Files.readAllBytes(edited.toPath());
+        content[0]++;
+        Files.write(edited.toPath(), content);
+        assertTrue(edited.setLastModified(edited.lastModified() - 10000));
+
+        ScanDelta scanDelta = scanManifest.diff(roots(), Arrays.asList(touched, edited));
+
+        assertEquals(1, scanDelta.getNumberOfUnchanged());
+        assertEquals(Collections.singletonList(edited), scanDelta.getChanged());
+        assertTrue(scanDelta.getAdded().isEmpty());
+    }
+
+    @Test
+    public void testMovedAndDeletedFiles() throws Exception {
+        File moved = newAudioFile("moved.m4a", 1);
+        File deleted = newAudioFile("deleted.m4a", 2);
+        scanManifest.record(moved);
+        scanManifest.record(deleted);
+
+        File newFolder = temporaryFolder.newFolder("album");
+        File movedTo = new File(newFolder, "moved.m4a");
+        Files.move(moved.toPath(), movedTo.toPath());
+        assertTrue(deleted.delete());
+
+        ScanDelta scanDelta = scanManifest.diff(roots(), Collections.singletonList(movedTo));
+
+        assertEquals(movedTo, scanDelta.getMoved().get(moved.getAbsolutePath()));
+        assertEquals(Collections.singletonList(deleted.getAbsolutePath()), scanDelta.getDeleted());
+        assertTrue(scanDelta.getAdded().isEmpty());
+
+        scanManifest.move(moved.getAbsolutePath(), movedTo);
+        scanManifest.remove(deleted.getAbsolutePath());
+
+        scanDelta = scanManifest.diff(roots(), Collections.singletonList(movedTo));
+        assertEquals(1, scanDelta.getNumberOfUnchanged());
+        assertTrue(scanDelta.getMoved().isEmpty());
+        assertTrue(scanDelta.getDeleted().isEmpty());
+    }
+
+    @Test
+    public void testFilesOutsideTheWalkedRootsAreKept() throws Exception {
+        File other = new File(temporaryFolder.newFolder("other"), "other.m4a");
+        Files.write(other.toPath(), new byte[3000]);
+        scanManifest.record(other);
+        File library = temporaryFolder.newFolder("library");
+
+        ScanDelta scanDelta = scanManifest.diff(Collections.singletonList(library.toPath()), Collections.<File>emptyList());
+        assertTrue(scanDelta.getDeleted().isEmpty());
+
+        scanDelta = scanManifest.diff(Collections.singletonList(new File("/no/such/dir").toPath()), Collections.<File>emptyList());
+        assertTrue(scanDelta.getDeleted().isEmpty());
+    }
+
+    @Test
+    public void testFilesInUnreadableDirectoriesAreKept() throws Exception {
+        File album = temporaryFolder.newFolder("album");
+        File unreadable = new File(album, "track.m4a");
+        Files.write(unreadable.toPath(), new byte[3000]);
+        File deleted = newAudioFile("deleted.m4a", 2);
+        scanManifest.record(unreadable);
+        scanManifest.record(deleted);
+        assertTrue(deleted.delete());
+
+        ScanDelta scanDelta = scanManifest.newDiff(roots()).finish(Collections.singletonList(album.toPath()));
+
+        assertEquals(Collections.singletonList(deleted.getAbsolutePath()), scanDelta.getDeleted());
+    }
+
+    @Test
+    public void testDiffOfChangedFilesOnlyRemovesRemovedFiles() throws Exception {
+        File moved = newAudioFile("moved.m4a", 1);
+        File unwalked = newAudioFile("unwalked.m4a", 2);
+        scanManifest.record(moved);
+        scanManifest.record(unwalked);
+
+        File movedTo = new File(temporaryFolder.newFolder("album"), "moved.m4a");
+        Files.move(moved.toPath(), movedTo.toPath());
+
+        ScanManifest.Diff diff = scanManifest.newDiff(Collections.singletonList(moved.getAbsolutePath()));
+        assertEquals(ScanManifest.Status.PENDING, diff.check(movedTo));
+        ScanDelta scanDelta = diff.finish();
+
+        assertEquals(movedTo, scanDelta.getMoved().get(moved.getAbsolutePath()));
+        assertTrue(scanDelta.getDeleted().isEmpty());
+        assertEquals(2, scanManifest.getRecordedFilePaths(temporaryFolder.getRoot().toPath()).size());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = newAudioFile("a.m4a", 1);
+        scanManifest.record(file);
+        scanManifest.save();
+
+        ScanManifest loadedScanManifest = new ScanManifest(logger, manifestFile.getPath());
+
+        assertEquals(1, loadedScanManifest.size());
+        assertEquals(1, loadedScanManifest.diff(roots(), Collections.singletonList(file)).getNumberOfUnchanged());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        ScanManifest disabled = ScanManifest.disabled();
+        File file = newAudioFile("a.m4a", 1);
+        disabled.record(file);
+        disabled.save();
+
+        assertFalse(disabled.isEnabled());
+        assertEquals(0, disabled.size());
+    }
+
+    private List<Path> roots() {
+        return Collections.singletonList(temporaryFolder.getRoot().toPath());
+    }
+
+    private File newAudioFile(String name, int seed) throws Exception {
+        byte[] content = new byte[3000];
+        new Random(seed).nextBytes(content);
+        File file = temporaryFolder.newFile(name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+}
@@ -0,0 +1,78 @@
+package org.oc.ocvolume.dsp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Michael Bragg
+ */
+public class featureExtractionTest {
+
+    private static final double SAMPLING_RATE = 44100.0;
+    private static final int FRAME_SIZE = 512;
+
+    private featureExtraction fe;
+    private double[] magnitudeSpectrum;
+
+    @Before
+    public void setUp() {
+        fe = new featureExtraction();
+
+        Random random = new Random(1);
+        double[] frame = new double[FRAME_SIZE];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = random.nextDouble() * 2.0 - 1.0;
+        }
+        magnitudeSpectrum = fe.magnitudeSpectrum(frame);
+    }
+
+    @Test
+    public void testFilterBankMelFilterMatchesMelFilter() {
+        double[] expected = fe.melFilter(magnitudeSpectrum, fe.fftBinIndices(SAMPLING_RATE, FRAME_SIZE));
+
+        double[] actual = fe.filterBank(SAMPLING_RATE, FRAME_SIZE).melFilter(magnitudeSpectrum);
+
+        assertArrayEquals(expected, actual, 0.0);
+    }
+
+    @Test
+    public void testFilterBankCepCoefficientsMatchesCepCoefficients() {
+        double[] f = fe.nonLinearTransformation(fe.melFilter(magnitudeSpectrum, fe.fftBinIndices(SAMPLING_RATE, FRAME_SIZE)));
+
+        double[] expected = fe.cepCoefficients(f);
+        double[] actual = fe.filterBank(SAMPLING_RATE, FRAME_SIZE).cepCoefficients(f);
+
+        assertArrayEquals(expected, actual, 0.0);
+    }
+
+    @Test
+    public void testFilterBankCepCoefficientsWritesAtOffset() {
+        double[] f = fe.nonLinearTransformation(fe.melFilter(magnitudeSpectrum, fe.fftBinIndices(SAMPLING_RATE, FRAME_SIZE)));
+        double[] expected = fe.cepCoefficients(f);
+
+        double[] output = new double[expected.length + 2];
+        fe.filterBank(SAMPLING_RATE, FRAME_SIZE).cepCoefficients(f, output, 2);
+
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(new double[]{expected[i]}, new double[]{output[i + 2]}, 0.0);
+        }
+    }
+
+    @Test
+    public void testFilterBankIsSharedBetweenInstances() {
+        featureExtraction other = new featureExtraction();
+
+        assertSame(fe.filterBank(SAMPLING_RATE, FRAME_SIZE), other.filterBank(SAMPLING_RATE, FRAME_SIZE));
+    }
+
+    @Test
+    public void testFilterBankPerSamplingRate() {
+        assertNotSame(fe.filterBank(SAMPLING_RATE, FRAME_SIZE), fe.filterBank(48000.0, FRAME_SIZE));
+    }
+}
@@ -0,0 +1,88 @@
+package org.oc.ocvolume.dsp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Michael Bragg
+ */
+public class fftTest {
+
+    private static final double DELTA = 1e-9;
+    private static final int NUMBER_OF_POINTS = 512;
+
+    private double[] signal;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(1);
+        signal = new double[NUMBER_OF_POINTS];
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] = random.nextDouble() * 2.0 - 1.0;
+        }
+    }
+
+    @Test
+    public void testComputeFFTMatchesDiscreteFourierTransform() {
+        fft transform = new fft(NUMBER_OF_POINTS);
+        transform.computeFFT(signal);
+
+        for (int k = 0; k < NUMBER_OF_POINTS; k++) {
+            double expectedReal = 0.0;
+            double expectedImag = 0.0;
+            for (int n = 0; n < NUMBER_OF_POINTS; n++) {
+                double angle = -2 * Math.PI * k * n / NUMBER_OF_POINTS;
+                expectedReal += signal[n] * Math.cos(angle);
+                expectedImag += signal[n] * Math.sin(angle);
+            }
+            assertEquals(expectedReal, transform.real[k], DELTA);
+            assertEquals(expectedImag, transform.imag[k], DELTA);
+        }
+    }
+
+    @Test
+    public void testComputeFFTDoesNotModifySignal() {
+        double[] copy = signal.clone();
+
+        new fft().computeFFT(signal);
+
+        assertArrayEquals(copy, signal, 0.0);
+    }
+
+    @Test
+    public void testComputeFFTResizes() {
+        fft transform = new fft(NUMBER_OF_POINTS);
+        double[] smallSignal = {1.0, 0.0, -1.0, 0.0};
+
+        transform.computeFFT(smallSignal);
+
+        assertEquals(4, transform.real.length);
+        assertEquals(0.0, transform.real[0], DELTA);
+        assertEquals(2.0, transform.real[1], DELTA);
+        assertEquals(0.0, transform.real[2], DELTA);
+        assertEquals(2.0, transform.real[3], DELTA);
+    }
+
+    @Test
+    public void testInstancesDoNotShareBuffers() {
+        fft transformA = new fft(NUMBER_OF_POINTS);
+        fft transformB = new fft(NUMBER_OF_POINTS);
+
+        transformA.computeFFT(signal);
+        double[] expected = transformA.real.clone();
+
+        transformB.computeFFT(new double[NUMBER_OF_POINTS]);
+
+        assertArrayEquals(expected, transformA.real, 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testComputeFFTRejectsNonPowerOfTwo() {
+        new fft().computeFFT(new double[3]);
+    }
+}